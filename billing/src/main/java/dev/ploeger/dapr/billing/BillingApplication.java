@@ -2,8 +2,10 @@ package dev.ploeger.dapr.billing;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class BillingApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,13 @@
+package dev.ploeger.dapr.billing.adapter;
+
+/**
+ * Eine Bestellung wurde nicht verarbeitet, weil die Verarbeitung ausgelastet ist oder gerade beendet wird.
+ * Sie ist nicht fehlerhaft und wird deshalb nicht in ein Retry- oder Dead-Letter-Topic gelegt, sondern vom
+ * Sidecar später erneut zugestellt.
+ */
+class BackpressureException extends RuntimeException {
+
+    BackpressureException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,125 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom-Filter für Strings mit fester Speichergröße, der sich selbst erneuert.
+ * <p>
+ * Es gibt zwei Generationen: Neue Einträge landen in der aktuellen. Ist sie voll, wird sie zur vorherigen
+ * und die bis dahin vorherige verworfen. Der Filter kennt so immer mindestens die letzten {@code capacity}
+ * Einträge, verbraucht aber nie mehr als zwei Bitfelder, egal wie viele Einträge hinzugefügt werden.
+ * Falsch negative Antworten gibt es für diese Einträge nicht, falsch positive mit etwa der angegebenen Rate
+ * je Generation.
+ * <p>
+ * Die Bitposition wird per Double Hashing aus einem einzigen 64-Bit-Hash abgeleitet; Hinzufügen und
+ * Abfragen kosten unabhängig von der Anzahl der Einträge immer {@code hashFunctions} Bitzugriffe.
+ */
+class BloomFilter {
+    private final int capacity;
+    private final int bits;
+    private final int hashFunctions;
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    BloomFilter(int capacity, double falsePositiveRate) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Ungültige Kapazität oder Fehlerrate des Bloom-Filters");
+        }
+        this.capacity = capacity;
+        // Optimale Größe und Anzahl der Hashfunktionen für n Einträge und Fehlerrate p:
+        // m = -n ln p / (ln 2)^2, k = m/n ln 2
+        long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = (int) Math.min(Math.max(optimalBits, Long.SIZE), (long) Integer.MAX_VALUE - Long.SIZE);
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+        this.current = new Generation(bits);
+        this.previous = new Generation(bits);
+    }
+
+    void add(String value) {
+        long hash = hash(value);
+        Generation generation = current;
+        generation.set(hash, bits, hashFunctions);
+        if (generation.count.incrementAndGet() >= capacity) {
+            rotate(generation);
+        }
+    }
+
+    boolean mightContain(String value) {
+        long hash = hash(value);
+        return current.test(hash, bits, hashFunctions) || previous.test(hash, bits, hashFunctions);
+    }
+
+    /**
+     * Speicherbedarf beider Generationen in Bytes.
+     */
+    long sizeInBytes() {
+        return 2L * Generation.words(bits) * Long.BYTES;
+    }
+
+    private synchronized void rotate(Generation full) {
+        // Mehrere Threads können die volle Generation gleichzeitig bemerken; nur einer rotiert
+        if (current == full) {
+            previous = full;
+            current = new Generation(bits);
+        }
+    }
+
+    /**
+     * FNV-1a über die UTF-8-Bytes, gefolgt vom Finalizer aus MurmurHash3 für eine gleichmäßige Verteilung
+     * auch der oberen Bits.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Generation {
+        private final AtomicLongArray words;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Generation(int bits) {
+            this.words = new AtomicLongArray(words(bits));
+        }
+
+        static int words(int bits) {
+            return (bits + Long.SIZE - 1) / Long.SIZE;
+        }
+
+        void set(long hash, int bits, int hashFunctions) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashFunctions; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long value;
+                do {
+                    value = words.get(word);
+                } while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask));
+            }
+        }
+
+        boolean test(long hash, int bits, int hashFunctions) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashFunctions; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.config.InvoiceProperties;
+import dev.ploeger.dapr.billing.model.Invoice;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Speichert Rechnungen und verschickt sie per Mail, ohne die Verarbeitung der Bestellungen aufzuhalten.
+ * <p>
+ * Gerendert werden die Rechnungen von den Workern des {@link StripedOrderProcessor}; die Pipeline übernimmt
+ * sie in eine begrenzte Queue. Ein Thread speichert sie gesammelt mit einem Schreibzugriff je Batch im
+ * State Store und wiederholt fehlgeschlagene Batches bis zu {@code persist-attempts} Mal. Das Future aus
+ * {@link #submit(Invoice)} wird erst danach abgeschlossen; bis dahin gilt die Bestellung nicht als
+ * verarbeitet, so dass eine bei einem Absturz verlorene Rechnung mit der erneuten Zustellung neu entsteht.
+ * Stand die Rechnung mit derselben Nummer schon im State Store, weil die Bestellung nach dem Speichern, aber
+ * vor ihrem Abschluss erneut zugestellt wurde, wird sie weder noch einmal gespeichert noch verschickt. Lässt
+ * sich ein Batch auch nach dem letzten Versuch nicht speichern, oder ist der Fehler dauerhaft, werden die Futures
+ * des Batches mit dem Fehler abgeschlossen und die Bestellungen gehen an den {@link OrderFailureHandler}.
+ * Erst gespeicherte Rechnungen gehen an einen zweiten Thread, der sie über jeweils eine SMTP-Verbindung je
+ * Batch verschickt und dabei höchstens {@code mails-per-second} Mails je Sekunde sendet. Nicht zugestellte
+ * Mails werden bis zu {@code max-attempts} Mal erneut versucht. Kommt der Mailversand nicht hinterher, füllt sich auch die erste
+ * Queue; ist sie voll, nimmt die Pipeline keine Rechnungen mehr an. Die Bestellung landet dann nicht in einem
+ * Retry-Topic, sondern wird als {@link BackpressureException} abgewiesen und vom Sidecar erneut zugestellt.
+ * <p>
+ * Gemessen werden die wartenden Rechnungen je Stufe ({@code invoices.queue}), die gespeicherten Rechnungen
+ * ({@code invoices.persisted}), die nicht gespeicherten ({@code invoices.persist.failed}), die Mails je
+ * Ergebnis ({@code invoices.mails}) und die Mails je SMTP-Verbindung ({@code invoices.mail.batch.size}).
+ */
+@Slf4j
+class InvoicePipeline implements AutoCloseable {
+    private static final Duration IDLE_POLL = Duration.ofMillis(200);
+
+    private final InvoiceProperties config;
+    private final Function<List<Invoice>, Mono<Set<String>>> persister;
+    private final JavaMailSender mailSender;
+    private final BlockingQueue<PendingInvoice> persistQueue;
+    private final BlockingQueue<PendingMail> mailQueue;
+    private final Counter persistedCounter;
+    private final Counter failedPersistCounter;
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    private final DistributionSummary mailBatchSizes;
+    private final long mailIntervalNanos;
+    private final Thread persistWorker;
+    private final Thread mailWorker;
+    private volatile boolean running = true;
+    private long nextMailSlot = System.nanoTime();
+
+    /**
+     * @param persister      Speichert die noch nicht gespeicherten Rechnungen eines Batches und liefert die
+     *                       Nummern der Rechnungen, die bereits im State Store standen
+     * @param virtualThreads Worker als virtuelle statt als Plattform-Threads starten
+     */
+    InvoicePipeline(InvoiceProperties config,
+                    Function<List<Invoice>, Mono<Set<String>>> persister,
+                    JavaMailSender mailSender,
+                    MeterRegistry meterRegistry,
+                    boolean virtualThreads) {
+        this.config = config;
+        this.persister = persister;
+        this.mailSender = mailSender;
+        this.persistQueue = new ArrayBlockingQueue<>(config.queueCapacity());
+        this.mailQueue = new ArrayBlockingQueue<>(config.queueCapacity());
+        this.mailIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / config.mailsPerSecond());
+        this.persistedCounter = Counter.builder("invoices.persisted")
+                .description("Im State Store gespeicherte Rechnungen")
+                .register(meterRegistry);
+        this.failedPersistCounter = Counter.builder("invoices.persist.failed")
+                .description("Rechnungen, die auch nach dem letzten Versuch nicht gespeichert wurden")
+                .register(meterRegistry);
+        this.sentCounter = mailCounter(meterRegistry, "sent");
+        this.retriedCounter = mailCounter(meterRegistry, "retried");
+        this.failedCounter = mailCounter(meterRegistry, "failed");
+        this.mailBatchSizes = DistributionSummary.builder("invoices.mail.batch.size")
+                .description("Über eine SMTP-Verbindung verschickte Mails")
+                .register(meterRegistry);
+        Gauge.builder("invoices.queue", persistQueue, BlockingQueue::size)
+                .description("Wartende Rechnungen")
+                .tag("stage", "persist")
+                .register(meterRegistry);
+        Gauge.builder("invoices.queue", mailQueue, BlockingQueue::size)
+                .description("Wartende Rechnungen")
+                .tag("stage", "mail")
+                .register(meterRegistry);
+        Thread.Builder threadBuilder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        this.persistWorker = threadBuilder.name("invoice-persist").start(this::runPersist);
+        this.mailWorker = threadBuilder.name("invoice-mail").start(this::runMail);
+    }
+
+    /**
+     * Übernimmt eine gerenderte Rechnung.
+     *
+     * @return Ein Future, das abgeschlossen wird, sobald die Rechnung im State Store gespeichert ist, mit false,
+     * wenn sie dort schon stand; null, wenn die Pipeline ausgelastet oder beendet ist
+     */
+    CompletableFuture<Boolean> submit(Invoice invoice) {
+        PendingInvoice pending = new PendingInvoice(invoice, new CompletableFuture<>());
+        return running && persistQueue.offer(pending) ? pending.persisted() : null;
+    }
+
+    /**
+     * Beendet die Pipeline. Bereits übernommene Rechnungen werden noch gespeichert; Mails, die bis zum Ablauf
+     * der Wartezeit nicht verschickt wurden, bleiben unverschickt, die Rechnungen aber im State Store.
+     * Rechnungen, die bis dahin nicht gespeichert wurden, werden mit einer {@link BackpressureException}
+     * abgeschlossen, damit der Sidecar ihre Bestellungen erneut zustellt.
+     */
+    @Override
+    public void close() {
+        running = false;
+        join(persistWorker, config.persistTimeout().plusSeconds(5));
+        PendingInvoice unsaved;
+        while ((unsaved = persistQueue.poll()) != null) {
+            unsaved.persisted().completeExceptionally(new BackpressureException(
+                    "Rechnung " + unsaved.invoice().number() + " beim Beenden nicht gespeichert"));
+        }
+        join(mailWorker, Duration.ofSeconds(10));
+        if (!mailQueue.isEmpty()) {
+            log.warn("{} Rechnungsmails wurden beim Beenden nicht verschickt", mailQueue.size());
+        }
+    }
+
+    private void runPersist() {
+        while (running || !persistQueue.isEmpty()) {
+            try {
+                PendingInvoice first = persistQueue.poll(IDLE_POLL.toMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    persist(collect(persistQueue, first, config.persistBatchSize(), config.persistWindow()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void persist(List<PendingInvoice> pending) throws InterruptedException {
+        List<Invoice> batch = pending.stream().map(PendingInvoice::invoice).toList();
+        Set<String> existing;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                existing = persister.apply(batch).defaultIfEmpty(Set.of()).block(config.persistTimeout());
+                break;
+            } catch (RuntimeException e) {
+                if (attempt >= config.persistAttempts()
+                        || OrderFailureHandler.classify(e) == OrderFailureHandler.Classification.PERMANENT) {
+                    // Die Bestellungen gehen mit dem Fehler an die Fehlerbehandlung und werden später wiederholt
+                    log.error("{} Rechnungen konnten nach {} Versuchen nicht gespeichert werden", batch.size(), attempt, e);
+                    failedPersistCounter.increment(batch.size());
+                    pending.forEach(invoice -> invoice.persisted().completeExceptionally(e));
+                    return;
+                }
+                log.warn("{} Rechnungen konnten nicht gespeichert werden, neuer Versuch in {} ms: {}",
+                        batch.size(), config.retryBackoff().toMillis(), e.getMessage());
+                Thread.sleep(config.retryBackoff());
+            }
+        }
+        // Kommt dieselbe Rechnung mehrfach im Batch vor, gilt nur die erste als neu
+        Set<String> known = new HashSet<>(existing);
+        List<Invoice> created = new ArrayList<>(batch.size());
+        for (PendingInvoice invoice : pending) {
+            boolean isNew = known.add(invoice.invoice().number());
+            if (isNew) {
+                created.add(invoice.invoice());
+            } else {
+                log.info("Rechnung {} war bereits gespeichert und wird nicht erneut verschickt", invoice.invoice().number());
+            }
+            invoice.persisted().complete(isNew);
+        }
+        persistedCounter.increment(created.size());
+        for (Invoice invoice : created) {
+            if (invoice.email() == null || invoice.email().isBlank()) {
+                log.info("Rechnung {} hat keine Mailadresse und wird nicht verschickt", invoice.number());
+            } else {
+                // Blockiert, wenn der Mailversand nicht hinterherkommt; dann füllt sich die erste Queue
+                mailQueue.put(new PendingMail(invoice, 1));
+            }
+        }
+    }
+
+    private void runMail() {
+        while (running || !mailQueue.isEmpty() || persistWorker.isAlive()) {
+            try {
+                PendingMail first = mailQueue.poll(IDLE_POLL.toMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    send(collect(mailQueue, first, config.mailBatchSize(), Duration.ZERO));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(List<PendingMail> batch) throws InterruptedException {
+        awaitMailSlots(batch.size());
+        List<PendingMail> failed = new ArrayList<>();
+        List<MimeMessage> messages = new ArrayList<>(batch.size());
+        List<PendingMail> pending = new ArrayList<>(batch.size());
+        for (PendingMail mail : batch) {
+            try {
+                messages.add(toMessage(mail.invoice()));
+                pending.add(mail);
+            } catch (MessagingException e) {
+                log.error("Mail zu Rechnung {} konnte nicht erstellt werden", mail.invoice().number(), e);
+                failedCounter.increment();
+            }
+        }
+        try {
+            // Alle Mails eines Batches gehen über dieselbe SMTP-Verbindung
+            mailSender.send(messages.toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            Map<Object, Exception> failedMessages = e.getFailedMessages();
+            for (int i = 0; i < messages.size(); i++) {
+                if (failedMessages.isEmpty() || failedMessages.containsKey(messages.get(i))) {
+                    failed.add(pending.get(i));
+                }
+            }
+            log.warn("{} von {} Rechnungsmails nicht verschickt: {}", failed.size(), messages.size(), e.getMessage());
+        } catch (MailException e) {
+            failed.addAll(pending);
+            log.warn("{} Rechnungsmails nicht verschickt: {}", pending.size(), e.getMessage());
+        }
+        mailBatchSizes.record(messages.size());
+        sentCounter.increment(pending.size() - failed.size());
+        retry(failed);
+    }
+
+    private void retry(List<PendingMail> failed) throws InterruptedException {
+        if (failed.isEmpty()) {
+            return;
+        }
+        Thread.sleep(config.retryBackoff());
+        for (PendingMail mail : failed) {
+            if (mail.attempt() >= config.maxAttempts()) {
+                log.error("Rechnung {} konnte nach {} Versuchen nicht an {} verschickt werden",
+                        mail.invoice().number(), mail.attempt(), mail.invoice().email());
+                failedCounter.increment();
+            } else if (mailQueue.offer(new PendingMail(mail.invoice(), mail.attempt() + 1))) {
+                retriedCounter.increment();
+            } else {
+                log.error("Mail-Queue voll, Rechnung {} wird nicht erneut verschickt", mail.invoice().number());
+                failedCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * Wartet, bis die Ratenbegrenzung {@code mails} weitere Mails erlaubt. Nur vom Mail-Thread aufgerufen.
+     */
+    private void awaitMailSlots(int mails) throws InterruptedException {
+        long now = System.nanoTime();
+        long start = Math.max(now, nextMailSlot);
+        nextMailSlot = start + mails * mailIntervalNanos;
+        if (start > now) {
+            TimeUnit.NANOSECONDS.sleep(start - now);
+        }
+    }
+
+    private MimeMessage toMessage(Invoice invoice) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, StandardCharsets.UTF_8.name());
+        helper.setFrom(config.sender());
+        helper.setTo(invoice.email());
+        helper.setSubject("Ihre Rechnung " + invoice.number());
+        helper.setText(invoice.text());
+        return message;
+    }
+
+    private static <T> List<T> collect(BlockingQueue<T> queue, T first, int maxSize, Duration window)
+            throws InterruptedException {
+        List<T> batch = new ArrayList<>(maxSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + window.toNanos();
+        while (batch.size() < maxSize) {
+            long remaining = deadline - System.nanoTime();
+            T next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private static void join(Thread thread, Duration timeout) {
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Counter mailCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("invoices.mails")
+                .description("Rechnungsmails")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record PendingInvoice(Invoice invoice, CompletableFuture<Boolean> persisted) {
+    }
+
+    private record PendingMail(Invoice invoice, int attempt) {
+    }
+}
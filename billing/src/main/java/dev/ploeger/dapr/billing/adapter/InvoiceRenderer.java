@@ -0,0 +1,69 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.model.Invoice;
+import dev.ploeger.dapr.billing.model.Order;
+import dev.ploeger.dapr.billing.model.Sweet;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Erstellt aus einer Bestellung die Rechnung samt Text.
+ * <p>
+ * Die Rechnungsnummer wird aus der ID des CloudEvents abgeleitet, mit dem die Bestellung zugestellt wurde.
+ * Eine erneut zugestellte Bestellung erhält so dieselbe Nummer und damit denselben Schlüssel im State Store
+ * wie beim ersten Versuch.
+ */
+final class InvoiceRenderer {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+    private static final DateTimeFormatter NUMBER_DATE = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZONE);
+    private static final DateTimeFormatter ISSUE_DATE = DateTimeFormatter.ofPattern("dd.MM.yyyy").withZone(ZONE);
+
+    private InvoiceRenderer() {
+    }
+
+    /**
+     * @param eventId ID des CloudEvents der Bestellung; ohne ID erhält die Rechnung eine zufällige Nummer
+     */
+    static Invoice render(Order order, String eventId, Instant issuedAt) {
+        String number = number(eventId, issuedAt);
+        List<Sweet> items = order.sweets() != null ? order.sweets() : List.of();
+        double total = items.stream()
+                .mapToDouble(sweet -> sweet.price() * sweet.quantity())
+                .sum();
+
+        StringBuilder text = new StringBuilder()
+                .append("Rechnung ").append(number).append('\n')
+                .append("Datum: ").append(ISSUE_DATE.format(issuedAt)).append("\n\n")
+                .append(order.name()).append('\n')
+                .append(order.address() != null ? order.address() : "").append("\n\n")
+                .append(String.format(Locale.GERMANY, "%-30s %8s %6s %10s%n", "Artikel", "Preis", "Menge", "Betrag"));
+        for (Sweet sweet : items) {
+            text.append(String.format(Locale.GERMANY, "%-30.30s %8.2f %6d %10.2f%n",
+                    sweet.name(), sweet.price(), sweet.quantity(), sweet.price() * sweet.quantity()));
+        }
+        text.append(String.format(Locale.GERMANY, "%n%-46s %10.2f EUR%n", "Gesamtbetrag", total))
+                .append("Zahlungsart: ").append(order.paymentMethod()).append('\n');
+
+        return new Invoice(number, issuedAt.toEpochMilli(), order.name(), order.address(), order.email(), order.paymentMethod(),
+                items, total, text.toString());
+    }
+
+    /**
+     * Die Nummer enthält kein Datum, sonst bekäme eine nach Mitternacht erneut zugestellte Bestellung eine
+     * andere Nummer.
+     */
+    private static String number(String eventId, Instant issuedAt) {
+        if (eventId == null) {
+            return "RE-" + NUMBER_DATE.format(issuedAt) + "-"
+                    + UUID.randomUUID().toString().substring(0, 8).toUpperCase(Locale.ROOT);
+        }
+        String id = UUID.nameUUIDFromBytes(eventId.getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+        return "RE-" + id.substring(0, 16).toUpperCase(Locale.ROOT);
+    }
+}
@@ -1,63 +1,546 @@
 package dev.ploeger.dapr.billing.adapter;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.ploeger.dapr.billing.config.InvoiceProperties;
+import dev.ploeger.dapr.billing.config.OrderDeduplicationProperties;
+import dev.ploeger.dapr.billing.config.OrderProcessingProperties;
+import dev.ploeger.dapr.billing.config.OrderRetryProperties;
+import dev.ploeger.dapr.billing.config.OrderSubscriptionProperties;
+import dev.ploeger.dapr.billing.model.FailedOrder;
+import dev.ploeger.dapr.billing.model.Invoice;
 import dev.ploeger.dapr.billing.model.Order;
-import io.dapr.Topic;
+import io.dapr.client.DaprClient;
+import io.dapr.client.domain.BulkSubscribeAppResponse;
+import io.dapr.client.domain.BulkSubscribeAppResponseEntry;
+import io.dapr.client.domain.BulkSubscribeAppResponseStatus;
+import io.dapr.client.domain.BulkSubscribeMessage;
+import io.dapr.client.domain.BulkSubscribeMessageEntry;
 import io.dapr.client.domain.CloudEvent;
+import io.dapr.client.domain.State;
+import io.dapr.springboot.DaprRuntime;
+import io.dapr.springboot.DaprTopicBulkSubscribe;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 
 /**
  * Der @RestController in der OrderAdapter-Klasse der Billing-Anwendung ist notwendig, da Dapr die Subscription für PubSub-Nachrichten über HTTP-Endpunkte implementiert. Das funktioniert folgendermaßen:
  *
  *
- * Die @Topic-Annotation definiert, dass diese Methode Nachrichten vom angegebenen Topic empfangen soll.
- * Bei der Initialisierung sucht der Dapr-Sidecar nach HTTP-Endpunkten, die mit @Topic annotiert sind.
+ * Beim Start wird das Topic "orders" bei der {@link DaprRuntime} registriert, je nach Konfiguration mit der Route für einzelne Bestellungen oder für Bulk Subscribe.
+ * Bei der Initialisierung fragt der Dapr-Sidecar diese Subscriptions über {@code /dapr/subscribe} ab.
  * Der Dapr-Sidecar abonniert dann das angegebene Topic und leitet empfangene Nachrichten an den entsprechenden HTTP-Endpunkt der Anwendung weiter.
  * Obwohl wir keine direkte REST-API für externe Clients anbieten, benötigt Dapr diese HTTP-Schnittstelle für die interne Kommunikation zwischen dem Dapr-Sidecar und der Anwendung. Der Sidecar fungiert als Proxy und sendet die empfangenen Nachrichten vom PubSub-System als HTTP-POST-Requests an den definierten Endpunkt unserer Anwendung.
  *
  * Diese Architektur ermöglicht eine saubere Trennung zwischen der Nachrichtenempfangslogik (durch Dapr verwaltet) und der Geschäftslogik unserer Anwendung.
+ * <p>
+ * Die Subscription wird programmatisch statt über {@code @Topic}/{@code @BulkSubscribe} registriert, weil die
+ * Batchgröße und die Wartezeit dort nur als Konstanten angegeben werden können.
+ * <p>
+ * Verarbeitet werden die Bestellungen vom {@link StripedOrderProcessor}: parallel, aber je Kunde in
+ * Eingangsreihenfolge. Ist er ausgelastet, wird der Sidecar gebeten, die Bestellungen später erneut
+ * zuzustellen.
+ * <p>
+ * Erneut zugestellte CloudEvents erkennt der {@link OrderDeduplicator}; sie werden bestätigt, aber nicht noch
+ * einmal verarbeitet.
+ * <p>
+ * Zu jeder verarbeiteten Bestellung wird eine Rechnung erstellt, die die {@link InvoicePipeline} gesammelt
+ * speichert und per Mail verschickt. Der Umsatz fließt in die laufende Auswertung des
+ * {@link RevenueAggregator} ein.
+ * <p>
+ * Schlägt die Verarbeitung fehl, legt der {@link OrderFailureHandler} die Bestellung in einem Retry-Topic mit
+ * wachsender Wartezeit oder im Dead-Letter-Topic ab und die Zustellung gilt als erfolgreich. Das gilt auch für
+ * Bestellungen, die nicht rechtzeitig verarbeitet wurden; ihre Reservierung bleibt aber bestehen, bis die
+ * Verarbeitung endet, damit die Wiederholung sie nicht parallel noch einmal verarbeitet. Nur bei Auslastung
+ * ({@link BackpressureException}) und wenn der State Store oder das Retry-Topic nicht erreichbar ist, stellt
+ * der Sidecar die Bestellung selbst erneut zu.
  */
 @RestController
+@RequiredArgsConstructor
 @Slf4j
 public class OrderAdapter {
     private static final String PUBSUB_NAME = "pubsub";
     private static final String TOPIC_NAME = "orders";
+    private static final String ROUTE = "/orders";
+    private static final String BULK_ROUTE = "/orders/bulk";
+    private static final String RETRY_ROUTE = "/orders/retry";
+    private static final String INVOICE_KEY_PREFIX = "invoice||";
+
+    private final OrderSubscriptionProperties properties;
+    private final OrderProcessingProperties processingProperties;
+    private final OrderDeduplicationProperties deduplicationProperties;
+    private final InvoiceProperties invoiceProperties;
+    private final OrderRetryProperties retryProperties;
+    private final DaprClient daprClient;
+    private final JavaMailSender mailSender;
+    private final RevenueAggregator revenueAggregator;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private DistributionSummary batchSizes;
+    private StripedOrderProcessor processor;
+    private OrderDeduplicator deduplicator;
+    private InvoicePipeline invoicePipeline;
+    private OrderFailureHandler failureHandler;
+
+    @PostConstruct
+    void subscribe() {
+        batchSizes = DistributionSummary.builder("orders.bulk.size")
+                .description("Bestellungen je Bulk-Request des Sidecars")
+                .register(meterRegistry);
+        if (invoiceProperties.enabled()) {
+            invoicePipeline = new InvoicePipeline(invoiceProperties, this::saveInvoices, mailSender, meterRegistry, virtualThreads);
+        }
+        processor = new StripedOrderProcessor(processingProperties, this::processOrder, meterRegistry, virtualThreads);
+        if (deduplicationProperties.enabled()) {
+            deduplicator = new OrderDeduplicator(deduplicationProperties, daprClient, meterRegistry);
+        }
+        DaprTopicBulkSubscribe bulkSubscribe = null;
+        if (properties.bulk()) {
+            bulkSubscribe = new DaprTopicBulkSubscribe(true);
+            bulkSubscribe.setMaxMessagesCount(properties.maxMessagesCount());
+            bulkSubscribe.setMaxAwaitDurationMs(Math.toIntExact(properties.maxAwaitDuration().toMillis()));
+        }
+        DaprRuntime.getInstance().addSubscribedTopic(PUBSUB_NAME, TOPIC_NAME, "", 0,
+                properties.bulk() ? BULK_ROUTE : ROUTE, null, Map.of(), bulkSubscribe);
+        if (retryProperties.enabled()) {
+            failureHandler = new OrderFailureHandler(retryProperties, PUBSUB_NAME, daprClient, meterRegistry);
+            // Alle Retry-Topics laufen über denselben Endpunkt, jedes hat aber eine eigene Subscription
+            for (String retryTopic : failureHandler.retryTopics()) {
+                DaprRuntime.getInstance().addSubscribedTopic(PUBSUB_NAME, retryTopic, "", 0,
+                        RETRY_ROUTE, null, Map.of(), null);
+            }
+        }
+    }
+
+    @PreDestroy
+    void cleanup() {
+        processor.close();
+        // Erst nach den Workern beenden, sie übergeben noch Rechnungen
+        if (invoicePipeline != null) {
+            invoicePipeline.close();
+        }
+    }
 
     /**
      * Empfängt eine Bestellung, die über die Dapr PubSub-Komponente veröffentlicht wurde.
      *
      * @param cloudEvent Das CloudEvent-Objekt, das die Bestellung enthält
-     * @return Die empfangene Bestellung
+     * @return Die empfangene Bestellung; 429, wenn die Verarbeitung ausgelastet ist, und 500 oder 503, wenn
+     * der Sidecar die Bestellung erneut zustellen soll; 404, wenn eine unlesbare Bestellung verworfen wird
      */
-    @Topic(name = TOPIC_NAME, pubsubName = PUBSUB_NAME)
-    @PostMapping(path = "/orders", consumes = MediaType.ALL_VALUE)
-    public Order receiveOrder(@RequestBody CloudEvent<Order> cloudEvent) {
-        Order order = cloudEvent.getData();
+    @PostMapping(path = ROUTE, consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<Order> receiveOrder(@RequestBody CloudEvent<JsonNode> cloudEvent) {
+        String eventId = cloudEvent.getId();
+        Order order;
+        try {
+            order = toOrder(cloudEvent);
+        } catch (IOException | RuntimeException e) {
+            log.error("CloudEvent {} ist keine lesbare Bestellung", eventId, e);
+            if (failureHandler == null) {
+                // 404 lässt den Sidecar die Nachricht verwerfen
+                return ResponseEntity.notFound().build();
+            }
+            return failureHandler.park(cloudEvent, null, e)
+                    ? ResponseEntity.ok().build()
+                    : ResponseEntity.internalServerError().build();
+        }
         log.info("Bestellung empfangen: {}", order);
 
-        // Hier könnte die Logik zur Verarbeitung der Bestellung implementiert werden
-        processOrder(order);
+        try {
+            if (!claim(eventId).get()) {
+                log.info("CloudEvent {} wurde bereits verarbeitet, Bestellung von '{}' wird übersprungen", eventId, order.name());
+                return ResponseEntity.ok(order);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (ExecutionException e) {
+            log.error("Duplikatprüfung für CloudEvent {} fehlgeschlagen", eventId, e);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        CompletableFuture<Double> result = processor.submit(eventId, order);
+        if (result == null) {
+            log.warn("Verarbeitung ausgelastet, Bestellung von '{}' wird später erneut zugestellt", order.name());
+            release(eventId);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        try {
+            result.get(processingProperties.timeout().toMillis(), TimeUnit.MILLISECONDS);
+            complete(eventId);
+            return ResponseEntity.ok(order);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(eventId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (TimeoutException e) {
+            log.error("Bestellung von '{}' nicht rechtzeitig verarbeitet", order.name(), e);
+            return parkTimedOut(eventId, result, () -> failureHandler.park(cloudEvent, order, e))
+                    ? ResponseEntity.ok(order)
+                    : ResponseEntity.internalServerError().build();
+        } catch (ExecutionException e) {
+            release(eventId);
+            if (e.getCause() instanceof BackpressureException) {
+                log.warn("Verarbeitung ausgelastet, Bestellung von '{}' wird später erneut zugestellt", order.name());
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+            }
+            return failureHandler != null && failureHandler.park(cloudEvent, order, e)
+                    ? ResponseEntity.ok(order)
+                    : ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Empfängt einen Batch von Bestellungen über Dapr Bulk Subscribe und meldet den Status je Eintrag.
+     * Unlesbare Bestellungen und Bestellungen, deren Verarbeitung fehlschlug, werden über den
+     * {@link OrderFailureHandler} abgelegt und bestätigt ({@code SUCCESS}), ebenso Bestellungen, die nicht
+     * rechtzeitig verarbeitet wurden; nur wenn das nicht möglich ist, werden sie verworfen ({@code DROP}) oder
+     * vom Sidecar erneut zugestellt ({@code RETRY}). Bei Auslastung stellt der Sidecar sie immer erneut zu.
+     *
+     * @param bulkMessage Die vom Sidecar gesammelten CloudEvents
+     * @return Der Status jeder Bestellung, zugeordnet über die Entry-ID
+     */
+    @PostMapping(path = BULK_ROUTE, consumes = MediaType.ALL_VALUE)
+    public BulkSubscribeAppResponse receiveOrders(@RequestBody BulkSubscribeMessage<CloudEvent<JsonNode>> bulkMessage) {
+        List<BulkSubscribeMessageEntry<CloudEvent<JsonNode>>> entries = bulkMessage.getEntries();
+        batchSizes.record(entries.size());
+        long deadline = System.nanoTime() + processingProperties.timeout().toNanos();
+        BulkSubscribeAppResponseStatus[] statuses = new BulkSubscribeAppResponseStatus[entries.size()];
+        Order[] orders = new Order[entries.size()];
+        // Die Duplikatprüfungen aller Einträge laufen parallel
+        List<CompletableFuture<Boolean>> claims = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            BulkSubscribeMessageEntry<CloudEvent<JsonNode>> entry = entries.get(i);
+            try {
+                orders[i] = toOrder(entry.getEvent());
+                claims.add(claim(entry.getEvent().getId()));
+            } catch (IOException | RuntimeException e) {
+                log.error("Eintrag {} ist keine lesbare Bestellung", entry.getEntryId(), e);
+                statuses[i] = failureHandler == null
+                        ? BulkSubscribeAppResponseStatus.DROP
+                        : parkedStatus(failureHandler.park(entry.getEvent(), null, e));
+                claims.add(null);
+            }
+        }
+
+        List<CompletableFuture<Double>> results = new ArrayList<>(entries.size());
+        // Wurde eine Bestellung eines Kunden abgelehnt, werden auch seine folgenden Bestellungen im Batch
+        // abgelehnt; sonst würden sie vor der erneut zugestellten verarbeitet
+        Set<String> rejectedCustomers = new HashSet<>();
+        int duplicates = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            results.add(null);
+            if (statuses[i] != null) {
+                continue;
+            }
+            String eventId = entries.get(i).getEvent().getId();
+            String customer = StripedOrderProcessor.customerKey(orders[i]);
+            boolean isNew;
+            try {
+                isNew = claims.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                log.error("Duplikatprüfung für CloudEvent {} fehlgeschlagen", eventId, e);
+                rejectedCustomers.add(customer);
+                statuses[i] = BulkSubscribeAppResponseStatus.RETRY;
+                continue;
+            }
+            if (!isNew) {
+                duplicates++;
+                statuses[i] = BulkSubscribeAppResponseStatus.SUCCESS;
+                continue;
+            }
+            CompletableFuture<Double> result = rejectedCustomers.contains(customer) ? null : processor.submit(eventId, orders[i]);
+            if (result == null) {
+                rejectedCustomers.add(customer);
+                release(eventId);
+                statuses[i] = BulkSubscribeAppResponseStatus.RETRY;
+            } else {
+                results.set(i, result);
+            }
+        }
+        if (!rejectedCustomers.isEmpty()) {
+            log.warn("Verarbeitung ausgelastet, Bestellungen von {} Kunden werden später erneut zugestellt",
+                    rejectedCustomers.size());
+        }
+
+        double batchAmount = 0;
+        List<BulkSubscribeAppResponseEntry> response = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            String entryId = entries.get(i).getEntryId();
+            if (statuses[i] == null) {
+                String eventId = entries.get(i).getEvent().getId();
+                try {
+                    batchAmount += results.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    complete(eventId);
+                    statuses[i] = BulkSubscribeAppResponseStatus.SUCCESS;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    release(eventId);
+                    statuses[i] = BulkSubscribeAppResponseStatus.RETRY;
+                } catch (TimeoutException e) {
+                    log.error("Eintrag {} nicht rechtzeitig verarbeitet", entryId, e);
+                    CloudEvent<JsonNode> event = entries.get(i).getEvent();
+                    Order order = orders[i];
+                    statuses[i] = parkedStatus(parkTimedOut(eventId, results.get(i),
+                            () -> failureHandler.park(event, order, e)));
+                } catch (ExecutionException e) {
+                    release(eventId);
+                    if (e.getCause() instanceof BackpressureException) {
+                        log.warn("Verarbeitung ausgelastet, Eintrag {} wird später erneut zugestellt", entryId);
+                        statuses[i] = BulkSubscribeAppResponseStatus.RETRY;
+                    } else {
+                        statuses[i] = parkedStatus(failureHandler != null
+                                && failureHandler.park(entries.get(i).getEvent(), orders[i], e));
+                    }
+                }
+            }
+            response.add(new BulkSubscribeAppResponseEntry(entryId, statuses[i]));
+        }
+        log.info("{} Bestellungen im Batch verarbeitet, davon {} Duplikate, Gesamtbetrag: {}",
+                entries.size(), duplicates, batchAmount);
+        return new BulkSubscribeAppResponse(response);
+    }
+
+    /**
+     * Empfängt eine Bestellung aus einem der Retry-Topics. Vor der Verarbeitung wird gewartet, bis die
+     * Wiederholung fällig ist; das hält nur das Retry-Topic auf, nie das Topic "orders". Ist sie erst nach
+     * {@code max-await} fällig, stellt der Sidecar sie später erneut zu. Schlägt sie erneut fehl, wird sie in
+     * der nächsten Stufe oder im Dead-Letter-Topic abgelegt.
+     *
+     * @return 429, wenn die Wiederholung noch nicht fällig ist, die vorige Verarbeitung noch läuft oder die
+     * Verarbeitung ausgelastet ist, und 500 oder 503, wenn der Sidecar die Bestellung erneut zustellen soll
+     */
+    @PostMapping(path = RETRY_ROUTE, consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<Void> retryOrder(@RequestBody CloudEvent<FailedOrder> cloudEvent) {
+        FailedOrder failed = cloudEvent.getData();
+        if (failed == null || failed.order() == null || failureHandler == null) {
+            log.error("CloudEvent {} aus dem Retry-Topic enthält keine Bestellung und wird verworfen", cloudEvent.getId());
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            if (!failureHandler.awaitDue(failed)) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+            }
+            // Die Duplikatprüfung läuft über die ID des ursprünglichen CloudEvents. Nach einer
+            // Zeitüberschreitung kann die vorige Verarbeitung noch laufen; dann später erneut versuchen
+            if (!claim(failed.eventId()).get()) {
+                return isProcessed(failed.eventId()).get()
+                        ? ResponseEntity.ok().build()
+                        : ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (ExecutionException e) {
+            log.error("Duplikatprüfung für CloudEvent {} fehlgeschlagen", failed.eventId(), e);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        CompletableFuture<Double> result = processor.submit(failed.eventId(), failed.order());
+        if (result == null) {
+            release(failed.eventId());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        try {
+            result.get(processingProperties.timeout().toMillis(), TimeUnit.MILLISECONDS);
+            complete(failed.eventId());
+            log.info("CloudEvent {} bei Wiederholung {} verarbeitet", failed.eventId(), failed.attempt());
+            return ResponseEntity.ok().build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(failed.eventId());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (TimeoutException e) {
+            log.error("CloudEvent {} bei Wiederholung {} nicht rechtzeitig verarbeitet", failed.eventId(), failed.attempt(), e);
+            return parkTimedOut(failed.eventId(), result, () -> failureHandler.park(failed, e))
+                    ? ResponseEntity.ok().build()
+                    : ResponseEntity.internalServerError().build();
+        } catch (ExecutionException e) {
+            release(failed.eventId());
+            if (e.getCause() instanceof BackpressureException) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+            }
+            return failureHandler.park(failed, e)
+                    ? ResponseEntity.ok().build()
+                    : ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Legt eine Bestellung ab, deren Verarbeitung nicht rechtzeitig abgeschlossen wurde, aber weiterläuft, etwa
+     * bis ihre Rechnung gespeichert ist. Deshalb bleibt ihre Reservierung bestehen, bis die Verarbeitung endet:
+     * Gelingt sie, wird die Bestellung als verarbeitet vermerkt und die Wiederholung übersprungen; schlägt sie
+     * fehl, wird die Reservierung freigegeben und die Wiederholung verarbeitet die Bestellung erneut.
+     *
+     * @param park Legt die Bestellung über den {@link OrderFailureHandler} ab
+     * @return true, wenn die Bestellung abgelegt wurde; false, wenn der Sidecar sie erneut zustellen muss
+     */
+    private boolean parkTimedOut(String eventId, CompletableFuture<Double> result, BooleanSupplier park) {
+        if (failureHandler == null || !park.getAsBoolean()) {
+            release(eventId);
+            return false;
+        }
+        result.whenComplete((total, error) -> {
+            if (error == null) {
+                complete(eventId);
+            } else {
+                release(eventId);
+            }
+        });
+        return true;
+    }
+
+    private static BulkSubscribeAppResponseStatus parkedStatus(boolean parked) {
+        return parked ? BulkSubscribeAppResponseStatus.SUCCESS : BulkSubscribeAppResponseStatus.RETRY;
+    }
 
-        return order;
+    /**
+     * @return Ein Future mit true, wenn die Bestellung verarbeitet werden soll, und false bei einem Duplikat
+     */
+    private CompletableFuture<Boolean> claim(String eventId) {
+        if (deduplicator == null || eventId == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return deduplicator.claim(eventId).toFuture();
     }
 
     /**
-     * Verarbeitet eine empfangene Bestellung.
-     * Diese Methode kann je nach Geschäftsanforderungen erweitert werden.
+     * @return Ein Future mit true, wenn eine als Duplikat erkannte Bestellung verarbeitet ist, und false, wenn
+     * ihre Verarbeitung noch läuft
+     */
+    private CompletableFuture<Boolean> isProcessed(String eventId) {
+        if (deduplicator == null || eventId == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return deduplicator.isProcessed(eventId).toFuture();
+    }
+
+    private void complete(String eventId) {
+        if (deduplicator != null && eventId != null) {
+            deduplicator.complete(eventId);
+        }
+    }
+
+    private void release(String eventId) {
+        if (deduplicator != null && eventId != null) {
+            deduplicator.release(eventId);
+        }
+    }
+
+    private Order toOrder(CloudEvent<JsonNode> cloudEvent) throws IOException {
+        // JSON steht in "data", das kompakte Binärformat des Shops in "data_base64". Das JSON wird erst hier
+        // gelesen, damit eine fehlerhafte Bestellung nicht den ganzen Request scheitern lässt
+        if (cloudEvent.getData() != null && !cloudEvent.getData().isNull()) {
+            return objectMapper.treeToValue(cloudEvent.getData(), Order.class);
+        }
+        if (cloudEvent.getBinaryData() == null) {
+            throw new IOException("CloudEvent " + cloudEvent.getId() + " enthält keine Bestellung");
+        }
+        return OrderProtobuf.decode(cloudEvent.getBinaryData());
+    }
+
+    /**
+     * Verarbeitet eine empfangene Bestellung: Die Rechnung wird erstellt und an die {@link InvoicePipeline}
+     * übergeben, die sie speichert und verschickt.
+     * <p>
+     * Abgeschlossen ist die Bestellung erst, wenn ihre Rechnung gespeichert ist. Vorher wird sie weder
+     * bestätigt noch als verarbeitet markiert, sonst ginge die Rechnung bei einem Absturz verloren und die
+     * erneute Zustellung würde als Duplikat verworfen. Die Rechnungsnummer hängt an der ID des CloudEvents; wird
+     * die Bestellung nach dem Speichern erneut zugestellt, bleibt es bei der einen Rechnung und der Umsatz wird
+     * nicht noch einmal erfasst.
      *
-     * @param order Die zu verarbeitende Bestellung
+     * @param eventId ID des CloudEvents, mit dem die Bestellung zugestellt wurde
+     * @param order   Die zu verarbeitende Bestellung
+     * @return Der Gesamtbetrag der Bestellung, sobald ihre Rechnung gespeichert ist
+     * @throws BackpressureException wenn die Pipeline ausgelastet ist; die Bestellung wird dann nicht abgelegt,
+     *                               sondern vom Sidecar erneut zugestellt
      */
-    private void processOrder(Order order) {
-        // Beispiel für eine einfache Verarbeitungslogik
-        double totalAmount = order.sweets().stream()
-                .mapToDouble(sweet -> sweet.price() * sweet.quantity())
-                .sum();
+    private CompletableFuture<Double> processOrder(String eventId, Order order) {
+        Invoice invoice = InvoiceRenderer.render(order, eventId, Instant.now());
 
-        log.info("Verarbeite Bestellung für Kunde: {}, Gesamtbetrag: {}", order.name(), totalAmount);
+        log.info("Verarbeite Bestellung für Kunde: {}, Gesamtbetrag: {}", order.name(), invoice.total());
 
-        // Weitere Logik wie Rechnungserstellung, Zahlungsverarbeitung usw. könnte hier implementiert werden
+        if (invoicePipeline == null) {
+            revenueAggregator.record(order);
+            return CompletableFuture.completedFuture(invoice.total());
+        }
+        CompletableFuture<Boolean> persisted = invoicePipeline.submit(invoice);
+        if (persisted == null) {
+            throw new BackpressureException("Rechnungs-Pipeline ausgelastet, Rechnung " + invoice.number() + " nicht übernommen");
+        }
+        // Erst nach dem Speichern erfassen; eine nicht gespeicherte Bestellung wird erneut zugestellt
+        return persisted.thenApply(created -> {
+            if (created) {
+                revenueAggregator.record(order);
+            }
+            return invoice.total();
+        });
+    }
+
+    /**
+     * Speichert die Rechnungen, die noch nicht im State Store stehen.
+     *
+     * @return Ein Mono mit den Nummern der Rechnungen, die bereits gespeichert waren
+     */
+    private Mono<Set<String>> saveInvoices(List<Invoice> invoices) {
+        String stateStoreName = invoiceProperties.stateStoreName();
+        List<String> keys = invoices.stream().map(invoice -> INVOICE_KEY_PREFIX + invoice.number()).distinct().toList();
+        return daprClient.getBulkState(stateStoreName, keys, Invoice.class)
+                .flatMap(stored -> {
+                    Set<String> existing = new HashSet<>();
+                    for (State<Invoice> state : stored) {
+                        if (state.getError() != null) {
+                            return Mono.error(new IllegalStateException(
+                                    "Rechnung " + state.getKey() + " konnte nicht gelesen werden: " + state.getError()));
+                        }
+                        if (state.getValue() != null) {
+                            existing.add(state.getKey().substring(INVOICE_KEY_PREFIX.length()));
+                        }
+                    }
+                    Map<String, State<?>> states = new LinkedHashMap<>();
+                    for (Invoice invoice : invoices) {
+                        if (!existing.contains(invoice.number())) {
+                            states.putIfAbsent(invoice.number(),
+                                    new State<>(INVOICE_KEY_PREFIX + invoice.number(), invoice, null, null, null));
+                        }
+                    }
+                    Mono<Void> saved = states.isEmpty()
+                            ? Mono.empty()
+                            : daprClient.saveBulkState(stateStoreName, new ArrayList<>(states.values()));
+                    return saved.thenReturn(existing);
+                });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,190 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.config.OrderDeduplicationProperties;
+import io.dapr.client.DaprClient;
+import io.dapr.client.domain.State;
+import io.dapr.client.domain.StateOptions;
+import io.dapr.exceptions.DaprException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Erkennt erneut zugestellte Bestellungen an der ID ihres CloudEvents.
+ * <p>
+ * Geprüft wird in drei Stufen, von billig nach teuer:
+ * <ol>
+ *     <li>Ein exaktes Fenster der zuletzt gesehenen IDs erkennt die häufigen, schnell folgenden
+ *     Wiederholungen des Sidecars ohne jeden Zugriff auf den State Store.</li>
+ *     <li>Ein {@link BloomFilter} über deutlich mehr IDs entscheidet, ob sich ein Lesezugriff lohnt: Kennt er
+ *     die ID sicher nicht, entfällt er.</li>
+ *     <li>Der State Store vermerkt jede ID für alle Replicas. Eine neue ID wird mit First-Write-Wins
+ *     reserviert; wurde sie schon von einem anderen Replica reserviert, schlägt das Schreiben fehl und die
+ *     Bestellung gilt als Duplikat.</li>
+ * </ol>
+ * Eine neue Bestellung kostet so einen einzigen Schreibzugriff, ein Duplikat aus dem Fenster keinen.
+ * Die Reservierung läuft nach {@code lease} ab, damit eine Bestellung nach einem Absturz während der
+ * Verarbeitung erneut verarbeitet wird; erst nach erfolgreicher Verarbeitung wird sie für {@code retention}
+ * vermerkt.
+ * <p>
+ * Gezählt werden erkannte Duplikate je Stufe ({@code orders.duplicates}) und Lesezugriffe auf den State Store
+ * ({@code orders.deduplication.reads}).
+ */
+@Slf4j
+class OrderDeduplicator {
+    private static final String KEY_PREFIX = "order-event||";
+    private static final String PROCESSING = "processing";
+    private static final String PROCESSED = "processed";
+    private static final StateOptions FIRST_WRITE =
+            new StateOptions(StateOptions.Consistency.STRONG, StateOptions.Concurrency.FIRST_WRITE);
+
+    private final DaprClient daprClient;
+    private final String stateStoreName;
+    private final Duration timeout;
+    private final Map<String, String> leaseMetadata;
+    private final Map<String, String> retentionMetadata;
+    private final LinkedHashMap<String, Boolean> window;
+    private final BloomFilter filter;
+    private final Counter windowDuplicates;
+    private final Counter storeDuplicates;
+    private final Counter storeReads;
+
+    OrderDeduplicator(OrderDeduplicationProperties config, DaprClient daprClient, MeterRegistry meterRegistry) {
+        this.daprClient = daprClient;
+        this.stateStoreName = config.stateStoreName();
+        this.timeout = config.timeout();
+        this.leaseMetadata = Map.of("ttlInSeconds", Long.toString(config.lease().toSeconds()));
+        this.retentionMetadata = Map.of("ttlInSeconds", Long.toString(config.retention().toSeconds()));
+        int windowSize = config.windowSize();
+        this.window = new LinkedHashMap<>(windowSize * 4 / 3 + 1) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > windowSize;
+            }
+        };
+        this.filter = new BloomFilter(config.filterCapacity(), config.falsePositiveRate());
+        this.windowDuplicates = duplicateCounter(meterRegistry, "window");
+        this.storeDuplicates = duplicateCounter(meterRegistry, "store");
+        this.storeReads = Counter.builder("orders.deduplication.reads")
+                .description("Lesezugriffe auf den State Store zur Erkennung von Duplikaten")
+                .register(meterRegistry);
+        log.info("Bloom-Filter für {} CloudEvent-IDs belegt {} KB", config.filterCapacity(), filter.sizeInBytes() / 1024);
+    }
+
+    /**
+     * Reserviert eine CloudEvent-ID für die Verarbeitung. Das Fenster wird sofort aktualisiert, so dass auch
+     * ein Duplikat im selben Batch erkannt wird, bevor der State Store geantwortet hat.
+     *
+     * @return Ein Mono mit true, wenn die Bestellung neu ist und verarbeitet werden soll, und false bei einem
+     * Duplikat; mit einem Fehler, wenn der State Store nicht rechtzeitig geantwortet hat. Dann ist die ID
+     * nicht reserviert und die Bestellung muss erneut zugestellt werden.
+     */
+    Mono<Boolean> claim(String eventId) {
+        boolean maybeSeen;
+        synchronized (window) {
+            if (window.containsKey(eventId)) {
+                windowDuplicates.increment();
+                return Mono.just(false);
+            }
+            window.put(eventId, Boolean.TRUE);
+            maybeSeen = filter.mightContain(eventId);
+        }
+        Mono<Boolean> seen = Mono.just(false);
+        if (maybeSeen) {
+            storeReads.increment();
+            seen = daprClient.getState(stateStoreName, key(eventId), String.class)
+                    .map(state -> state.getValue() != null);
+        }
+        return seen
+                .flatMap(alreadySeen -> alreadySeen ? Mono.just(false) : reserve(eventId))
+                .timeout(timeout)
+                .doOnNext(isNew -> {
+                    if (isNew) {
+                        filter.add(eventId);
+                    } else {
+                        storeDuplicates.increment();
+                    }
+                })
+                .doOnError(e -> forget(eventId));
+    }
+
+    /**
+     * Vermerkt eine verarbeitete CloudEvent-ID dauerhaft. Schlägt das fehl, bleibt die ID bis zum Ablauf der
+     * Reservierung im State Store und bis dahin im Fenster und im Bloom-Filter dieses Replicas bekannt.
+     */
+    void complete(String eventId) {
+        daprClient.saveBulkState(stateStoreName,
+                        List.of(new State<>(key(eventId), PROCESSED, null, retentionMetadata, null)))
+                .subscribe(null, e -> log.warn("CloudEvent {} konnte nicht als verarbeitet vermerkt werden", eventId, e));
+    }
+
+    /**
+     * Gibt die Reservierung einer CloudEvent-ID frei, deren Bestellung nicht verarbeitet wurde, damit die
+     * erneute Zustellung nicht als Duplikat verworfen wird.
+     */
+    void release(String eventId) {
+        forget(eventId);
+        daprClient.deleteState(stateStoreName, key(eventId))
+                .subscribe(null, e -> log.warn("Reservierung von CloudEvent {} konnte nicht freigegeben werden", eventId, e));
+    }
+
+    /**
+     * Prüft im State Store, ob eine CloudEvent-ID, die {@link #claim(String)} als Duplikat gemeldet hat,
+     * tatsächlich verarbeitet ist oder nur noch reserviert. Ist sie weder das eine noch das andere, etwa weil
+     * die Reservierung abgelaufen ist, wird sie aus dem Fenster entfernt, damit die nächste Zustellung sie
+     * wieder reservieren kann.
+     *
+     * @return Ein Mono mit true, wenn die Bestellung verarbeitet ist
+     */
+    Mono<Boolean> isProcessed(String eventId) {
+        storeReads.increment();
+        return daprClient.getState(stateStoreName, key(eventId), String.class)
+                .map(state -> {
+                    if (state.getValue() == null) {
+                        forget(eventId);
+                    }
+                    return PROCESSED.equals(state.getValue());
+                })
+                .timeout(timeout);
+    }
+
+    private Mono<Boolean> reserve(String eventId) {
+        return daprClient.saveBulkState(stateStoreName,
+                        List.of(new State<>(key(eventId), PROCESSING, null, leaseMetadata, FIRST_WRITE)))
+                .thenReturn(true)
+                .onErrorResume(OrderDeduplicator::isConflict, e -> Mono.just(false));
+    }
+
+    private void forget(String eventId) {
+        synchronized (window) {
+            window.remove(eventId);
+        }
+    }
+
+    /**
+     * First-Write-Wins ohne ETag schlägt fehl, wenn der Key bereits existiert. Über gRPC meldet Dapr das als
+     * {@code ABORTED}, über HTTP als ETag-Fehler.
+     */
+    private static boolean isConflict(Throwable e) {
+        return e instanceof DaprException daprException
+                && ("ABORTED".equals(daprException.getErrorCode())
+                || String.valueOf(daprException.getMessage()).toLowerCase().contains("etag"));
+    }
+
+    private static String key(String eventId) {
+        return KEY_PREFIX + eventId;
+    }
+
+    private static Counter duplicateCounter(MeterRegistry meterRegistry, String detectedBy) {
+        return Counter.builder("orders.duplicates")
+                .description("Erneut zugestellte, nicht noch einmal verarbeitete Bestellungen")
+                .tag("detected_by", detectedBy)
+                .register(meterRegistry);
+    }
+}
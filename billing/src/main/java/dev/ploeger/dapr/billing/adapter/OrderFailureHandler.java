@@ -0,0 +1,172 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import dev.ploeger.dapr.billing.config.OrderRetryProperties;
+import dev.ploeger.dapr.billing.model.FailedOrder;
+import dev.ploeger.dapr.billing.model.Order;
+import io.dapr.client.DaprClient;
+import io.dapr.client.domain.CloudEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+/**
+ * Legt fehlgeschlagene Bestellungen in Retry- oder Dead-Letter-Topics ab, statt sie vom Sidecar sofort
+ * erneut zustellen zu lassen. So blockiert eine einzelne fehlerhafte Bestellung nicht die Partition des
+ * Topics "orders".
+ * <p>
+ * Fehler werden klassifiziert: Fehler in den Daten der Bestellung ({@link IllegalArgumentException},
+ * {@link NullPointerException} usw.) und unlesbare Bestellungen werden nicht wiederholt und landen sofort im
+ * Dead-Letter-Topic. Alle anderen Fehler gelten als vorübergehend; die Bestellung wird im Retry-Topic der
+ * nächsten Wiederholung abgelegt, mit exponentiell wachsender Wartezeit je Stufe. Jede Stufe hat ein eigenes
+ * Topic mit fester Wartezeit, so dass die Bestellungen darin in der Reihenfolge ihrer Fälligkeit liegen. Nach
+ * der letzten Stufe landet die Bestellung im Dead-Letter-Topic.
+ * <p>
+ * Gezählt werden die abgelegten Bestellungen je Ziel ({@code orders.parked}).
+ */
+@Slf4j
+class OrderFailureHandler {
+
+    enum Classification {
+        RETRYABLE,
+        PERMANENT
+    }
+
+    private final OrderRetryProperties config;
+    private final String pubsubName;
+    private final DaprClient daprClient;
+    private final Duration maxDelay;
+    private final Counter retryCounter;
+    private final Counter deadLetterCounter;
+
+    OrderFailureHandler(OrderRetryProperties config, String pubsubName, DaprClient daprClient, MeterRegistry meterRegistry) {
+        if (config.delays().isEmpty()) {
+            throw new IllegalArgumentException("Mindestens eine Wartezeit für Wiederholungen erforderlich");
+        }
+        this.config = config;
+        this.pubsubName = pubsubName;
+        this.daprClient = daprClient;
+        this.maxDelay = config.delays().stream().max(Duration::compareTo).orElseThrow();
+        this.retryCounter = parkedCounter(meterRegistry, "retry");
+        this.deadLetterCounter = parkedCounter(meterRegistry, "dead-letter");
+    }
+
+    /**
+     * @return Die Retry-Topics, eines je Wiederholung
+     */
+    List<String> retryTopics() {
+        return IntStream.rangeClosed(1, config.delays().size())
+                .mapToObj(attempt -> config.retryTopicPrefix() + attempt)
+                .toList();
+    }
+
+    /**
+     * Legt eine Bestellung ab, die bei der ersten Zustellung fehlschlug.
+     *
+     * @param order Die Bestellung; null, wenn sie nicht gelesen werden konnte
+     * @return true, wenn die Bestellung abgelegt wurde; false, wenn das Veröffentlichen fehlschlug und der
+     * Sidecar sie erneut zustellen muss
+     */
+    boolean park(CloudEvent<JsonNode> event, Order order, Throwable error) {
+        FailedOrder failed = new FailedOrder(event.getId(), event.getSource(), event.getType(), event.getTopic(),
+                event.getPubsubName(), event.getDatacontenttype(), order, order == null ? payload(event) : null,
+                0, 0, null);
+        return park(failed, error);
+    }
+
+    /**
+     * Legt eine Bestellung im Retry-Topic der nächsten Wiederholung oder im Dead-Letter-Topic ab.
+     *
+     * @return true, wenn die Bestellung abgelegt wurde; false, wenn das Veröffentlichen fehlschlug und der
+     * Sidecar sie erneut zustellen muss
+     */
+    boolean park(FailedOrder failed, Throwable error) {
+        int attempt = failed.attempt() + 1;
+        String message = describe(error);
+        boolean retry = failed.order() != null
+                && classify(error) == Classification.RETRYABLE
+                && attempt <= config.delays().size();
+        String topic = retry ? config.retryTopicPrefix() + attempt : config.deadLetterTopic();
+        FailedOrder parked = retry
+                ? failed.withFailure(attempt, System.currentTimeMillis() + config.delays().get(attempt - 1).toMillis(), message)
+                : failed.withFailure(failed.attempt(), 0, message);
+        try {
+            daprClient.publishEvent(pubsubName, topic, parked).block(config.publishTimeout());
+        } catch (RuntimeException e) {
+            log.error("CloudEvent {} konnte nicht in {} abgelegt werden", failed.eventId(), topic, e);
+            return false;
+        }
+        if (retry) {
+            retryCounter.increment();
+            log.warn("CloudEvent {} fehlgeschlagen ({}), Wiederholung {} in {} ms",
+                    failed.eventId(), message, attempt, config.delays().get(attempt - 1).toMillis());
+        } else {
+            deadLetterCounter.increment();
+            log.error("CloudEvent {} fehlgeschlagen ({}), abgelegt in {}", failed.eventId(), message, topic);
+        }
+        return true;
+    }
+
+    /**
+     * Wartet, bis die Wiederholung fällig ist, aber höchstens {@code max-await}, damit der Sidecar den
+     * Request nicht abbricht. Blockiert damit nur das jeweilige Retry-Topic, dessen Bestellungen ohnehin in der
+     * Reihenfolge ihrer Fälligkeit liegen.
+     *
+     * @return true, wenn die Wiederholung fällig ist; false, wenn sie später fällig wird und erneut zugestellt
+     * werden muss
+     */
+    boolean awaitDue(FailedOrder failed) throws InterruptedException {
+        long wait = failed.notBefore() - System.currentTimeMillis();
+        // Länger als die größte Wartezeit kann es nur bei abweichenden Uhren der Replicas dauern
+        if (wait <= 0 || wait > maxDelay.toMillis()) {
+            return true;
+        }
+        if (wait > config.maxAwait().toMillis()) {
+            return false;
+        }
+        Thread.sleep(wait);
+        return true;
+    }
+
+    static Classification classify(Throwable error) {
+        Throwable cause = error instanceof ExecutionException || error instanceof CompletionException
+                ? error.getCause()
+                : error;
+        return cause instanceof IllegalArgumentException
+                || cause instanceof NullPointerException
+                || cause instanceof ClassCastException
+                || cause instanceof ArithmeticException
+                || cause instanceof IndexOutOfBoundsException
+                || cause instanceof UnsupportedOperationException
+                ? Classification.PERMANENT
+                : Classification.RETRYABLE;
+    }
+
+    private static String describe(Throwable error) {
+        Throwable cause = error instanceof ExecutionException || error instanceof CompletionException
+                ? error.getCause()
+                : error;
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+
+    private static String payload(CloudEvent<JsonNode> event) {
+        if (event.getData() != null) {
+            return event.getData().toString();
+        }
+        return event.getBinaryData() != null ? Base64.getEncoder().encodeToString(event.getBinaryData()) : null;
+    }
+
+    private static Counter parkedCounter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("orders.parked")
+                .description("In Retry- oder Dead-Letter-Topics abgelegte Bestellungen")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+}
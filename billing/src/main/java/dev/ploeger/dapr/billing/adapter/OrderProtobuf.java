@@ -0,0 +1,85 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import dev.ploeger.dapr.billing.model.Order;
+import dev.ploeger.dapr.billing.model.Sweet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dekodiert Bestellungen, die der Shop im kompakten Format veröffentlicht (Schema:
+ * {@code shop/src/main/proto/order.proto}). Sie kommen als {@code data_base64} im CloudEvent an;
+ * JSON-Bestellungen werden weiterhin direkt von Jackson gelesen.
+ */
+final class OrderProtobuf {
+    private static final byte MAGIC = (byte) 0xC5;
+    private static final byte VERSION = 1;
+    private static final byte TYPE_ORDER = 3;
+    private static final int HEADER_SIZE = 4;
+
+    private static final int ORDER_NAME = 1;
+    private static final int ORDER_ADDRESS = 2;
+    private static final int ORDER_EMAIL = 3;
+    private static final int ORDER_PHONE = 4;
+    private static final int ORDER_PAYMENT_METHOD = 5;
+    private static final int ORDER_SWEETS = 6;
+    private static final int SWEET_NAME = 1;
+    private static final int SWEET_PRICE_CENTS = 2;
+    private static final int SWEET_QUANTITY = 3;
+    private static final int SWEET_PRICE = 4;
+
+    private OrderProtobuf() {
+    }
+
+    static Order decode(byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC || bytes[2] != TYPE_ORDER) {
+            throw new IOException("Keine Bestellung im kompakten Format");
+        }
+        if (bytes[1] > VERSION) {
+            throw new IOException("Unbekannte Version " + bytes[1] + " des kompakten Formats");
+        }
+        CodedInputStream input = CodedInputStream.newInstance(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+        String name = null;
+        String address = null;
+        String email = null;
+        String phone = null;
+        String paymentMethod = null;
+        List<Sweet> sweets = new ArrayList<>();
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case ORDER_NAME -> name = input.readString();
+                case ORDER_ADDRESS -> address = input.readString();
+                case ORDER_EMAIL -> email = input.readString();
+                case ORDER_PHONE -> phone = input.readString();
+                case ORDER_PAYMENT_METHOD -> paymentMethod = input.readString();
+                case ORDER_SWEETS -> sweets.add(readSweet(input));
+                default -> input.skipField(tag);
+            }
+        }
+        return new Order(name, address, email, phone, paymentMethod, sweets);
+    }
+
+    private static Sweet readSweet(CodedInputStream input) throws IOException {
+        int limit = input.pushLimit(input.readRawVarint32());
+        String name = null;
+        long priceCents = 0;
+        Double price = null;
+        int quantity = 0;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case SWEET_NAME -> name = input.readString();
+                case SWEET_PRICE_CENTS -> priceCents = input.readSInt64();
+                case SWEET_PRICE -> price = input.readDouble();
+                case SWEET_QUANTITY -> quantity = input.readSInt32();
+                default -> input.skipField(tag);
+            }
+        }
+        input.popLimit(limit);
+        return new Sweet(name, price != null ? price : priceCents / 100.0, quantity);
+    }
+}
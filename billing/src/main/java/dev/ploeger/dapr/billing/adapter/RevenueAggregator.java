@@ -0,0 +1,119 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.config.RevenueProperties;
+import dev.ploeger.dapr.billing.model.Order;
+import dev.ploeger.dapr.billing.model.RevenueReport;
+import dev.ploeger.dapr.billing.model.RevenueSnapshot;
+import io.dapr.client.DaprClient;
+import io.dapr.client.domain.State;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wertet die Umsätze der verarbeiteten Bestellungen laufend aus (siehe {@link RevenueWindows}).
+ * <p>
+ * Der Bericht wird alle {@code refresh-interval} neu berechnet und als fertiges Objekt vorgehalten; der
+ * Actuator-Endpunkt {@link RevenueEndpoint} liefert nur diese Referenz, egal wie oft er abgefragt wird.
+ * Alle {@code snapshot-interval} und beim Beenden wird der Stand im State Store gesichert und beim Start
+ * wieder geladen, so dass ein Neustart höchstens die Bestellungen seit dem letzten Snapshot kostet.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RevenueAggregator {
+    private static final Duration SNAPSHOT_TIMEOUT = Duration.ofSeconds(5);
+
+    private final RevenueProperties properties;
+    private final DaprClient daprClient;
+
+    private RevenueWindows windows;
+    private ScheduledExecutorService scheduler;
+    private volatile RevenueReport report;
+
+    @PostConstruct
+    void init() {
+        if (!properties.enabled()) {
+            return;
+        }
+        windows = new RevenueWindows(properties, System::currentTimeMillis);
+        restore();
+        report = windows.report();
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("revenue-aggregator").daemon(true).factory());
+        long refresh = properties.refreshInterval().toMillis();
+        scheduler.scheduleAtFixedRate(this::refresh, refresh, refresh, TimeUnit.MILLISECONDS);
+        long snapshot = properties.snapshotInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::snapshot, snapshot, snapshot, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void cleanup() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(SNAPSHOT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot();
+    }
+
+    /**
+     * Erfasst den Umsatz einer verarbeiteten Bestellung. Kann von beliebig vielen Threads gleichzeitig
+     * aufgerufen werden.
+     */
+    public void record(Order order) {
+        if (windows != null) {
+            windows.record(order);
+        }
+    }
+
+    /**
+     * @return Der zuletzt berechnete Bericht oder null, wenn die Auswertung ausgeschaltet ist
+     */
+    public RevenueReport report() {
+        return report;
+    }
+
+    private void refresh() {
+        try {
+            report = windows.report();
+        } catch (RuntimeException e) {
+            log.error("Umsatzbericht konnte nicht berechnet werden", e);
+        }
+    }
+
+    private void snapshot() {
+        try {
+            RevenueSnapshot snapshot = windows.snapshot();
+            daprClient.saveState(properties.stateStoreName(), properties.snapshotKey(), snapshot)
+                    .block(SNAPSHOT_TIMEOUT);
+            log.debug("Umsatz-Snapshot mit {} Buckets gesichert", snapshot.buckets().size());
+        } catch (RuntimeException e) {
+            log.warn("Umsatz-Snapshot konnte nicht gesichert werden: {}", e.getMessage());
+        }
+    }
+
+    private void restore() {
+        try {
+            State<RevenueSnapshot> state = daprClient.getState(properties.stateStoreName(), properties.snapshotKey(),
+                    RevenueSnapshot.class).block(SNAPSHOT_TIMEOUT);
+            if (state != null && state.getValue() != null) {
+                log.info("{} Umsatz-Buckets aus dem Snapshot übernommen", windows.restore(state.getValue()));
+            }
+        } catch (RuntimeException e) {
+            // Ohne Sidecar oder State Store startet die Auswertung leer
+            log.warn("Umsatz-Snapshot konnte nicht geladen werden: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.model.RevenueReport;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator-Endpunkt {@code /actuator/revenue} mit den Umsätzen der laufenden Zeitfenster. Liefert den
+ * vorberechneten Bericht des {@link RevenueAggregator}; 404, wenn die Auswertung ausgeschaltet ist.
+ */
+@Component
+@Endpoint(id = "revenue")
+@RequiredArgsConstructor
+public class RevenueEndpoint {
+
+    private final RevenueAggregator revenueAggregator;
+
+    @ReadOperation
+    public RevenueReport revenue() {
+        return revenueAggregator.report();
+    }
+}
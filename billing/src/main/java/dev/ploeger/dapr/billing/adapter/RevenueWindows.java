@@ -0,0 +1,278 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.config.RevenueProperties;
+import dev.ploeger.dapr.billing.model.Order;
+import dev.ploeger.dapr.billing.model.RevenueReport;
+import dev.ploeger.dapr.billing.model.RevenueSnapshot;
+import dev.ploeger.dapr.billing.model.Sweet;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Umsätze je Süßigkeit und Zahlungsart in Zeit-Buckets, aus denen feste und gleitende Zeitfenster berechnet
+ * werden.
+ * <p>
+ * Die Buckets liegen in einem Ring, dessen Position sich aus der Bucket-Nummer ergibt; veraltete Buckets
+ * werden beim ersten Schreiben in ihrer Position ersetzt. Innerhalb eines Buckets werden Namen über ein
+ * gemeinsames Verzeichnis auf fortlaufende int-IDs abgebildet, die direkt ein Array von {@link LongAdder}n
+ * indizieren. Das Erfassen einer Bestellung kommt damit ohne Locks, Hash-Lookups auf Bucket-Ebene und
+ * Boxing aus; gleichzeitige Worker schreiben in getrennte Zellen der LongAdder.
+ */
+class RevenueWindows {
+    private static final String UNKNOWN = "unbekannt";
+
+    private final long bucketMillis;
+    private final int tumblingBuckets;
+    private final List<Integer> slidingBuckets;
+    private final AtomicReferenceArray<Bucket> ring;
+    private final LongSupplier clock;
+    private final Names sweets = new Names();
+    private final Names paymentMethods = new Names();
+
+    RevenueWindows(RevenueProperties config, LongSupplier clock) {
+        this.bucketMillis = config.bucket().toMillis();
+        this.tumblingBuckets = buckets(config.tumblingWindow());
+        this.slidingBuckets = config.slidingWindows().stream().map(this::buckets).toList();
+        int historyBuckets = buckets(config.history());
+        int largestWindow = slidingBuckets.stream().reduce(2 * tumblingBuckets, Math::max);
+        if (historyBuckets < largestWindow) {
+            throw new IllegalArgumentException("history muss mindestens " + config.bucket().multipliedBy(largestWindow)
+                    + " abdecken, damit alle Zeitfenster vollständig berechnet werden können");
+        }
+        this.ring = new AtomicReferenceArray<>(historyBuckets);
+        this.clock = clock;
+    }
+
+    void record(Order order) {
+        Bucket bucket = bucket(clock.getAsLong() / bucketMillis);
+        long orderCents = 0;
+        if (order.sweets() != null) {
+            for (Sweet sweet : order.sweets()) {
+                long cents = Math.round(sweet.price() * 100) * sweet.quantity();
+                bucket.bySweet.add(sweets.id(sweet.name() != null ? sweet.name() : UNKNOWN), cents);
+                orderCents += cents;
+            }
+        }
+        String paymentMethod = order.paymentMethod() != null ? order.paymentMethod() : UNKNOWN;
+        bucket.byPaymentMethod.add(paymentMethods.id(paymentMethod), orderCents);
+        bucket.revenueCents.add(orderCents);
+        bucket.orders.increment();
+    }
+
+    RevenueReport report() {
+        long now = clock.getAsLong();
+        long currentIndex = now / bucketMillis;
+        long tumblingStart = Math.floorDiv(currentIndex, tumblingBuckets) * tumblingBuckets;
+        List<RevenueReport.Window> sliding = new ArrayList<>(slidingBuckets.size());
+        for (int buckets : slidingBuckets) {
+            sliding.add(window(currentIndex - buckets + 1, currentIndex));
+        }
+        return new RevenueReport(Instant.ofEpochMilli(now),
+                window(tumblingStart, tumblingStart + tumblingBuckets - 1),
+                window(tumblingStart - tumblingBuckets, tumblingStart - 1),
+                sliding);
+    }
+
+    RevenueSnapshot snapshot() {
+        long currentIndex = clock.getAsLong() / bucketMillis;
+        List<RevenueSnapshot.Bucket> buckets = new ArrayList<>();
+        for (int slot = 0; slot < ring.length(); slot++) {
+            Bucket bucket = ring.get(slot);
+            if (bucket != null && bucket.index > currentIndex - ring.length()) {
+                buckets.add(new RevenueSnapshot.Bucket(bucket.index, bucket.orders.sum(), bucket.revenueCents.sum(),
+                        bucket.bySweet.toMap(sweets), bucket.byPaymentMethod.toMap(paymentMethods)));
+            }
+        }
+        return new RevenueSnapshot(bucketMillis, buckets);
+    }
+
+    /**
+     * Übernimmt einen gesicherten Stand. Buckets, die außerhalb der Historie liegen, werden ignoriert.
+     *
+     * @return Anzahl der übernommenen Buckets
+     */
+    int restore(RevenueSnapshot snapshot) {
+        if (snapshot.bucketMillis() != bucketMillis) {
+            return 0;
+        }
+        long currentIndex = clock.getAsLong() / bucketMillis;
+        int restored = 0;
+        for (RevenueSnapshot.Bucket saved : snapshot.buckets()) {
+            if (saved.index() <= currentIndex - ring.length() || saved.index() > currentIndex) {
+                continue;
+            }
+            Bucket bucket = bucket(saved.index());
+            bucket.orders.add(saved.orders());
+            bucket.revenueCents.add(saved.revenueCents());
+            saved.bySweet().forEach((name, cents) -> bucket.bySweet.add(sweets.id(name), cents));
+            saved.byPaymentMethod().forEach((name, cents) -> bucket.byPaymentMethod.add(paymentMethods.id(name), cents));
+            restored++;
+        }
+        return restored;
+    }
+
+    private RevenueReport.Window window(long fromIndex, long toIndex) {
+        long orders = 0;
+        long revenueCents = 0;
+        long[] bySweet = new long[sweets.size()];
+        long[] byPaymentMethod = new long[paymentMethods.size()];
+        for (long index = fromIndex; index <= toIndex; index++) {
+            Bucket bucket = ring.get(slot(index));
+            if (bucket == null || bucket.index != index) {
+                continue;
+            }
+            orders += bucket.orders.sum();
+            revenueCents += bucket.revenueCents.sum();
+            bucket.bySweet.addTo(bySweet);
+            bucket.byPaymentMethod.addTo(byPaymentMethod);
+        }
+        return new RevenueReport.Window(Instant.ofEpochMilli(fromIndex * bucketMillis),
+                Instant.ofEpochMilli((toIndex + 1) * bucketMillis), orders, revenueCents / 100.0,
+                ranked(bySweet, sweets), ranked(byPaymentMethod, paymentMethods));
+    }
+
+    private Bucket bucket(long index) {
+        int slot = slot(index);
+        while (true) {
+            Bucket bucket = ring.get(slot);
+            // Ein neuerer Bucket an der Position bleibt bestehen; eine Bestellung, die genau am Übergang
+            // erfasst wird, landet dann im neueren Bucket
+            if (bucket != null && bucket.index >= index) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(index);
+            if (ring.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private int slot(long index) {
+        return (int) Math.floorMod(index, (long) ring.length());
+    }
+
+    private int buckets(Duration window) {
+        if (window.toMillis() % bucketMillis != 0 || window.toMillis() < bucketMillis) {
+            throw new IllegalArgumentException("Zeitfenster " + window + " ist kein Vielfaches der Bucket-Breite");
+        }
+        return Math.toIntExact(window.toMillis() / bucketMillis);
+    }
+
+    private static Map<String, Double> ranked(long[] cents, Names names) {
+        Integer[] ids = new Integer[cents.length];
+        Arrays.setAll(ids, i -> i);
+        Arrays.sort(ids, Comparator.comparingLong((Integer id) -> cents[id]).reversed());
+        Map<String, Double> ranked = new LinkedHashMap<>();
+        for (int id : ids) {
+            if (cents[id] != 0) {
+                ranked.put(names.name(id), cents[id] / 100.0);
+            }
+        }
+        return ranked;
+    }
+
+    private static final class Bucket {
+        private final long index;
+        private final LongAdder orders = new LongAdder();
+        private final LongAdder revenueCents = new LongAdder();
+        private final Counters bySweet = new Counters();
+        private final Counters byPaymentMethod = new Counters();
+
+        Bucket(long index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Zähler je Name, indiziert über die ID aus {@link Names}. Das Array wächst nur, wenn ein neuer Name
+     * auftaucht; alle anderen Zugriffe lesen nur die volatile Referenz.
+     */
+    private static final class Counters {
+        private volatile LongAdder[] adders = new LongAdder[16];
+
+        void add(int id, long value) {
+            LongAdder[] current = adders;
+            LongAdder adder = id < current.length ? current[id] : null;
+            (adder != null ? adder : create(id)).add(value);
+        }
+
+        void addTo(long[] sums) {
+            LongAdder[] current = adders;
+            for (int id = 0; id < Math.min(current.length, sums.length); id++) {
+                if (current[id] != null) {
+                    sums[id] += current[id].sum();
+                }
+            }
+        }
+
+        Map<String, Long> toMap(Names names) {
+            LongAdder[] current = adders;
+            Map<String, Long> map = new LinkedHashMap<>();
+            for (int id = 0; id < current.length; id++) {
+                if (current[id] != null) {
+                    map.put(names.name(id), current[id].sum());
+                }
+            }
+            return map;
+        }
+
+        private synchronized LongAdder create(int id) {
+            LongAdder[] current = adders;
+            if (id >= current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, id + 1));
+            } else if (current[id] != null) {
+                return current[id];
+            } else {
+                current = current.clone();
+            }
+            current[id] = new LongAdder();
+            adders = current;
+            return current[id];
+        }
+    }
+
+    /**
+     * Bildet Namen auf fortlaufende IDs ab. Neue Namen sind selten, also wird nur beim Anlegen gesperrt.
+     */
+    private static final class Names {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] names = new String[0];
+
+        int id(String name) {
+            Integer id = ids.get(name);
+            return id != null ? id : register(name);
+        }
+
+        String name(int id) {
+            return names[id];
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        private synchronized int register(String name) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            String[] grown = Arrays.copyOf(names, names.length + 1);
+            grown[names.length] = name;
+            // Erst den Namen veröffentlichen, dann die ID, damit name(id) immer funktioniert
+            names = grown;
+            ids.put(name, names.length - 1);
+            return names.length - 1;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.config.OrderProcessingProperties;
+import dev.ploeger.dapr.billing.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Verarbeitet Bestellungen parallel, Bestellungen desselben Kunden aber in Eingangsreihenfolge.
+ * <p>
+ * Jeder Worker hat eine eigene, begrenzte Queue. Über den Kundenschlüssel (E-Mail-Adresse, ersatzweise
+ * der Name) wird jede Bestellung immer demselben Worker zugeordnet, so dass die Bestellungen eines Kunden
+ * nacheinander verarbeitet werden, während verschiedene Kunden parallel laufen. Ist die Queue eines
+ * Workers voll, wird die Bestellung nicht angenommen; der Aufrufer bittet den Sidecar dann, sie später
+ * erneut zuzustellen.
+ * <p>
+ * Die Verarbeitung einer Bestellung kann asynchron enden, etwa erst mit dem Speichern ihrer Rechnung. Der
+ * Worker wartet darauf nicht, sondern nimmt die nächste Bestellung; die Reihenfolge je Kunde gilt also für den
+ * Start der Verarbeitung.
+ * <p>
+ * Gemessen werden die wartenden Bestellungen ({@code orders.processing.queue}), die Dauer der
+ * Verarbeitung ({@code orders.processing.duration}) und die abgelehnten Bestellungen
+ * ({@code orders.processing.rejected}).
+ */
+@Slf4j
+class StripedOrderProcessor implements AutoCloseable {
+    private static final Duration IDLE_POLL = Duration.ofMillis(200);
+
+    private final BiFunction<String, Order, CompletableFuture<Double>> processor;
+    private final List<BlockingQueue<Task>> queues;
+    private final List<Thread> workers;
+    private final Timer processingTimer;
+    private final Counter rejectedCounter;
+    private volatile boolean running = true;
+
+    /**
+     * @param processor      Verarbeitet eine Bestellung zur ID ihres CloudEvents; das Future liefert ihren
+     *                       Gesamtbetrag, sobald sie vollständig verarbeitet ist
+     * @param virtualThreads Worker als virtuelle statt als Plattform-Threads starten
+     */
+    StripedOrderProcessor(OrderProcessingProperties config,
+                          BiFunction<String, Order, CompletableFuture<Double>> processor,
+                          MeterRegistry meterRegistry,
+                          boolean virtualThreads) {
+        this.processor = processor;
+        this.queues = new ArrayList<>(config.workers());
+        this.workers = new ArrayList<>(config.workers());
+        this.processingTimer = Timer.builder("orders.processing.duration")
+                .description("Dauer der Verarbeitung einer Bestellung bis zum Abschluss ihres Futures")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("orders.processing.rejected")
+                .description("Wegen voller Queue zur erneuten Zustellung abgelehnte Bestellungen")
+                .register(meterRegistry);
+        Gauge.builder("orders.processing.queue", this, StripedOrderProcessor::pending)
+                .description("Angenommene, noch nicht verarbeitete Bestellungen")
+                .register(meterRegistry);
+        Thread.Builder threadBuilder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        for (int i = 0; i < config.workers(); i++) {
+            BlockingQueue<Task> queue = new ArrayBlockingQueue<>(config.queueCapacity());
+            queues.add(queue);
+            workers.add(threadBuilder.name("order-processor-" + i).start(() -> run(queue)));
+        }
+    }
+
+    /**
+     * Reiht eine Bestellung beim Worker ihres Kunden ein.
+     *
+     * @param eventId ID des CloudEvents, mit dem die Bestellung zugestellt wurde; null, wenn unbekannt
+     * @return Ein Future mit dem Gesamtbetrag der Bestellung, das mit einem Fehler abgeschlossen wird, wenn
+     * die Verarbeitung fehlschlug; null, wenn die Queue des Workers voll ist oder der Processor beendet wurde
+     */
+    CompletableFuture<Double> submit(String eventId, Order order) {
+        CompletableFuture<Double> result = new CompletableFuture<>();
+        if (!running || !queues.get(stripe(order)).offer(new Task(eventId, order, result))) {
+            rejectedCounter.increment();
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Schlüssel, über den Bestellungen desselben Kunden demselben Worker zugeordnet werden.
+     */
+    static String customerKey(Order order) {
+        String key = order.email() != null && !order.email().isBlank() ? order.email() : order.name();
+        return key != null ? key.trim().toLowerCase(Locale.ROOT) : "";
+    }
+
+    int stripe(Order order) {
+        return Math.floorMod(customerKey(order).hashCode(), queues.size());
+    }
+
+    int pending() {
+        int pending = 0;
+        for (BlockingQueue<Task> queue : queues) {
+            pending += queue.size();
+        }
+        return pending;
+    }
+
+    /**
+     * Beendet die Worker, nachdem sie die bereits angenommenen Bestellungen verarbeitet haben.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(Duration.ofSeconds(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Was danach noch wartet, stellt der Sidecar nach dem Neustart erneut zu
+        for (BlockingQueue<Task> queue : queues) {
+            Task task;
+            while ((task = queue.poll()) != null) {
+                task.result().completeExceptionally(new BackpressureException("Order-Processor wurde beendet"));
+            }
+        }
+    }
+
+    private void run(BlockingQueue<Task> queue) {
+        while (running || !queue.isEmpty()) {
+            Task task;
+            try {
+                task = queue.poll(IDLE_POLL.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            CompletableFuture<Double> processed;
+            try {
+                processed = processor.apply(task.eventId(), task.order());
+            } catch (RuntimeException e) {
+                processed = CompletableFuture.failedFuture(e);
+            }
+            processed.whenComplete((total, error) -> {
+                processingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (error == null) {
+                    task.result().complete(total);
+                } else {
+                    task.result().completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                }
+            });
+        }
+    }
+
+    private record Task(String eventId, Order order, CompletableFuture<Double> result) {
+    }
+}
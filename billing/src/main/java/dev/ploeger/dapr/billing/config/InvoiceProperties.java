@@ -0,0 +1,41 @@
+package dev.ploeger.dapr.billing.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration der Rechnungserstellung und des Mailversands.
+ *
+ * @param enabled          Rechnungen erstellen und verschicken ein- oder ausschalten
+ * @param stateStoreName   State Store, in dem die Rechnungen gespeichert werden
+ * @param sender           Absenderadresse der Rechnungsmails
+ * @param queueCapacity    Maximale Anzahl wartender Rechnungen je Stufe; ist sie erreicht, wird die Bestellung
+ *                         erneut zugestellt
+ * @param persistBatchSize Maximale Anzahl an Rechnungen je Schreibzugriff auf den State Store
+ * @param persistWindow    Wie lange nach der ersten Rechnung auf weitere zum gemeinsamen Speichern gewartet wird
+ * @param persistTimeout   Maximale Dauer eines Schreibzugriffs auf den State Store
+ * @param persistAttempts  Versuche je Batch, bevor seine Bestellungen als fehlgeschlagen gelten und an die
+ *                         Fehlerbehandlung gehen
+ * @param mailBatchSize    Maximale Anzahl an Mails, die über eine SMTP-Verbindung verschickt werden
+ * @param mailsPerSecond   Höchstens so viele Mails werden je Sekunde verschickt
+ * @param maxAttempts      Versuche je Mail, bevor sie als nicht zustellbar gilt
+ * @param retryBackoff     Wartezeit vor einem erneuten Versuch nach einem Fehler
+ */
+@ConfigurationProperties(prefix = "billing.invoices")
+public record InvoiceProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("kvstore") String stateStoreName,
+        @DefaultValue("rechnung@sweets.example") String sender,
+        @DefaultValue("10000") int queueCapacity,
+        @DefaultValue("50") int persistBatchSize,
+        @DefaultValue("50ms") Duration persistWindow,
+        @DefaultValue("5s") Duration persistTimeout,
+        @DefaultValue("5") int persistAttempts,
+        @DefaultValue("20") int mailBatchSize,
+        @DefaultValue("10") double mailsPerSecond,
+        @DefaultValue("3") int maxAttempts,
+        @DefaultValue("1s") Duration retryBackoff
+) {
+}
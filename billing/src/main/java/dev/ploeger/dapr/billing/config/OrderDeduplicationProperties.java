@@ -0,0 +1,32 @@
+package dev.ploeger.dapr.billing.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration der Erkennung erneut zugestellter Bestellungen.
+ *
+ * @param enabled           Erkennung ein- oder ausschalten
+ * @param stateStoreName    State Store, in dem verarbeitete CloudEvent-IDs für alle Replicas vermerkt werden
+ * @param windowSize        Anzahl der zuletzt gesehenen IDs, die exakt im Speicher gehalten werden
+ * @param filterCapacity    IDs je Generation des Bloom-Filters; es werden zwei Generationen gehalten
+ * @param falsePositiveRate Angestrebte Rate falsch positiver Treffer des Bloom-Filters
+ * @param retention         Wie lange eine verarbeitete ID im State Store vermerkt bleibt
+ * @param lease             Wie lange eine ID während der Verarbeitung reserviert bleibt; stürzt die Anwendung
+ *                          währenddessen ab, wird die Bestellung danach erneut verarbeitet
+ * @param timeout           Maximale Dauer eines Zugriffs auf den State Store
+ */
+@ConfigurationProperties(prefix = "billing.orders.deduplication")
+public record OrderDeduplicationProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("kvstore") String stateStoreName,
+        @DefaultValue("10000") int windowSize,
+        @DefaultValue("1000000") int filterCapacity,
+        @DefaultValue("0.01") double falsePositiveRate,
+        @DefaultValue("7d") Duration retention,
+        @DefaultValue("2m") Duration lease,
+        @DefaultValue("2s") Duration timeout
+) {
+}
@@ -0,0 +1,22 @@
+package dev.ploeger.dapr.billing.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration der parallelen Verarbeitung von Bestellungen.
+ *
+ * @param workers       Anzahl der Worker; Bestellungen eines Kunden landen immer beim selben Worker
+ * @param queueCapacity Maximale Anzahl wartender Bestellungen je Worker; darüber hinaus wird der Sidecar
+ *                      gebeten, die Bestellung später erneut zuzustellen
+ * @param timeout       Wie lange ein Request des Sidecars höchstens auf die Verarbeitung seiner Bestellungen wartet
+ */
+@ConfigurationProperties(prefix = "billing.orders.processing")
+public record OrderProcessingProperties(
+        @DefaultValue("8") int workers,
+        @DefaultValue("100") int queueCapacity,
+        @DefaultValue("30s") Duration timeout
+) {
+}
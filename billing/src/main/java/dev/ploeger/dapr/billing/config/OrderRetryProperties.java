@@ -0,0 +1,31 @@
+package dev.ploeger.dapr.billing.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Konfiguration der Wiederholung fehlgeschlagener Bestellungen über eigene Topics.
+ *
+ * @param enabled          Retry- und Dead-Letter-Topics verwenden; ausgeschaltet stellt der Sidecar fehlgeschlagene
+ *                         Bestellungen selbst erneut zu
+ * @param delays           Wartezeit vor jeder Wiederholung; je Eintrag gibt es ein Retry-Topic
+ * @param retryTopicPrefix Präfix der Retry-Topics, gefolgt von der Nummer der Wiederholung
+ * @param deadLetterTopic  Topic für Bestellungen, die dauerhaft nicht verarbeitet werden können
+ * @param publishTimeout   Maximale Dauer der Veröffentlichung in ein Retry- oder Dead-Letter-Topic
+ * @param maxAwait         Wie lange ein Request aus einem Retry-Topic höchstens auf die Fälligkeit der Wiederholung
+ *                         wartet; muss unter dem Timeout liegen, den der Sidecar einer Antwort der Anwendung gibt.
+ *                         Ist die Wiederholung später fällig, stellt der Sidecar sie erneut zu
+ */
+@ConfigurationProperties(prefix = "billing.orders.retry")
+public record OrderRetryProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue({"1s", "10s", "1m"}) List<Duration> delays,
+        @DefaultValue("orders-retry-") String retryTopicPrefix,
+        @DefaultValue("orders-dlq") String deadLetterTopic,
+        @DefaultValue("5s") Duration publishTimeout,
+        @DefaultValue("10s") Duration maxAwait
+) {
+}
@@ -0,0 +1,23 @@
+package dev.ploeger.dapr.billing.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration des Abonnements auf das Topic "orders".
+ *
+ * @param bulk             Bulk Subscribe ein- oder ausschalten; ausgeschaltet stellt der Sidecar jede Bestellung
+ *                         mit einem eigenen Request zu
+ * @param maxMessagesCount Maximale Anzahl an Bestellungen je Bulk-Request
+ * @param maxAwaitDuration Wie lange der Sidecar höchstens auf weitere Bestellungen wartet, bevor er einen
+ *                         unvollständigen Batch zustellt
+ */
+@ConfigurationProperties(prefix = "billing.orders.subscription")
+public record OrderSubscriptionProperties(
+        @DefaultValue("true") boolean bulk,
+        @DefaultValue("100") int maxMessagesCount,
+        @DefaultValue("1s") Duration maxAwaitDuration
+) {
+}
@@ -0,0 +1,34 @@
+package dev.ploeger.dapr.billing.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Konfiguration der laufenden Umsatzauswertung.
+ *
+ * @param enabled          Auswertung ein- oder ausschalten
+ * @param bucket           Zeitliche Auflösung; alle Fenster sind Vielfache davon
+ * @param history          Wie weit die Buckets zurückreichen; muss das größte Fenster abdecken
+ * @param tumblingWindow   Breite der festen, aneinander anschließenden Zeitfenster
+ * @param slidingWindows   Breiten der gleitenden Zeitfenster
+ * @param refreshInterval  Abstand, in dem der Bericht neu berechnet wird
+ * @param snapshotInterval Abstand, in dem der Stand im State Store gesichert wird
+ * @param stateStoreName   State Store für die Snapshots
+ * @param snapshotKey      Key des Snapshots; laufen mehrere Replicas, braucht jedes einen eigenen
+ */
+@ConfigurationProperties(prefix = "billing.revenue")
+public record RevenueProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("1m") Duration bucket,
+        @DefaultValue("25h") Duration history,
+        @DefaultValue("1h") Duration tumblingWindow,
+        @DefaultValue({"5m", "1h", "24h"}) List<Duration> slidingWindows,
+        @DefaultValue("1s") Duration refreshInterval,
+        @DefaultValue("1m") Duration snapshotInterval,
+        @DefaultValue("kvstore") String stateStoreName,
+        @DefaultValue("revenue") String snapshotKey
+) {
+}
@@ -0,0 +1,33 @@
+package dev.ploeger.dapr.billing.model;
+
+/**
+ * Eine Bestellung, deren Verarbeitung fehlschlug, wie sie in den Retry- und Dead-Letter-Topics liegt.
+ * <p>
+ * Die Attribute des ursprünglichen CloudEvents bleiben erhalten; insbesondere wird die Bestellung bei der
+ * Wiederholung weiter an ihrer ursprünglichen ID als Duplikat erkannt.
+ *
+ * @param order     Die Bestellung; null, wenn sie nicht gelesen werden konnte
+ * @param payload   Die Rohdaten des CloudEvents (JSON oder Base64), wenn die Bestellung nicht gelesen werden konnte
+ * @param attempt   Nummer der Wiederholung; 0 im Dead-Letter-Topic bei Fehlern, die nicht wiederholt werden
+ * @param notBefore Frühester Zeitpunkt der Wiederholung in Millisekunden seit 1970
+ * @param error     Der letzte Fehler
+ */
+public record FailedOrder(
+        String eventId,
+        String source,
+        String type,
+        String topic,
+        String pubsubName,
+        String dataContentType,
+        Order order,
+        String payload,
+        int attempt,
+        long notBefore,
+        String error
+) {
+
+    public FailedOrder withFailure(int attempt, long notBefore, String error) {
+        return new FailedOrder(eventId, source, type, topic, pubsubName, dataContentType, order, payload,
+                attempt, notBefore, error);
+    }
+}
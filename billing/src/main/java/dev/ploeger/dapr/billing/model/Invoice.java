@@ -0,0 +1,22 @@
+package dev.ploeger.dapr.billing.model;
+
+import java.util.List;
+
+/**
+ * Rechnung zu einer Bestellung, wie sie im State Store gespeichert und per Mail verschickt wird.
+ *
+ * @param issuedAt Ausstellungszeitpunkt in Millisekunden seit 1970
+ * @param text     Die fertig gerenderte Rechnung als Text
+ */
+public record Invoice(
+        String number,
+        long issuedAt,
+        String name,
+        String address,
+        String email,
+        String paymentMethod,
+        List<Sweet> items,
+        double total,
+        String text
+) {
+}
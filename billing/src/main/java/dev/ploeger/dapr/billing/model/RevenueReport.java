@@ -0,0 +1,35 @@
+package dev.ploeger.dapr.billing.model;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Umsätze der laufenden Zeitfenster, wie sie der Actuator-Endpunkt {@code /actuator/revenue} liefert.
+ *
+ * @param generatedAt     Zeitpunkt der Berechnung; der Bericht wird in festen Abständen neu berechnet
+ * @param currentTumbling Das laufende feste Zeitfenster
+ * @param lastTumbling    Das zuletzt abgeschlossene feste Zeitfenster
+ * @param sliding         Die gleitenden Zeitfenster, die jeweils bis {@code generatedAt} reichen
+ */
+public record RevenueReport(
+        Instant generatedAt,
+        Window currentTumbling,
+        Window lastTumbling,
+        List<Window> sliding
+) {
+
+    /**
+     * @param bySweet         Umsatz je Süßigkeit, absteigend sortiert
+     * @param byPaymentMethod Umsatz je Zahlungsart, absteigend sortiert
+     */
+    public record Window(
+            Instant from,
+            Instant to,
+            long orders,
+            double revenue,
+            Map<String, Double> bySweet,
+            Map<String, Double> byPaymentMethod
+    ) {
+    }
+}
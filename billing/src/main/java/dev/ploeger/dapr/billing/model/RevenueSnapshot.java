@@ -0,0 +1,24 @@
+package dev.ploeger.dapr.billing.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand der Umsatz-Zeitfenster, wie er im State Store gesichert wird. Beträge in Cent.
+ *
+ * @param bucketMillis Breite eines Buckets; ein Snapshot mit anderer Breite wird beim Start verworfen
+ */
+public record RevenueSnapshot(long bucketMillis, List<Bucket> buckets) {
+
+    /**
+     * @param index Nummer des Buckets seit 1970, also Zeitpunkt / Breite
+     */
+    public record Bucket(
+            long index,
+            long orders,
+            long revenueCents,
+            Map<String, Long> bySweet,
+            Map<String, Long> byPaymentMethod
+    ) {
+    }
+}
@@ -0,0 +1,55 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    @Test
+    void knowsAllAddedValuesWithBoundedFalsePositives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 9_999; i++) {
+            filter.add("event-" + i);
+        }
+
+        for (int i = 0; i < 9_999; i++) {
+            assertThat(filter.mightContain("event-" + i)).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(2_000);
+    }
+
+    @Test
+    void rotationKeepsRecentValuesAndBoundsMemory() {
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+        long size = filter.sizeInBytes();
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("event-" + i);
+        }
+
+        for (int i = 9_000; i < 10_000; i++) {
+            assertThat(filter.mightContain("event-" + i)).isTrue();
+        }
+        int forgotten = 0;
+        for (int i = 0; i < 1_000; i++) {
+            if (!filter.mightContain("event-" + i)) {
+                forgotten++;
+            }
+        }
+        assertThat(forgotten).isGreaterThan(950);
+        assertThat(filter.sizeInBytes()).isEqualTo(size);
+    }
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThatThrownBy(() -> new BloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(100, 1.0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,185 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import dev.ploeger.dapr.billing.config.InvoiceProperties;
+import dev.ploeger.dapr.billing.model.Invoice;
+import dev.ploeger.dapr.billing.model.Order;
+import dev.ploeger.dapr.billing.model.Sweet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InvoicePipelineTest {
+
+    @RegisterExtension
+    static GreenMailExtension smtp = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<List<Invoice>> persisted = new CopyOnWriteArrayList<>();
+
+    @Test
+    void persistsInBatchesAndMailsEveryInvoice() throws Exception {
+        try (InvoicePipeline pipeline = pipeline(10, 100, this::persist)) {
+            List<CompletableFuture<Boolean>> saved = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                saved.add(pipeline.submit(invoice("kunde" + i + "@example.org")));
+            }
+            assertThat(saved).doesNotContainNull();
+            CompletableFuture.allOf(saved.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+            assertThat(smtp.waitForIncomingEmail(5_000, 5)).isTrue();
+        }
+
+        MimeMessage[] received = smtp.getReceivedMessages();
+        assertThat(received).hasSize(5);
+        assertThat(received[0].getSubject()).startsWith("Ihre Rechnung RE-");
+        assertThat(GreenMailUtil.getBody(received[0])).contains("Gesamtbetrag");
+        assertThat(persisted.stream().mapToInt(List::size).sum()).isEqualTo(5);
+        assertThat(persisted.size()).isLessThan(5);
+        assertThat(meterRegistry.get("invoices.mails").tag("result", "sent").counter().count()).isEqualTo(5);
+    }
+
+    @Test
+    void retriesPersistingBeforeMailing() throws Exception {
+        AtomicBoolean failed = new AtomicBoolean();
+        try (InvoicePipeline pipeline = pipeline(10, 100, invoices -> failed.getAndSet(true)
+                ? persist(invoices)
+                : Mono.error(new IllegalStateException("State Store nicht erreichbar")))) {
+            CompletableFuture<Boolean> saved = pipeline.submit(invoice("kunde@example.org"));
+
+            // Abgeschlossen wird erst nach dem erfolgreichen zweiten Versuch
+            saved.get(5, TimeUnit.SECONDS);
+            assertThat(persisted).hasSize(1);
+            assertThat(smtp.waitForIncomingEmail(5_000, 1)).isTrue();
+        }
+
+        assertThat(persisted).hasSize(1);
+    }
+
+    @Test
+    void failsTheBatchAfterTheLastAttemptWithoutMailing() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (InvoicePipeline pipeline = pipeline(10, 100, invoices -> {
+            attempts.incrementAndGet();
+            return Mono.error(new IllegalStateException("State Store nicht erreichbar"));
+        })) {
+            CompletableFuture<Boolean> saved = pipeline.submit(invoice("kunde@example.org"));
+
+            assertThatThrownBy(() -> saved.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+
+        assertThat(attempts).hasValue(3);
+        assertThat(meterRegistry.get("invoices.persist.failed").counter().count()).isEqualTo(1);
+        assertThat(smtp.getReceivedMessages()).isEmpty();
+    }
+
+    @Test
+    void doesNotRetryPermanentPersistFailures() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (InvoicePipeline pipeline = pipeline(10, 100, invoices -> {
+            attempts.incrementAndGet();
+            return Mono.error(new IllegalArgumentException("Rechnung nicht serialisierbar"));
+        })) {
+            CompletableFuture<Boolean> saved = pipeline.submit(invoice("kunde@example.org"));
+
+            assertThatThrownBy(() -> saved.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        }
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void redeliveredOrderKeepsItsInvoiceAndIsNotMailedAgain() throws Exception {
+        Map<String, Invoice> store = new ConcurrentHashMap<>();
+        Order order = order("kunde@example.org");
+        Invoice first = InvoiceRenderer.render(order, "event-1", Instant.now());
+        Invoice redelivered = InvoiceRenderer.render(order, "event-1", Instant.now().plus(Duration.ofDays(1)));
+        assertThat(redelivered.number()).isEqualTo(first.number());
+
+        try (InvoicePipeline pipeline = pipeline(10, 100, invoices -> {
+            Set<String> existing = new HashSet<>();
+            for (Invoice invoice : invoices) {
+                if (store.putIfAbsent(invoice.number(), invoice) != null) {
+                    existing.add(invoice.number());
+                }
+            }
+            return Mono.just(existing);
+        })) {
+            assertThat(pipeline.submit(first).get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(pipeline.submit(redelivered).get(5, TimeUnit.SECONDS)).isFalse();
+            assertThat(pipeline.submit(invoice("andere@example.org")).get(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(smtp.waitForIncomingEmail(5_000, 2)).isTrue();
+        }
+
+        assertThat(store).hasSize(2).containsEntry(first.number(), first);
+        assertThat(smtp.getReceivedMessages()).hasSize(2);
+        assertThat(meterRegistry.get("invoices.persisted").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void limitsMailRate() throws Exception {
+        long start = System.nanoTime();
+        try (InvoicePipeline pipeline = pipeline(2, 10, this::persist)) {
+            for (int i = 0; i < 6; i++) {
+                pipeline.submit(invoice("kunde" + i + "@example.org"));
+            }
+
+            assertThat(smtp.waitForIncomingEmail(5_000, 6)).isTrue();
+        }
+
+        // Drei Verbindungen zu je zwei Mails bei zehn Mails je Sekunde: mindestens zweimal 200 ms Abstand
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(400));
+    }
+
+    private Mono<Set<String>> persist(List<Invoice> invoices) {
+        persisted.add(invoices);
+        return Mono.just(Set.of());
+    }
+
+    private InvoicePipeline pipeline(int mailBatchSize, double mailsPerSecond,
+                                     Function<List<Invoice>, Mono<Set<String>>> persister) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(ServerSetupTest.SMTP.getPort());
+        InvoiceProperties properties = new InvoiceProperties(true, "kvstore", "rechnung@sweets.example", 100,
+                10, Duration.ofMillis(20), Duration.ofSeconds(2), 3, mailBatchSize, mailsPerSecond, 3, Duration.ofMillis(50));
+        return new InvoicePipeline(properties, persister, mailSender, meterRegistry, false);
+    }
+
+    private static Invoice invoice(String email) {
+        return InvoiceRenderer.render(order(email), UUID.randomUUID().toString(), Instant.now());
+    }
+
+    private static Order order(String email) {
+        return new Order("Erika Mustermann", "Musterstraße 1, 12345 Musterstadt", email, null, "Rechnung",
+                List.of(new Sweet("Gummibärchen", 1.99, 3)));
+    }
+}
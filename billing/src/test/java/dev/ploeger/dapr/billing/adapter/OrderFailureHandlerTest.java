@@ -0,0 +1,102 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.config.OrderRetryProperties;
+import dev.ploeger.dapr.billing.model.FailedOrder;
+import dev.ploeger.dapr.billing.model.Order;
+import dev.ploeger.dapr.billing.model.Sweet;
+import io.dapr.client.DaprClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderFailureHandlerTest {
+    private static final OrderRetryProperties CONFIG = new OrderRetryProperties(true,
+            List.of(Duration.ofSeconds(1), Duration.ofSeconds(10)), "orders-retry-", "orders-dlq", Duration.ofSeconds(1),
+            Duration.ofMillis(500));
+
+    private final DaprClient daprClient = mock(DaprClient.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderFailureHandler handler = new OrderFailureHandler(CONFIG, "pubsub", daprClient, meterRegistry);
+
+    @Test
+    void retriesTransientFailuresWithGrowingDelay() {
+        when(daprClient.publishEvent(anyString(), anyString(), any())).thenReturn(Mono.empty());
+
+        long before = System.currentTimeMillis();
+        assertThat(handler.park(failed(0), new ExecutionException(new IOException("State Store nicht erreichbar")))).isTrue();
+
+        FailedOrder parked = published("orders-retry-1");
+        assertThat(parked.attempt()).isEqualTo(1);
+        assertThat(parked.notBefore()).isGreaterThanOrEqualTo(before + 1_000);
+        assertThat(parked.eventId()).isEqualTo("event-1");
+        assertThat(parked.error()).contains("State Store nicht erreichbar");
+        assertThat(meterRegistry.get("orders.parked").tag("target", "retry").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void sendsPermanentAndExhaustedFailuresToDeadLetterTopic() {
+        when(daprClient.publishEvent(anyString(), anyString(), any())).thenReturn(Mono.empty());
+
+        assertThat(handler.park(failed(0), new ExecutionException(new IllegalArgumentException("Preis fehlt")))).isTrue();
+        assertThat(handler.park(failed(2), new IOException("State Store nicht erreichbar"))).isTrue();
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(daprClient, times(2)).publishEvent(eq("pubsub"), eq("orders-dlq"), captor.capture());
+        assertThat(captor.getAllValues()).extracting(value -> ((FailedOrder) value).attempt()).containsExactly(0, 2);
+        assertThat(meterRegistry.get("orders.parked").tag("target", "dead-letter").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void reportsFailedPublishSoTheSidecarRedelivers() {
+        when(daprClient.publishEvent(anyString(), anyString(), any())).thenReturn(Mono.error(new IllegalStateException("Sidecar weg")));
+
+        assertThat(handler.park(failed(0), new IOException("State Store nicht erreichbar"))).isFalse();
+    }
+
+    @Test
+    void classifiesDataErrorsAsPermanent() {
+        assertThat(OrderFailureHandler.classify(new ExecutionException(new NullPointerException())))
+                .isEqualTo(OrderFailureHandler.Classification.PERMANENT);
+        assertThat(OrderFailureHandler.classify(new ExecutionException(new IllegalStateException("Pipeline voll"))))
+                .isEqualTo(OrderFailureHandler.Classification.RETRYABLE);
+        assertThat(handler.retryTopics()).containsExactly("orders-retry-1", "orders-retry-2");
+    }
+
+    @Test
+    void waitsForDueRetriesOnlyUpToMaxAwait() throws InterruptedException {
+        long now = System.currentTimeMillis();
+
+        assertThat(handler.awaitDue(failed(1).withFailure(1, now + 5_000, null))).isFalse();
+        assertThat(handler.awaitDue(failed(1).withFailure(1, now + 100, null))).isTrue();
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(now + 100);
+        assertThat(handler.awaitDue(failed(1).withFailure(1, now - 1_000, null))).isTrue();
+    }
+
+    private FailedOrder published(String topic) {
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(daprClient).publishEvent(eq("pubsub"), eq(topic), captor.capture());
+        return (FailedOrder) captor.getValue();
+    }
+
+    private static FailedOrder failed(int attempt) {
+        Order order = new Order("Erika Mustermann", null, "erika@example.org", null, null,
+                List.of(new Sweet("Lakritz", 1.0, 1)));
+        return new FailedOrder("event-1", "shop", "com.dapr.event.sent", "orders", "pubsub", "application/json",
+                order, null, attempt, 0, null);
+    }
+}
@@ -0,0 +1,82 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.config.RevenueProperties;
+import dev.ploeger.dapr.billing.model.Order;
+import dev.ploeger.dapr.billing.model.RevenueReport;
+import dev.ploeger.dapr.billing.model.Sweet;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class RevenueWindowsTest {
+
+    private final AtomicLong now = new AtomicLong(Duration.ofHours(1).toMillis());
+    private final RevenueWindows windows = new RevenueWindows(properties(Duration.ofMinutes(20)), now::get);
+
+    @Test
+    void aggregatesTumblingAndSlidingWindowsPerSweetAndPaymentMethod() {
+        windows.record(order("PayPal", new Sweet("Lakritz", 2.49, 2)));
+        now.addAndGet(Duration.ofMinutes(3).toMillis());
+        windows.record(order("Rechnung", new Sweet("Gummibärchen", 1.99, 1), new Sweet("Lakritz", 2.49, 1)));
+
+        RevenueReport report = windows.report();
+
+        assertThat(report.currentTumbling().orders()).isEqualTo(2);
+        assertThat(report.currentTumbling().revenue()).isEqualTo(9.46);
+        assertThat(report.currentTumbling().bySweet()).containsExactly(
+                entry("Lakritz", 7.47),
+                entry("Gummibärchen", 1.99));
+        assertThat(report.currentTumbling().byPaymentMethod())
+                .containsEntry("PayPal", 4.98)
+                .containsEntry("Rechnung", 4.48);
+        // Das gleitende Fenster über zwei Minuten enthält nur die zweite Bestellung
+        assertThat(report.sliding().getFirst().orders()).isEqualTo(1);
+        assertThat(report.sliding().getFirst().revenue()).isEqualTo(4.48);
+    }
+
+    @Test
+    void completedTumblingWindowMovesToLast() {
+        windows.record(order("PayPal", new Sweet("Lakritz", 2.49, 2)));
+        now.addAndGet(Duration.ofMinutes(5).toMillis());
+
+        RevenueReport report = windows.report();
+
+        assertThat(report.currentTumbling().orders()).isZero();
+        assertThat(report.lastTumbling().orders()).isEqualTo(1);
+        assertThat(report.lastTumbling().from()).isEqualTo(report.currentTumbling().from().minus(Duration.ofMinutes(5)));
+    }
+
+    @Test
+    void restoresSnapshot() {
+        windows.record(order("PayPal", new Sweet("Lakritz", 2.49, 2)));
+        now.addAndGet(Duration.ofMinutes(1).toMillis());
+        windows.record(order("Rechnung", new Sweet("Gummibärchen", 1.99, 1)));
+
+        RevenueWindows restarted = new RevenueWindows(properties(Duration.ofMinutes(20)), now::get);
+        assertThat(restarted.restore(windows.snapshot())).isEqualTo(2);
+
+        assertThat(restarted.report()).isEqualTo(windows.report());
+    }
+
+    @Test
+    void rejectsHistoryShorterThanLargestWindow() {
+        assertThatThrownBy(() -> new RevenueWindows(properties(Duration.ofMinutes(5)), now::get))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static RevenueProperties properties(Duration history) {
+        return new RevenueProperties(true, Duration.ofMinutes(1), history, Duration.ofMinutes(5),
+                List.of(Duration.ofMinutes(2), Duration.ofMinutes(10)), Duration.ofSeconds(1), Duration.ofMinutes(1),
+                "kvstore", "revenue");
+    }
+
+    private static Order order(String paymentMethod, Sweet... sweets) {
+        return new Order("Erika Mustermann", null, "erika@example.org", null, paymentMethod, List.of(sweets));
+    }
+}
@@ -0,0 +1,103 @@
+package dev.ploeger.dapr.billing.adapter;
+
+import dev.ploeger.dapr.billing.config.OrderProcessingProperties;
+import dev.ploeger.dapr.billing.model.Order;
+import dev.ploeger.dapr.billing.model.Sweet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedOrderProcessorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void keepsOrderOfEachCustomer() throws Exception {
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        try (StripedOrderProcessor processor = new StripedOrderProcessor(
+                new OrderProcessingProperties(4, 100, Duration.ofSeconds(5)),
+                (eventId, order) -> {
+                    processed.add(order.name());
+                    return CompletableFuture.completedFuture(1.0);
+                }, meterRegistry, false)) {
+            List<CompletableFuture<Double>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                results.add(processor.submit(null, order("a@example.org", "a" + i)));
+                results.add(processor.submit(null, order("b@example.org", "b" + i)));
+            }
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(processed.stream().filter(name -> name.startsWith("a")))
+                .containsExactly(IntStream.range(0, 50).mapToObj(i -> "a" + i).toArray(String[]::new));
+        assertThat(processed.stream().filter(name -> name.startsWith("b")))
+                .containsExactly(IntStream.range(0, 50).mapToObj(i -> "b" + i).toArray(String[]::new));
+    }
+
+    @Test
+    void rejectsOrdersWhenQueueOfCustomerIsFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (StripedOrderProcessor processor = new StripedOrderProcessor(
+                new OrderProcessingProperties(1, 1, Duration.ofSeconds(5)),
+                (eventId, order) -> {
+                    blocked.countDown();
+                    await(release);
+                    return CompletableFuture.completedFuture(1.0);
+                }, meterRegistry, false)) {
+            CompletableFuture<Double> first = processor.submit(null, order("a@example.org", "a0"));
+            blocked.await(5, TimeUnit.SECONDS);
+
+            assertThat(processor.submit(null, order("a@example.org", "a1"))).isNotNull();
+            assertThat(processor.submit(null, order("a@example.org", "a2"))).isNull();
+            assertThat(meterRegistry.get("orders.processing.rejected").counter().count()).isEqualTo(1);
+            assertThat(meterRegistry.get("orders.processing.queue").gauge().value()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1.0);
+        }
+    }
+
+    @Test
+    void completesWhenAsynchronousProcessingEndsWithoutBlockingTheWorker() throws Exception {
+        CompletableFuture<Double> invoiceSaved = new CompletableFuture<>();
+        try (StripedOrderProcessor processor = new StripedOrderProcessor(
+                new OrderProcessingProperties(1, 10, Duration.ofSeconds(5)),
+                (eventId, order) -> order.name().equals("a0") ? invoiceSaved : CompletableFuture.completedFuture(2.0),
+                meterRegistry, false)) {
+            CompletableFuture<Double> first = processor.submit(null, order("a@example.org", "a0"));
+            CompletableFuture<Double> second = processor.submit(null, order("a@example.org", "a1"));
+
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(2.0);
+            assertThat(first).isNotDone();
+
+            invoiceSaved.completeExceptionally(new IllegalStateException("State Store nicht erreichbar"));
+            assertThat(first).failsWithin(Duration.ofSeconds(5))
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    private static Order order(String email, String name) {
+        return new Order(name, null, email, null, null, List.of(new Sweet("Lakritz", 1.0, 1)));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.ploeger.dapr.shop.config.CartProperties;
+import dev.ploeger.dapr.shop.model.CartItem;
+import io.dapr.client.DaprClient;
+import io.dapr.client.domain.State;
+import io.dapr.client.domain.StateOptions;
+import io.dapr.exceptions.DaprException;
+import io.dapr.utils.TypeRef;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * Hält die Warenkörbe im Dapr State Store, ein Key je Warenkorb.
+ * <p>
+ * Gelesen wird aus einem lokalen Cache; ein Warenkorb wird beim ersten Zugriff in diesem Pod und danach
+ * spätestens {@code revalidate-after} nach dem letzten Laden oder Ändern aus dem State Store geladen.
+ * Änderungen landen sofort im Cache und werden verzögert geschrieben (siehe {@link CartWriteBehind}).
+ * Landet ein Kunde auf einem anderen Pod, findet dieser den Warenkorb im State Store; verloren gehen
+ * höchstens die Änderungen der letzten {@code write-delay}.
+ * <p>
+ * Zu jedem Warenkorb merkt sich der Cache das ETag des Standes, auf dem er beruht, und geschrieben wird mit
+ * First-Write. Hat ein anderer Pod den Warenkorb inzwischen geändert, schlägt das Schreiben fehl: Der
+ * veraltete Stand wird verworfen und der neuere beim nächsten Zugriff aus dem State Store geladen, statt
+ * ihn zu überschreiben. Gezählt werden diese Konflikte in {@code cart.conflicts}.
+ */
+@Component
+@Slf4j
+public class CartAdapter {
+    private static final String CART_KEY_PREFIX = "cart||";
+    private static final String CACHE_NAME = "cart";
+    private static final TypeRef<List<CartItem>> CART_TYPE = new TypeRef<>() {};
+    /**
+     * First-Write: Ein Schreibzugriff mit ETag schlägt fehl, wenn der Key inzwischen geändert wurde;
+     * ohne ETag ist er nur erlaubt, wenn der Key noch nicht existiert.
+     */
+    private static final StateOptions FIRST_WRITE = new StateOptions(
+            StateOptions.Consistency.STRONG, StateOptions.Concurrency.FIRST_WRITE);
+
+    @Autowired
+    private DaprClient daprClient;
+    @Autowired
+    private CartProperties properties;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, CachedCart> carts;
+    private CartWriteBehind<CachedCart> writeBehind;
+    private Map<String, String> stateMetadata;
+    private Counter conflictCounter;
+
+    @PostConstruct
+    void init() {
+        carts = Caffeine.newBuilder()
+                .maximumSize(properties.cacheSize())
+                .expireAfterAccess(properties.idleTimeout())
+                .expireAfterWrite(properties.revalidateAfter())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, carts, CACHE_NAME, Tags.empty());
+        // Verwaiste Warenkörbe räumt der State Store selbst ab
+        stateMetadata = Map.of("ttlInSeconds", Long.toString(properties.ttl().toSeconds()));
+        conflictCounter = Counter.builder("cart.conflicts")
+                .description("Verworfene Änderungen an Warenkörben, die ein anderer Pod inzwischen geändert hat")
+                .register(meterRegistry);
+        writeBehind = new CartWriteBehind<>(this::writeCarts, properties.writeDelay(), properties.writeTimeout(), meterRegistry);
+    }
+
+    @PreDestroy
+    void flushPendingCarts() {
+        writeBehind.close();
+    }
+
+    /**
+     * Liefert den Warenkorb aus dem lokalen Cache, solange er dort nicht älter als {@code revalidate-after} ist.
+     *
+     * @return Die unveränderliche Liste der Positionen, leer für einen neuen Warenkorb
+     */
+    public List<CartItem> getCart(String cartId) {
+        return carts.get(cartId, this::loadCart).items();
+    }
+
+    /**
+     * Ersetzt den Warenkorb. Der neue Stand ist sofort lesbar und wird verzögert gespeichert.
+     */
+    public void saveCart(String cartId, List<CartItem> items) {
+        // Der neue Stand beruht auf demselben Stand im State Store wie der bisherige
+        CachedCart cart = new CachedCart(List.copyOf(items), carts.get(cartId, this::loadCart).etag());
+        carts.put(cartId, cart);
+        writeBehind.write(cartId, cart);
+    }
+
+    /**
+     * Leert den Warenkorb, z.B. nach einer Bestellung.
+     */
+    public void clearCart(String cartId) {
+        saveCart(cartId, List.of());
+    }
+
+    private CachedCart loadCart(String cartId) {
+        // Noch nicht geschriebene Änderungen sind neuer als der Stand im State Store
+        CachedCart pending = writeBehind.pending(cartId);
+        if (pending != null) {
+            return pending;
+        }
+        return toCachedCart(daprClient.getState(properties.stateStoreName(), cartKey(cartId), CART_TYPE)
+                .block(properties.readTimeout()));
+    }
+
+    /**
+     * Schreibt jeden Warenkorb einzeln mit First-Write, damit ein Konflikt nur den betroffenen Warenkorb
+     * verwirft. Ein Konflikt ist kein Fehler des Batches; andere Fehler werden an {@link CartWriteBehind}
+     * weitergereicht, das den Batch erneut vormerkt.
+     */
+    private Mono<Void> writeCarts(Map<String, CachedCart> batch) {
+        return Flux.fromIterable(batch.entrySet())
+                .flatMap(entry -> writeCart(entry.getKey(), entry.getValue()))
+                .then();
+    }
+
+    private Mono<Void> writeCart(String cartId, CachedCart cart) {
+        String key = cartKey(cartId);
+        String stateStoreName = properties.stateStoreName();
+        // Ein leerer Warenkorb wird gelöscht
+        Mono<CachedCart> written = cart.items().isEmpty()
+                ? daprClient.deleteState(stateStoreName, key, cart.etag(), FIRST_WRITE)
+                        .thenReturn(new CachedCart(List.of(), null))
+                : daprClient.saveBulkState(stateStoreName, List.of(new State<>(key, cart.items(), cart.etag(), stateMetadata, FIRST_WRITE)))
+                        .then(Mono.defer(() -> daprClient.getState(stateStoreName, key, CART_TYPE)))
+                        .map(CartAdapter::toCachedCart);
+        return written
+                .doOnNext(stored -> {
+                    if (stored.items().equals(cart.items())) {
+                        rebase(cartId, cart.etag(), stored.etag());
+                    } else {
+                        // Direkt nach dem Schreiben von einem anderen Pod geändert
+                        carts.invalidate(cartId);
+                    }
+                })
+                .onErrorResume(CartAdapter::isEtagConflict, e -> {
+                    log.warn("Warenkorb {} wurde von einem anderen Pod geändert, lokale Änderung wird verworfen", cartId);
+                    conflictCounter.increment();
+                    discard(cartId, cart.etag());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Neuere lokale Änderungen beruhen noch auf dem alten ETag und erhalten das des gerade geschriebenen Standes.
+     */
+    private void rebase(String cartId, String oldEtag, String newEtag) {
+        UnaryOperator<CachedCart> rebase = cart -> Objects.equals(cart.etag(), oldEtag)
+                ? new CachedCart(cart.items(), newEtag)
+                : cart;
+        carts.asMap().computeIfPresent(cartId, (id, cart) -> rebase.apply(cart));
+        writeBehind.update(cartId, rebase);
+    }
+
+    /**
+     * Verwirft alle lokalen Stände, die auf dem veralteten ETag beruhen.
+     */
+    private void discard(String cartId, String etag) {
+        writeBehind.update(cartId, cart -> Objects.equals(cart.etag(), etag) ? null : cart);
+        carts.asMap().computeIfPresent(cartId, (id, cart) -> Objects.equals(cart.etag(), etag) ? null : cart);
+    }
+
+    private static CachedCart toCachedCart(State<List<CartItem>> state) {
+        if (state == null) {
+            return new CachedCart(List.of(), null);
+        }
+        String etag = state.getEtag() == null || state.getEtag().isEmpty() ? null : state.getEtag();
+        return new CachedCart(state.getValue() != null ? List.copyOf(state.getValue()) : List.of(), etag);
+    }
+
+    private static boolean isEtagConflict(Throwable e) {
+        if (!(e instanceof DaprException daprException)) {
+            return false;
+        }
+        if ("ABORTED".equals(daprException.getErrorCode())) {
+            return true;
+        }
+        String message = daprException.getMessage();
+        return message != null && message.toLowerCase().contains("etag mismatch");
+    }
+
+    private static String cartKey(String cartId) {
+        return CART_KEY_PREFIX + cartId;
+    }
+
+    /**
+     * @param items Die Positionen des Warenkorbs
+     * @param etag  ETag des Standes im State Store, auf dem die Positionen beruhen; null, wenn der Warenkorb
+     *              dort noch nicht existiert
+     */
+    record CachedCart(List<CartItem> items, String etag) {
+    }
+}
@@ -0,0 +1,129 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Schreibt geänderte Warenkörbe verzögert und gesammelt.
+ * <p>
+ * Je Warenkorb wird nur der letzte Stand vorgemerkt; mehrere Änderungen innerhalb der Verzögerung
+ * ergeben also einen einzigen Schreibvorgang. Ein Flush schreibt alle vorgemerkten Warenkörbe auf
+ * einmal. Schlägt er fehl, werden die Warenkörbe erneut vorgemerkt, sofern sie nicht inzwischen
+ * erneut geändert wurden.
+ * <p>
+ * Gezählt werden die geschriebenen und fehlgeschlagenen Warenkörbe ({@code cart.writes}) sowie die
+ * Anzahl vorgemerkter Warenkörbe ({@code cart.writes.pending}).
+ *
+ * @param <T> Stand eines Warenkorbs
+ */
+@Slf4j
+class CartWriteBehind<T> implements AutoCloseable {
+
+    private final Map<String, T> pending = new ConcurrentHashMap<>();
+    private final Function<Map<String, T>, Mono<Void>> writer;
+    private final Duration timeout;
+    private final ScheduledExecutorService scheduler;
+    private final Counter writtenCarts;
+    private final Counter failedCarts;
+
+    /**
+     * @param writer Schreibt die übergebenen Warenkörbe; ein leerer Warenkorb wird gelöscht
+     * @param delay  Abstand zwischen zwei Flushes
+     */
+    CartWriteBehind(Function<Map<String, T>, Mono<Void>> writer, Duration delay, Duration timeout,
+                    MeterRegistry meterRegistry) {
+        this.writer = writer;
+        this.timeout = timeout;
+        this.writtenCarts = writeCounter(meterRegistry, "written");
+        this.failedCarts = writeCounter(meterRegistry, "failed");
+        Gauge.builder("cart.writes.pending", pending, Map::size)
+                .description("Geänderte, noch nicht geschriebene Warenkörbe")
+                .register(meterRegistry);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("cart-write-behind").daemon(true).factory());
+        scheduler.scheduleWithFixedDelay(this::flush, delay.toMillis(), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Merkt den neuen Stand eines Warenkorbs zum Schreiben vor.
+     */
+    void write(String cartId, T cart) {
+        pending.put(cartId, cart);
+    }
+
+    /**
+     * @return Der vorgemerkte, noch nicht geschriebene Stand oder {@code null}
+     */
+    T pending(String cartId) {
+        return pending.get(cartId);
+    }
+
+    /**
+     * Ändert den vorgemerkten Stand eines Warenkorbs, z.B. nachdem ein älterer Stand geschrieben wurde.
+     *
+     * @param update Liefert den neuen Stand oder {@code null}, um den Warenkorb nicht mehr zu schreiben
+     */
+    void update(String cartId, UnaryOperator<T> update) {
+        pending.computeIfPresent(cartId, (id, cart) -> update.apply(cart));
+    }
+
+    /**
+     * Schreibt alle vorgemerkten Warenkörbe.
+     */
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, T> batch = new HashMap<>();
+        for (String cartId : pending.keySet()) {
+            T cart = pending.remove(cartId);
+            if (cart != null) {
+                batch.put(cartId, cart);
+            }
+        }
+        try {
+            writer.apply(batch).block(timeout);
+            writtenCarts.increment(batch.size());
+        } catch (Exception e) {
+            log.warn("{} Warenkörbe konnten nicht gespeichert werden, neuer Versuch beim nächsten Flush: {}",
+                    batch.size(), e.getMessage());
+            failedCarts.increment(batch.size());
+            // Neuere Änderungen haben Vorrang vor dem fehlgeschlagenen Stand
+            batch.forEach(pending::putIfAbsent);
+        }
+    }
+
+    /**
+     * Beendet das verzögerte Schreiben und schreibt alle noch vorgemerkten Warenkörbe.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private static Counter writeCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("cart.writes")
+                .description("Gespeicherte Warenkörbe")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
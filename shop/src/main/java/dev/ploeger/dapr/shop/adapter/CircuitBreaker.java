@@ -0,0 +1,174 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Schützt die Aufrufe eines entfernten Services vor einem Rückstau, wenn dieser langsam oder nicht
+ * erreichbar ist.
+ * <p>
+ * Nach {@code failureThreshold} aufeinanderfolgenden Fehlschlägen öffnet der Breaker: Aufrufe werden
+ * sofort mit {@link OpenException} abgelehnt, statt auf den Service zu warten. Nach {@code openDuration}
+ * wird genau ein Probeaufruf durchgelassen; gelingt er, schließt der Breaker, sonst öffnet er erneut.
+ * <p>
+ * Der Zustand steht als {@code <name>.circuit.state} (0 geschlossen, 1 halb offen, 2 offen) zur
+ * Verfügung, die Zustandswechsel werden als {@code <name>.circuit.transitions} gezählt.
+ * <p>
+ * Der Zustand ist mit einem {@link ReentrantLock} geschützt, damit virtuelle Threads beim Warten auf den
+ * Breaker ihren Carrier freigeben.
+ */
+@Slf4j
+class CircuitBreaker {
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoTime;
+    private final Map<State, Counter> transitions = new EnumMap<>(State.class);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(String name, int failureThreshold, Duration openDuration, MeterRegistry meterRegistry) {
+        this(name, failureThreshold, openDuration, meterRegistry, System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime Zeitquelle, im Test ersetzbar
+     */
+    CircuitBreaker(String name, int failureThreshold, Duration openDuration, MeterRegistry meterRegistry,
+                   LongSupplier nanoTime) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.nanoTime = nanoTime;
+        Gauge.builder(name + ".circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("Zustand des Circuit Breakers (0 geschlossen, 1 halb offen, 2 offen)")
+                .register(meterRegistry);
+        for (State target : State.values()) {
+            transitions.put(target, Counter.builder(name + ".circuit.transitions")
+                    .description("Zustandswechsel des Circuit Breakers")
+                    .tag("state", target.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Führt den Aufruf aus, sofern der Breaker ihn zulässt. Alles, was der Aufruf wirft, zählt als Fehlschlag,
+     * auch Errors und per {@code @SneakyThrows} geworfene checked Exceptions.
+     *
+     * @throws OpenException wenn der Breaker offen ist
+     */
+    <T> T call(Supplier<T> call) {
+        if (!tryAcquire()) {
+            throw new OpenException(name);
+        }
+        boolean succeeded = false;
+        try {
+            T result = call.get();
+            succeeded = true;
+            return result;
+        } finally {
+            // Ohne Rückmeldung bliebe ein Probeaufruf belegt und der Breaker für immer halb offen
+            if (succeeded) {
+                onSuccess();
+            } else {
+                onFailure();
+            }
+        }
+    }
+
+    State state() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryAcquire() {
+        lock.lock();
+        try {
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> {
+                    if (nanoTime.getAsLong() - openedAt < openNanos) {
+                        yield false;
+                    }
+                    transitionTo(State.HALF_OPEN);
+                    trialInFlight = true;
+                    yield true;
+                }
+                case HALF_OPEN -> {
+                    // Nur ein Probeaufruf zur Zeit
+                    if (trialInFlight) {
+                        yield false;
+                    }
+                    trialInFlight = true;
+                    yield true;
+                }
+            };
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSuccess() {
+        lock.lock();
+        try {
+            consecutiveFailures = 0;
+            trialInFlight = false;
+            if (state != State.CLOSED) {
+                transitionTo(State.CLOSED);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onFailure() {
+        lock.lock();
+        try {
+            trialInFlight = false;
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                openedAt = nanoTime.getAsLong();
+                transitionTo(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void transitionTo(State target) {
+        log.info("Circuit Breaker {}: {} -> {}", name, state, target);
+        state = target;
+        transitions.get(target).increment();
+    }
+
+    /**
+     * Der Aufruf wurde nicht ausgeführt, weil der Breaker offen ist.
+     */
+    static class OpenException extends RuntimeException {
+        OpenException(String name) {
+            super("Circuit Breaker " + name + " ist offen", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.vaadin.flow.shared.Registration;
+import dev.ploeger.dapr.shop.model.InventoryChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * Verteilt Inventaränderungen an alle offenen Ansichten dieser Instanz.
+ * <p>
+ * Ansichten melden sich beim Anhängen an und beim Entfernen wieder ab. Listener werden im Thread des
+ * eingehenden Events aufgerufen und dürfen nicht blockieren; Ansichten reichen die Änderung deshalb
+ * per {@code UI.access} an ihre Sitzung weiter.
+ */
+@Component
+@Slf4j
+public class InventoryChangeBroadcaster {
+    private final Set<Consumer<InventoryChangedEvent>> listeners = new CopyOnWriteArraySet<>();
+
+    public Registration register(Consumer<InventoryChangedEvent> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    void broadcast(InventoryChangedEvent event) {
+        for (Consumer<InventoryChangedEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.warn("Inventaränderung konnte nicht an eine Ansicht verteilt werden", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import dev.ploeger.dapr.shop.model.InventoryChangedEvent;
+import io.dapr.Topic;
+import io.dapr.client.domain.CloudEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Empfängt die Inventaränderungen des Lagers, einmal pro Shop-Instanz.
+ * <p>
+ * Die PubSub-Komponente "inventory-pubsub" verwendet je Pod eine eigene Consumer Group, sodass jede
+ * Instanz jede Änderung erhält. Der gemeinsame Inventarstand wird verworfen und die Änderung an alle
+ * offenen Ansichten verteilt.
+ */
+@RestController
+@Slf4j
+@RequiredArgsConstructor
+public class InventoryEventAdapter {
+    private static final String PUBSUB_NAME = "inventory-pubsub";
+    private static final String TOPIC_NAME = "inventory-changes";
+
+    private final WarehouseAdapter warehouseAdapter;
+    private final InventoryChangeBroadcaster broadcaster;
+
+    @Topic(name = TOPIC_NAME, pubsubName = PUBSUB_NAME)
+    @PostMapping(path = "/inventory-changes", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<Void> receiveInventoryChange(@RequestBody CloudEvent<InventoryChangedEvent> cloudEvent) {
+        InventoryChangedEvent event = cloudEvent.getData();
+        if (event == null || event.sweets() == null || event.sweets().isEmpty()) {
+            return ResponseEntity.ok().build();
+        }
+        log.debug("Inventaränderung an {} Süßigkeiten empfangen", event.sweets().size());
+        warehouseAdapter.invalidateInventory();
+        broadcaster.broadcast(event);
+        return ResponseEntity.ok().build();
+    }
+}
@@ -1,35 +1,172 @@
 package dev.ploeger.dapr.shop.adapter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.ploeger.dapr.shop.config.OrderOutboxProperties;
+import dev.ploeger.dapr.shop.config.OrderPublishingProperties;
 import dev.ploeger.dapr.shop.model.Order;
 import io.dapr.client.DaprClient;
-import lombok.SneakyThrows;
+import io.dapr.client.DaprClientBuilder;
+import io.dapr.client.DaprPreviewClient;
+import io.dapr.client.domain.BulkPublishEntry;
+import io.dapr.client.domain.BulkPublishRequest;
+import io.dapr.client.domain.BulkPublishResponseFailedEntry;
+import io.dapr.client.domain.PublishEventRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 @Component
+@Slf4j
 public class OrderAdapter {
     private static final String PUBSUB_NAME = "pubsub";
     private static final String TOPIC_NAME = "orders";
+    private static final String CONTENT_TYPE = "application/json";
 
     @Autowired
     private DaprClient daprClient;
+    @Autowired
+    private DaprClientBuilder daprClientBuilder;
+    @Autowired
+    private OrderPublishingProperties properties;
+    @Autowired
+    private OrderOutboxProperties outboxProperties;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private DaprPreviewClient daprPreviewClient;
+    private OrderPublishBatcher publishBatcher;
+    private OrderOutbox outbox;
+
+    @PostConstruct
+    void init() throws IOException {
+        if (properties.enabled()) {
+            // Bulk Publish ist (noch) nur über den Preview-Client verfügbar
+            daprPreviewClient = daprClientBuilder.buildPreviewClient();
+            publishBatcher = new OrderPublishBatcher(properties, this::publishBatch, meterRegistry, virtualThreads);
+        }
+        if (outboxProperties.enabled()) {
+            outbox = new OrderOutbox(outboxProperties, objectMapper, this::publishNow, meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    void cleanup() throws Exception {
+        // Zuerst das Relay beenden, es veröffentlicht über den Batcher
+        if (outbox != null) {
+            outbox.close();
+        }
+        if (publishBatcher != null) {
+            publishBatcher.close();
+        }
+        if (daprPreviewClient != null) {
+            daprPreviewClient.close();
+        }
+    }
 
     /**
-     * Veröffentlicht eine Bestellung über die Dapr PubSub-Komponente.
+     * Veröffentlicht eine Bestellung über die Dapr PubSub-Komponente und wartet auf das Ergebnis.
      *
      * @param order Die zu veröffentlichende Bestellung
      * @return true, wenn die Bestellung erfolgreich veröffentlicht wurde
      */
-    @SneakyThrows
     public boolean publishOrder(Order order) {
-        try {
-            // Veröffentliche die Bestellung auf dem "orders"-Topic über die "pubsub"-Komponente
-            daprClient.publishEvent(PUBSUB_NAME, TOPIC_NAME, order).block();
-            return true;
-        } catch (Exception e) {
-            // Log the error
-            System.err.println("Fehler beim Veröffentlichen der Bestellung: " + e.getMessage());
-            return false;
+        return publishOrderAsync(order).join();
+    }
+
+    /**
+     * Veröffentlicht eine Bestellung asynchron. Ist die Outbox aktiv, gilt die Bestellung als
+     * veröffentlicht, sobald sie im lokalen Journal steht; das Relay der Outbox veröffentlicht sie
+     * danach, auch nach einem Neustart oder Ausfall des Brokers.
+     *
+     * @param order Die zu veröffentlichende Bestellung
+     * @return Ein Future, das mit true abgeschlossen wird, wenn die Bestellung angenommen wurde,
+     * und mit false, wenn das fehlschlug; es wird nie mit einem Fehler abgeschlossen.
+     */
+    public CompletableFuture<Boolean> publishOrderAsync(Order order) {
+        if (outbox != null) {
+            try {
+                outbox.append(order);
+                return CompletableFuture.completedFuture(true);
+            } catch (IOException | RuntimeException e) {
+                log.error("Bestellung von '{}' konnte nicht ins Journal geschrieben werden, veröffentliche direkt", order.name(), e);
+            }
+        }
+        return publishNow(order);
+    }
+
+    /**
+     * Veröffentlicht eine Bestellung sofort. Ist die Bündelung aktiv, wird die Bestellung
+     * zusammen mit gleichzeitig eingehenden Bestellungen per Bulk Publish veröffentlicht.
+     *
+     * @return Ein Future, das mit true abgeschlossen wird, wenn die Bestellung veröffentlicht wurde,
+     * und mit false, wenn das fehlschlug; es wird nie mit einem Fehler abgeschlossen.
+     */
+    private CompletableFuture<Boolean> publishNow(Order order) {
+        if (publishBatcher != null) {
+            return publishBatcher.submit(order);
         }
+        // Veröffentliche die Bestellung auf dem "orders"-Topic über die "pubsub"-Komponente
+        Mono<Void> published = compact()
+                ? daprClient.publishEvent(new PublishEventRequest(PUBSUB_NAME, TOPIC_NAME, OrderProtobuf.encode(order))
+                        .setContentType(OrderProtobuf.CONTENT_TYPE))
+                : daprClient.publishEvent(PUBSUB_NAME, TOPIC_NAME, order);
+        return published
+                .thenReturn(true)
+                .onErrorResume(e -> {
+                    log.error("Fehler beim Veröffentlichen der Bestellung von '{}'", order.name(), e);
+                    return Mono.just(false);
+                })
+                .toFuture();
+    }
+
+    /**
+     * Veröffentlicht einen Batch mit einem einzigen Bulk Publish.
+     *
+     * @return Ein Mono mit den Positionen der Bestellungen, die der Broker nicht angenommen hat
+     */
+    private Mono<Set<Integer>> publishBatch(List<Order> orders) {
+        if (compact()) {
+            return publishBatch(orders, OrderProtobuf::encode, OrderProtobuf.CONTENT_TYPE);
+        }
+        return publishBatch(orders, order -> order, CONTENT_TYPE);
+    }
+
+    private <T> Mono<Set<Integer>> publishBatch(List<Order> orders, Function<Order, T> encoder, String contentType) {
+        List<BulkPublishEntry<T>> entries = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            // Die Entry-ID ist die Position im Batch, so lassen sich Fehlschläge den Bestellungen zuordnen
+            entries.add(new BulkPublishEntry<>(Integer.toString(i), encoder.apply(orders.get(i)), contentType));
+        }
+        return daprPreviewClient.publishEvents(new BulkPublishRequest<>(PUBSUB_NAME, TOPIC_NAME, entries))
+                .map(response -> {
+                    Set<Integer> failed = new HashSet<>();
+                    for (BulkPublishResponseFailedEntry<T> entry : response.getFailedEntries()) {
+                        log.error("Fehler beim Veröffentlichen der Bestellung {} im Batch: {}",
+                                entry.getEntry().getEntryId(), entry.getErrorMessage());
+                        failed.add(Integer.parseInt(entry.getEntry().getEntryId()));
+                    }
+                    return failed;
+                });
+    }
+
+    private boolean compact() {
+        return properties.format() == OrderPublishingProperties.PayloadFormat.COMPACT;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,428 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import dev.ploeger.dapr.shop.config.OrderOutboxProperties.Fsync;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only Journal in Memory-Mapped-Dateien.
+ * <p>
+ * Einträge werden fortlaufend nummeriert in Segmentdateien ({@code orders-<erste Nummer>.journal})
+ * geschrieben. Ein Eintrag besteht aus Länge, Nummer, CRC32 und Nutzdaten; die Länge wird zuletzt
+ * geschrieben. Beim Öffnen wird jedes Segment bis zum ersten unvollständigen oder beschädigten Eintrag
+ * gelesen, ein beim Absturz halb geschriebener Eintrag wird so verworfen.
+ * <p>
+ * Gelesen wird über einen Cursor, der unabhängig vom Schreiben voranschreitet. Bestätigte Einträge
+ * ({@link #acknowledge(long)}) werden in einer Checkpoint-Datei vermerkt und nach einem Neustart nicht
+ * erneut gelesen; Segmente, deren Einträge alle bestätigt sind, werden gelöscht.
+ * <p>
+ * Geschrieben wird von den Request-Threads, die virtuelle Threads sein können. Der Zustand ist deshalb mit
+ * einem {@link ReentrantLock} statt mit {@code synchronized} geschützt, und die fsyncs ({@code force()})
+ * laufen erst nach dem Freigeben des Locks: ein wartender virtueller Thread gibt so seinen Carrier frei,
+ * und ein fsync hält keine anderen Schreiber auf.
+ */
+@Slf4j
+class OrderJournal implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "orders-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE = "acknowledged.checkpoint";
+    // Länge, Nummer und CRC32 vor den Nutzdaten
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    record Entry(long sequence, byte[] payload) {
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Fsync fsync;
+    // Erste Nummer eines Segments → Segment
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private final MappedByteBuffer checkpoint;
+    private final FileChannel checkpointChannel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+
+    private Segment writeSegment;
+    private long nextSequence;
+    private long acknowledged;
+    // Höchste Bestätigung, die sicher im Checkpoint steht; nur bis dahin werden Segmente gelöscht
+    private long durablyAcknowledged;
+    private Segment readSegment;
+    private int readPosition;
+    private boolean dirty;
+
+    OrderJournal(Path directory, int segmentSize, Fsync fsync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+
+        checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        acknowledged = checkpoint.getLong(0);
+        durablyAcknowledged = acknowledged;
+        nextSequence = acknowledged + 1;
+
+        recover();
+        compact();
+        if (writeSegment == null) {
+            writeSegment = openSegment(nextSequence);
+        }
+        seekReader();
+        log.info("Order-Journal in {} geöffnet: {} unbestätigte Einträge.", directory, pending());
+    }
+
+    /**
+     * Hängt einen Eintrag an. Je nach {@link Fsync} ist er bei der Rückkehr bereits auf dem Datenträger.
+     *
+     * @return Die Nummer des Eintrags
+     * @throws IllegalArgumentException wenn der Eintrag größer als ein Segment ist
+     */
+    long append(byte[] payload) {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Eintrag mit " + payload.length + " Bytes passt in kein Segment");
+        }
+        long sequence;
+        MappedByteBuffer buffer;
+        MappedByteBuffer rolledOver = null;
+        int position;
+        lock.lock();
+        try {
+            if (writeSegment.position + recordSize > segmentSize) {
+                rolledOver = roll();
+            }
+            sequence = nextSequence++;
+            buffer = writeSegment.buffer;
+            position = writeSegment.position;
+            buffer.putLong(position + Integer.BYTES, sequence);
+            buffer.putInt(position + Integer.BYTES + Long.BYTES, checksum(payload));
+            buffer.put(position + HEADER_SIZE, payload);
+            // Die Länge zuletzt: erst damit gilt der Eintrag beim Lesen als vorhanden
+            buffer.putInt(position, payload.length);
+            writeSegment.position += recordSize;
+            writeSegment.lastSequence = sequence;
+            if (fsync != Fsync.ALWAYS) {
+                dirty = true;
+            }
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (rolledOver != null) {
+            rolledOver.force();
+        }
+        if (fsync == Fsync.ALWAYS) {
+            buffer.force(position, recordSize);
+        }
+        return sequence;
+    }
+
+    /**
+     * Liest die nächsten, noch nicht gelesenen Einträge und wartet höchstens {@code timeout}, falls es
+     * keine gibt.
+     *
+     * @return Bis zu {@code max} Einträge, leer wenn keine vorliegen
+     */
+    List<Entry> poll(int max, Duration timeout) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long remaining = timeout.toNanos();
+            while (!hasUnread()) {
+                if (remaining <= 0) {
+                    return List.of();
+                }
+                remaining = appended.awaitNanos(remaining);
+            }
+            List<Entry> entries = new ArrayList<>(Math.min(max, 64));
+            while (entries.size() < max && hasUnread()) {
+                if (readPosition >= readSegment.position) {
+                    readSegment = segments.higherEntry(readSegment.firstSequence).getValue();
+                    readPosition = 0;
+                    continue;
+                }
+                MappedByteBuffer buffer = readSegment.buffer;
+                int length = buffer.getInt(readPosition);
+                long sequence = buffer.getLong(readPosition + Integer.BYTES);
+                byte[] payload = new byte[length];
+                buffer.get(readPosition + HEADER_SIZE, payload);
+                entries.add(new Entry(sequence, payload));
+                readPosition += HEADER_SIZE + length;
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Bestätigt alle Einträge bis einschließlich {@code sequence}. Sie werden nach einem Neustart nicht
+     * erneut gelesen; vollständig bestätigte Segmente werden gelöscht.
+     */
+    void acknowledge(long sequence) {
+        lock.lock();
+        try {
+            if (sequence <= acknowledged) {
+                return;
+            }
+            acknowledged = sequence;
+            checkpoint.putLong(0, sequence);
+        } finally {
+            lock.unlock();
+        }
+        if (fsync != Fsync.NEVER) {
+            checkpoint.force();
+        }
+        lock.lock();
+        try {
+            // Erst nach dem fsync löschen, sonst fehlen nach einem Absturz Segmente hinter dem Checkpoint
+            durablyAcknowledged = Math.max(durablyAcknowledged, sequence);
+            compact();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zwingt alle geschriebenen Einträge auf den Datenträger; für {@link Fsync#INTERVAL}.
+     */
+    void flush() {
+        MappedByteBuffer buffer;
+        lock.lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            buffer = writeSegment.buffer;
+        } finally {
+            lock.unlock();
+        }
+        buffer.force();
+    }
+
+    /**
+     * @return Anzahl geschriebener, noch nicht bestätigter Einträge
+     */
+    long pending() {
+        lock.lock();
+        try {
+            return nextSequence - 1 - acknowledged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Anzahl der Segmentdateien
+     */
+    int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (fsync != Fsync.NEVER) {
+            flush();
+        }
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                closeQuietly(segment.channel);
+            }
+            closeQuietly(checkpointChannel);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasUnread() {
+        return readPosition < readSegment.position || segments.higherKey(readSegment.firstSequence) != null;
+    }
+
+    /**
+     * Liest alle Segmente ein und bestimmt die nächste Nummer. Ein Segment endet beim ersten Eintrag,
+     * dessen Länge, Nummer oder Prüfsumme nicht passt.
+     */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long firstSequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            segments.put(firstSequence, mapSegment(file, firstSequence));
+        }
+
+        long expected = -1;
+        for (Segment segment : segments.values()) {
+            if (expected != -1 && segment.firstSequence != expected) {
+                log.warn("Order-Journal: Lücke vor Segment {}, erwartet war Nummer {}.", segment.firstSequence, expected);
+            }
+            scan(segment);
+            expected = segment.lastSequence + 1;
+            writeSegment = segment;
+        }
+        if (writeSegment != null) {
+            nextSequence = Math.max(nextSequence, writeSegment.lastSequence + 1);
+        }
+    }
+
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        long expected = segment.firstSequence;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > segmentSize
+                    || buffer.getLong(position + Integer.BYTES) != expected) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_SIZE, payload);
+            if (checksum(payload) != buffer.getInt(position + Integer.BYTES + Long.BYTES)) {
+                log.warn("Order-Journal: beschädigter Eintrag {} in Segment {} wird verworfen.", expected, segment.firstSequence);
+                break;
+            }
+            position += HEADER_SIZE + length;
+            expected++;
+        }
+        // Einen abgeschnittenen Eintrag entwerten, damit er nicht mit einem neuen verwechselt wird
+        if (position + Integer.BYTES <= segmentSize) {
+            buffer.putInt(position, 0);
+        }
+        segment.position = position;
+        segment.lastSequence = expected - 1;
+    }
+
+    private void seekReader() {
+        readSegment = writeSegment;
+        readPosition = writeSegment.position;
+        for (Segment segment : segments.values()) {
+            if (segment.lastSequence > acknowledged) {
+                readSegment = segment;
+                readPosition = 0;
+                long sequence = segment.firstSequence;
+                while (sequence <= acknowledged) {
+                    readPosition += HEADER_SIZE + segment.buffer.getInt(readPosition);
+                    sequence++;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Beginnt ein neues Segment.
+     *
+     * @return Das bisherige Segment, das der Aufrufer nach dem Freigeben des Locks auf den Datenträger
+     * zwingen muss; null bei {@link Fsync#NEVER}
+     */
+    private MappedByteBuffer roll() {
+        MappedByteBuffer previous = writeSegment.buffer;
+        try {
+            writeSegment = openSegment(nextSequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Neues Segment des Order-Journals konnte nicht angelegt werden", e);
+        }
+        dirty = false;
+        return fsync != Fsync.NEVER ? previous : null;
+    }
+
+    private Segment openSegment(long firstSequence) throws IOException {
+        Segment segment = mapSegment(directory.resolve(segmentName(firstSequence)), firstSequence);
+        segment.lastSequence = firstSequence - 1;
+        segments.put(firstSequence, segment);
+        return segment;
+    }
+
+    private Segment mapSegment(Path file, long firstSequence) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(firstSequence, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+    }
+
+    /**
+     * Löscht alle Segmente außer dem aktuellen, deren Einträge vollständig bestätigt sind.
+     */
+    private void compact() {
+        while (segments.size() > 1) {
+            Map.Entry<Long, Segment> oldest = segments.firstEntry();
+            Segment segment = oldest.getValue();
+            if (segment == writeSegment || segment.lastSequence > durablyAcknowledged) {
+                return;
+            }
+            segments.remove(oldest.getKey());
+            if (segment == readSegment) {
+                readSegment = segments.firstEntry().getValue();
+                readPosition = 0;
+            }
+            closeQuietly(segment.channel);
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                log.warn("Bestätigtes Segment {} konnte nicht gelöscht werden: {}", segment.file, e.getMessage());
+            }
+        }
+    }
+
+    private static String segmentName(long firstSequence) {
+        return SEGMENT_PREFIX + String.format("%020d", firstSequence) + SEGMENT_SUFFIX;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Datei des Order-Journals konnte nicht geschlossen werden", e);
+        }
+    }
+
+    private static final class Segment {
+        private final long firstSequence;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private long lastSequence;
+
+        private Segment(long firstSequence, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.firstSequence = firstSequence;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
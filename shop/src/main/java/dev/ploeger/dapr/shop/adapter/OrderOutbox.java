@@ -0,0 +1,192 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.ploeger.dapr.shop.config.OrderOutboxProperties;
+import dev.ploeger.dapr.shop.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Transaktionale Outbox für Bestellungen.
+ * <p>
+ * Eine Bestellung gilt als angenommen, sobald sie im lokalen {@link OrderJournal} steht; das dauert
+ * Mikrosekunden und hängt nicht vom Broker ab. Ein Relay-Thread liest das Journal und veröffentlicht
+ * die Bestellungen. Nicht veröffentlichte Bestellungen werden mit wachsender Wartezeit erneut gesendet,
+ * erst danach wird der Batch im Journal bestätigt. Nach einem Absturz werden alle unbestätigten
+ * Bestellungen erneut veröffentlicht; eine Bestellung kann also mehrfach ankommen, geht aber nicht
+ * verloren.
+ * <p>
+ * Gemessen werden die Dauer des Anhängens ({@code orders.outbox.append}), die unbestätigten Bestellungen
+ * ({@code orders.outbox.pending}), die veröffentlichten Bestellungen ({@code orders.outbox.relayed}) und
+ * die erneuten Sendeversuche ({@code orders.outbox.retries}).
+ */
+@Slf4j
+class OrderOutbox implements AutoCloseable {
+    private static final Duration IDLE_POLL = Duration.ofMillis(200);
+    private static final Duration DRAIN_POLL = Duration.ofMillis(50);
+
+    private final OrderJournal journal;
+    private final ObjectMapper objectMapper;
+    private final Function<Order, CompletableFuture<Boolean>> publisher;
+    private final OrderOutboxProperties config;
+    private final ScheduledExecutorService fsyncScheduler;
+    private final Timer appendTimer;
+    private final Counter relayedCounter;
+    private final Counter retryCounter;
+    private final Thread relay;
+    private volatile boolean running = true;
+
+    /**
+     * @param publisher Veröffentlicht eine Bestellung; das Future wird mit false abgeschlossen, wenn das fehlschlug
+     */
+    OrderOutbox(OrderOutboxProperties config, ObjectMapper objectMapper,
+                Function<Order, CompletableFuture<Boolean>> publisher,
+                MeterRegistry meterRegistry) throws IOException {
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.publisher = publisher;
+        this.journal = new OrderJournal(Path.of(config.directory()), (int) config.segmentSize().toBytes(), config.fsync());
+        this.appendTimer = Timer.builder("orders.outbox.append")
+                .description("Dauer, bis eine Bestellung im Journal steht")
+                .register(meterRegistry);
+        this.relayedCounter = Counter.builder("orders.outbox.relayed")
+                .description("Aus dem Journal veröffentlichte Bestellungen")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("orders.outbox.retries")
+                .description("Erneute Sendeversuche für nicht veröffentlichte Bestellungen")
+                .register(meterRegistry);
+        Gauge.builder("orders.outbox.pending", journal, OrderJournal::pending)
+                .description("Angenommene, noch nicht veröffentlichte Bestellungen")
+                .register(meterRegistry);
+
+        if (config.fsync() == OrderOutboxProperties.Fsync.INTERVAL) {
+            long interval = config.fsyncInterval().toMillis();
+            fsyncScheduler = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("order-outbox-fsync").daemon(true).factory());
+            fsyncScheduler.scheduleWithFixedDelay(journal::flush, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            fsyncScheduler = null;
+        }
+        this.relay = Thread.ofPlatform().name("order-outbox-relay").daemon(true).start(this::run);
+    }
+
+    /**
+     * Schreibt die Bestellung ins Journal.
+     *
+     * @throws IOException wenn die Bestellung nicht geschrieben werden konnte
+     */
+    void append(Order order) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(order);
+        long start = System.nanoTime();
+        journal.append(payload);
+        appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Beendet das Relay. Vorher darf es bis zu {@code drain-timeout} lang die angenommenen Bestellungen
+     * veröffentlichen, damit ein Rolling Deploy oder Scale-down keine Bestellungen zurücklässt. Was danach
+     * noch nicht veröffentlicht ist, bleibt im Journal und wird nach dem nächsten Start veröffentlicht.
+     */
+    @Override
+    public void close() {
+        drain();
+        running = false;
+        relay.interrupt();
+        try {
+            relay.join(Duration.ofSeconds(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (fsyncScheduler != null) {
+            fsyncScheduler.shutdown();
+        }
+        journal.close();
+    }
+
+    private void drain() {
+        long deadline = System.nanoTime() + config.drainTimeout().toNanos();
+        try {
+            while (journal.pending() > 0 && relay.isAlive() && System.nanoTime() < deadline) {
+                Thread.sleep(DRAIN_POLL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long pending = journal.pending();
+        if (pending > 0) {
+            log.warn("{} Bestellungen beim Beenden nicht veröffentlicht, sie bleiben im Journal", pending);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                List<OrderJournal.Entry> batch = journal.poll(config.relayBatchSize(), IDLE_POLL);
+                if (!batch.isEmpty() && relay(batch)) {
+                    journal.acknowledge(batch.getLast().sequence());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.error("Fehler im Order-Outbox-Relay", e);
+            }
+        }
+    }
+
+    /**
+     * Veröffentlicht alle Bestellungen des Batches und wiederholt fehlgeschlagene, bis alle
+     * veröffentlicht sind.
+     *
+     * @return false, wenn das Relay vorher beendet wurde
+     */
+    private boolean relay(List<OrderJournal.Entry> batch) throws InterruptedException {
+        List<Order> remaining = new ArrayList<>(batch.size());
+        for (OrderJournal.Entry entry : batch) {
+            try {
+                remaining.add(objectMapper.readValue(entry.payload(), Order.class));
+            } catch (IOException e) {
+                // Ein unlesbarer Eintrag würde das Relay sonst dauerhaft blockieren
+                log.error("Eintrag {} des Order-Journals ist keine Bestellung und wird übersprungen", entry.sequence(), e);
+            }
+        }
+        Duration backoff = config.retryBackoff();
+        while (true) {
+            List<CompletableFuture<Boolean>> results = remaining.stream().map(publisher).toList();
+            List<Order> failed = new ArrayList<>();
+            for (int i = 0; i < remaining.size(); i++) {
+                if (!Boolean.TRUE.equals(results.get(i).join())) {
+                    failed.add(remaining.get(i));
+                }
+            }
+            relayedCounter.increment(remaining.size() - failed.size());
+            if (failed.isEmpty()) {
+                return true;
+            }
+            if (!running) {
+                return false;
+            }
+            log.warn("{} Bestellungen aus dem Journal nicht veröffentlicht, neuer Versuch in {} ms",
+                    failed.size(), backoff.toMillis());
+            retryCounter.increment(failed.size());
+            Thread.sleep(backoff);
+            backoff = backoff.multipliedBy(2).compareTo(config.maxRetryBackoff()) > 0
+                    ? config.maxRetryBackoff()
+                    : backoff.multipliedBy(2);
+            remaining = failed;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import dev.ploeger.dapr.shop.model.Order;
+import dev.ploeger.dapr.shop.model.Sweet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kodiert Bestellungen im kompakten Format aus {@code src/main/proto/order.proto}.
+ * <p>
+ * Vier Header-Bytes (Kennung, Version, Typ, Flags) machen das Format erkennbar und versionierbar;
+ * Billing liest daneben weiterhin JSON. Eine Bestellung braucht so weniger als die Hälfte der Bytes,
+ * weil die Feldnamen entfallen.
+ */
+final class OrderProtobuf {
+    static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static final byte MAGIC = (byte) 0xC5;
+    private static final byte VERSION = 1;
+    private static final byte TYPE_ORDER = 3;
+    private static final int HEADER_SIZE = 4;
+
+    private static final int ORDER_NAME = 1;
+    private static final int ORDER_ADDRESS = 2;
+    private static final int ORDER_EMAIL = 3;
+    private static final int ORDER_PHONE = 4;
+    private static final int ORDER_PAYMENT_METHOD = 5;
+    private static final int ORDER_SWEETS = 6;
+    private static final int SWEET_NAME = 1;
+    private static final int SWEET_PRICE_CENTS = 2;
+    private static final int SWEET_QUANTITY = 3;
+    private static final int SWEET_PRICE = 4;
+
+    private OrderProtobuf() {
+    }
+
+    static byte[] encode(Order order) {
+        int size = stringSize(ORDER_NAME, order.name())
+                + stringSize(ORDER_ADDRESS, order.address())
+                + stringSize(ORDER_EMAIL, order.email())
+                + stringSize(ORDER_PHONE, order.phone())
+                + stringSize(ORDER_PAYMENT_METHOD, order.paymentMethod());
+        List<Sweet> sweets = order.sweets() != null ? order.sweets() : List.of();
+        for (Sweet sweet : sweets) {
+            int sweetSize = sweetSize(sweet);
+            size += CodedOutputStream.computeTagSize(ORDER_SWEETS)
+                    + CodedOutputStream.computeUInt32SizeNoTag(sweetSize) + sweetSize;
+        }
+        byte[] bytes = new byte[HEADER_SIZE + size];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = TYPE_ORDER;
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes, HEADER_SIZE, size);
+        try {
+            writeString(output, ORDER_NAME, order.name());
+            writeString(output, ORDER_ADDRESS, order.address());
+            writeString(output, ORDER_EMAIL, order.email());
+            writeString(output, ORDER_PHONE, order.phone());
+            writeString(output, ORDER_PAYMENT_METHOD, order.paymentMethod());
+            for (Sweet sweet : sweets) {
+                output.writeTag(ORDER_SWEETS, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(sweetSize(sweet));
+                writeString(output, SWEET_NAME, sweet.name());
+                output.writeSInt64(SWEET_PRICE_CENTS, toCents(sweet.price()));
+                output.writeSInt32(SWEET_QUANTITY, sweet.quantity());
+                if (!isWholeCents(sweet.price())) {
+                    output.writeDouble(SWEET_PRICE, sweet.price());
+                }
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes;
+    }
+
+    static Order decode(byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC || bytes[2] != TYPE_ORDER) {
+            throw new IOException("Keine Bestellung im kompakten Format");
+        }
+        if (bytes[1] > VERSION) {
+            throw new IOException("Unbekannte Version " + bytes[1] + " des kompakten Formats");
+        }
+        CodedInputStream input = CodedInputStream.newInstance(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+        String name = null;
+        String address = null;
+        String email = null;
+        String phone = null;
+        String paymentMethod = null;
+        List<Sweet> sweets = new ArrayList<>();
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case ORDER_NAME -> name = input.readString();
+                case ORDER_ADDRESS -> address = input.readString();
+                case ORDER_EMAIL -> email = input.readString();
+                case ORDER_PHONE -> phone = input.readString();
+                case ORDER_PAYMENT_METHOD -> paymentMethod = input.readString();
+                case ORDER_SWEETS -> sweets.add(readSweet(input));
+                default -> input.skipField(tag);
+            }
+        }
+        return new Order(name, address, email, phone, paymentMethod, sweets);
+    }
+
+    private static Sweet readSweet(CodedInputStream input) throws IOException {
+        int limit = input.pushLimit(input.readRawVarint32());
+        String name = null;
+        long priceCents = 0;
+        Double price = null;
+        int quantity = 0;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case SWEET_NAME -> name = input.readString();
+                case SWEET_PRICE_CENTS -> priceCents = input.readSInt64();
+                case SWEET_PRICE -> price = input.readDouble();
+                case SWEET_QUANTITY -> quantity = input.readSInt32();
+                default -> input.skipField(tag);
+            }
+        }
+        input.popLimit(limit);
+        return new Sweet(name, price != null ? price : priceCents / 100.0, quantity);
+    }
+
+    private static int sweetSize(Sweet sweet) {
+        return stringSize(SWEET_NAME, sweet.name())
+                + CodedOutputStream.computeSInt64Size(SWEET_PRICE_CENTS, toCents(sweet.price()))
+                + CodedOutputStream.computeSInt32Size(SWEET_QUANTITY, sweet.quantity())
+                + (isWholeCents(sweet.price()) ? 0 : CodedOutputStream.computeDoubleSize(SWEET_PRICE, sweet.price()));
+    }
+
+    private static long toCents(double price) {
+        return Math.round(price * 100);
+    }
+
+    /**
+     * Preise aus ganzen Cent stehen nur als Varint im Feld {@code price_cents}. Alle anderen stehen zusätzlich
+     * exakt im Feld {@code price}, damit die Rechnung den Preis der Bestellung verwendet; ältere Leser sehen
+     * weiterhin den gerundeten Cent-Betrag.
+     */
+    private static boolean isWholeCents(double price) {
+        return toCents(price) / 100.0 == price;
+    }
+
+    // Fehlende Felder werden wie in proto3 üblich weggelassen und beim Lesen zu null
+    private static int stringSize(int field, String value) {
+        return value != null ? CodedOutputStream.computeStringSize(field, value) : 0;
+    }
+
+    private static void writeString(CodedOutputStream output, int field, String value) throws IOException {
+        if (value != null) {
+            output.writeString(field, value);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import dev.ploeger.dapr.shop.config.OrderPublishingProperties;
+import dev.ploeger.dapr.shop.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Sammelt Bestellungen und veröffentlicht sie gebündelt.
+ * <p>
+ * Ein einzelner Worker-Thread nimmt die erste wartende Bestellung aus der Queue und sammelt weitere,
+ * bis das Zeitfenster abgelaufen oder die maximale Batchgröße erreicht ist. Der Batch wird dann mit
+ * einem einzigen Bulk-Publish veröffentlicht. Unter Last warten die Bestellungen so nicht einzeln auf
+ * die Bestätigung des Brokers, sondern teilen sich eine.
+ * <p>
+ * Je Batch wird gezählt, ob er vollständig, teilweise oder gar nicht veröffentlicht wurde
+ * ({@code orders.publish.batches}), dazu die Bestellungen je Ergebnis ({@code orders.publish.orders})
+ * und die Batchgrößen ({@code orders.publish.batch.size}).
+ */
+@Slf4j
+class OrderPublishBatcher implements AutoCloseable {
+    private static final Duration IDLE_POLL = Duration.ofMillis(200);
+
+    private final Function<List<Order>, Mono<Set<Integer>>> publisher;
+    private final int maxBatchSize;
+    private final Duration window;
+    private final Duration timeout;
+    private final BlockingQueue<PendingOrder> queue;
+    private final DistributionSummary batchSizes;
+    private final Counter completeBatches;
+    private final Counter partialBatches;
+    private final Counter failedBatches;
+    private final Counter publishedOrders;
+    private final Counter failedOrders;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * @param publisher      Veröffentlicht einen Batch und liefert die Positionen der fehlgeschlagenen Bestellungen
+     * @param virtualThreads Worker als virtuellen statt als Plattform-Thread starten
+     */
+    OrderPublishBatcher(OrderPublishingProperties config,
+                        Function<List<Order>, Mono<Set<Integer>>> publisher,
+                        MeterRegistry meterRegistry,
+                        boolean virtualThreads) {
+        this.publisher = publisher;
+        this.maxBatchSize = config.maxBatchSize();
+        this.window = config.window();
+        this.timeout = config.timeout();
+        this.queue = new LinkedBlockingQueue<>(config.queueCapacity());
+        this.batchSizes = DistributionSummary.builder("orders.publish.batch.size")
+                .description("Anzahl der Bestellungen je Bulk-Publish")
+                .register(meterRegistry);
+        this.completeBatches = batchCounter(meterRegistry, "complete");
+        this.partialBatches = batchCounter(meterRegistry, "partial");
+        this.failedBatches = batchCounter(meterRegistry, "failed");
+        this.publishedOrders = orderCounter(meterRegistry, "published");
+        this.failedOrders = orderCounter(meterRegistry, "failed");
+        Thread.Builder threadBuilder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        this.worker = threadBuilder
+                .name("order-publish-batcher")
+                .start(this::run);
+    }
+
+    /**
+     * Reiht eine Bestellung ein.
+     *
+     * @return Ein Future, das mit true abgeschlossen wird, sobald der Batch mit dieser Bestellung
+     * veröffentlicht wurde, und mit false, wenn sie nicht veröffentlicht werden konnte.
+     */
+    CompletableFuture<Boolean> submit(Order order) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (!running) {
+            log.warn("Order-Batcher ist beendet, Bestellung von '{}' wird verworfen.", order.name());
+            result.complete(false);
+        } else if (!queue.offer(new PendingOrder(order, result))) {
+            log.warn("Zu viele wartende Bestellungen, Bestellung von '{}' wird abgelehnt.", order.name());
+            failedOrders.increment();
+            result.complete(false);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join(timeout.plusSeconds(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Alles, was nach dem Beenden noch in der Queue liegt, wird abgelehnt
+        PendingOrder pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().complete(false);
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(IDLE_POLL.toMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    publish(collectBatch(first));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<PendingOrder> collectBatch(PendingOrder first) throws InterruptedException {
+        List<PendingOrder> batch = new ArrayList<>(maxBatchSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + window.toNanos();
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                // Fenster abgelaufen: nur noch mitnehmen, was bereits wartet
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                break;
+            }
+            PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void publish(List<PendingOrder> batch) {
+        batchSizes.record(batch.size());
+        List<Order> orders = batch.stream().map(PendingOrder::order).toList();
+        Set<Integer> failed;
+        try {
+            failed = publisher.apply(orders).block(timeout);
+        } catch (Exception e) {
+            log.error("Fehler beim Veröffentlichen von {} Bestellungen", batch.size(), e);
+            failed = null;
+        }
+
+        if (failed == null) {
+            failedBatches.increment();
+            failedOrders.increment(batch.size());
+            batch.forEach(pending -> pending.result().complete(false));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(!failed.contains(i));
+        }
+        publishedOrders.increment(batch.size() - failed.size());
+        failedOrders.increment(failed.size());
+        if (failed.isEmpty()) {
+            completeBatches.increment();
+        } else if (failed.size() == batch.size()) {
+            failedBatches.increment();
+            log.warn("Keine der {} Bestellungen des Batches wurde veröffentlicht.", batch.size());
+        } else {
+            partialBatches.increment();
+            log.warn("{} von {} Bestellungen des Batches wurden nicht veröffentlicht.", failed.size(), batch.size());
+        }
+    }
+
+    private static Counter batchCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("orders.publish.batches")
+                .description("Bulk-Publishes von Bestellungen je Ergebnis")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter orderCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("orders.publish.orders")
+                .description("Veröffentlichte bzw. fehlgeschlagene Bestellungen")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record PendingOrder(Order order, CompletableFuture<Boolean> result) {
+    }
+}
@@ -1,26 +1,418 @@
 package dev.ploeger.dapr.shop.adapter;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.ploeger.dapr.shop.config.WarehouseClientProperties;
+import dev.ploeger.dapr.shop.model.InventoryPage;
 import dev.ploeger.dapr.shop.model.Sweet;
-import dev.ploeger.dapr.shop.model.Sweets;
 import io.dapr.client.DaprClient;
+import io.dapr.client.DaprHttp;
 import io.dapr.client.domain.HttpExtension;
-import io.dapr.serializer.DefaultObjectSerializer;
+import io.dapr.utils.TypeRef;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * Zugriff auf den Lager-Service.
+ * <p>
+ * Jeder Aufruf hat ein Zeitlimit und läuft über einen gemeinsamen {@link CircuitBreaker}; ist das Lager
+ * langsam oder nicht erreichbar, warten die Shop-Threads also nicht unbegrenzt, und bei offenem Breaker
+ * gar nicht. Das Inventar wird dann aus dem zuletzt geladenen Stand geliefert.
+ * <p>
+ * Jeder Aufruf wird als {@code warehouse.calls} mit {@code operation} und {@code result} (success,
+ * failure, timeout, rejected) gemessen; dazu kommen {@code warehouse.inventory.hedges} für gestartete
+ * zweite Aufrufe und {@code warehouse.inventory.fallbacks} für ausgelieferte alte Stände.
+ */
 @Component
+@Slf4j
 public class WarehouseAdapter {
+    private static final TypeRef<InventoryPage> INVENTORY_PAGE_TYPE = TypeRef.get(InventoryPage.class);
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String PROTOBUF = "application/x-protobuf";
+    private static final String SNAPSHOT_NAME = "inventory";
+    private static final String SNAPSHOT_KEY = "all";
+
     @Autowired
     private DaprClient daprClient;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private WarehouseClientProperties properties;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private ExecutorService callExecutor;
+    private AsyncLoadingCache<String, List<Sweet>> inventorySnapshot;
+    private CircuitBreaker circuitBreaker;
+    private Counter hedgeCounter;
+    private Counter fallbackCounter;
+    private volatile List<Sweet> lastKnownInventory;
+
+    @PostConstruct
+    void init() {
+        initResilience();
+        initInventorySnapshot();
+    }
+
+    private void initResilience() {
+        // Aufrufe mit Zeitlimit und Hedging blockieren einen eigenen Thread, nicht den des Aufrufers
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("warehouse-call-", 0).factory()
+                : Thread.ofPlatform().name("warehouse-call-", 0).daemon(true).factory();
+        callExecutor = Executors.newThreadPerTaskExecutor(threadFactory);
+        WarehouseClientProperties.Resilience config = properties.resilience();
+        circuitBreaker = new CircuitBreaker("warehouse", config.failureThreshold(), config.openDuration(), meterRegistry);
+        hedgeCounter = Counter.builder("warehouse.inventory.hedges")
+                .description("Zweite Aufrufe beim Laden des Inventars, weil der erste zu lange dauerte")
+                .register(meterRegistry);
+        fallbackCounter = Counter.builder("warehouse.inventory.fallbacks")
+                .description("Ausgelieferte alte Inventarstände, weil das Lager nicht antwortete")
+                .register(meterRegistry);
+    }
 
+    private void initInventorySnapshot() {
+        WarehouseClientProperties.Snapshot config = properties.snapshot();
+        if (!config.enabled()) {
+            return;
+        }
+        // Das Laden blockiert auf dem Lager-Aufruf und läuft deshalb nicht im Common-Pool von Caffeine
+        inventorySnapshot = Caffeine.newBuilder()
+                .maximumSize(1)
+                .refreshAfterWrite(config.refreshAfter())
+                .expireAfterWrite(config.maxStaleness())
+                .executor(callExecutor)
+                .recordStats()
+                .buildAsync(key -> loadInventory());
+        CaffeineCacheMetrics.monitor(meterRegistry, inventorySnapshot, SNAPSHOT_NAME, Tags.empty());
+    }
+
+    @PreDestroy
+    void shutdownCalls() {
+        if (callExecutor != null) {
+            callExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Liefert das komplette Inventar aus dem gemeinsamen Inventarstand aller Sitzungen.
+     * <p>
+     * Gleichzeitige Aufrufe teilen sich einen einzigen Aufruf des Lagers. Ist der Stand älter als
+     * {@code refresh-after}, wird er noch ausgeliefert und im Hintergrund neu geladen; ist er älter als
+     * {@code max-staleness}, warten die Aufrufer auf den neuen Stand. Schlägt das Neuladen im Hintergrund
+     * fehl, bleibt der bisherige Stand bis {@code max-staleness} gültig. Ist das Lager nicht erreichbar,
+     * wird der zuletzt geladene Stand geliefert, solange es einen gibt.
+     *
+     * @return Die unveränderliche Liste aller Süßigkeiten
+     */
     @SneakyThrows
     public List<Sweet> getInventory() {
-        byte[] bytes = daprClient.invokeMethod("warehouse", "inventory", null, HttpExtension.GET, null, byte[].class).block();
-        List<Sweet> list = (new DefaultObjectSerializer()).deserialize(bytes, Sweets.class);
-        return list;
+        if (inventorySnapshot == null) {
+            return loadInventory();
+        }
+        try {
+            return inventorySnapshot.get(SNAPSHOT_KEY).join();
+        } catch (CompletionException e) {
+            throw e.getCause() != null ? e.getCause() : e;
+        }
+    }
+
+    /**
+     * Verwirft den gemeinsamen Inventarstand, z.B. nach einer eigenen Änderung am Inventar.
+     */
+    public void invalidateInventory() {
+        if (inventorySnapshot != null) {
+            inventorySnapshot.synchronous().invalidateAll();
+        }
+    }
+
+    /**
+     * Lädt das komplette Inventar vom Lager, bei offenem Circuit Breaker oder Fehlschlag stattdessen
+     * den zuletzt geladenen Stand.
+     */
+    private List<Sweet> loadInventory() {
+        try {
+            Supplier<List<Sweet>> fetch = properties.inventoryFormat() == WarehouseClientProperties.InventoryFormat.PROTOBUF
+                    ? this::fetchInventoryProtobuf
+                    : this::streamInventory;
+            List<Sweet> inventory = call("inventory", () -> hedged(fetch,
+                    properties.resilience().hedgeDelay(), properties.resilience().readTimeout()));
+            lastKnownInventory = inventory;
+            return inventory;
+        } catch (RuntimeException e) {
+            List<Sweet> lastKnown = lastKnownInventory;
+            if (lastKnown == null) {
+                throw e;
+            }
+            log.warn("Lager nicht erreichbar, liefere den zuletzt geladenen Inventarstand: {}", e.getMessage());
+            fallbackCounter.increment();
+            return lastKnown;
+        }
+    }
+
+    /**
+     * Die Süßigkeiten werden gestreamt gelesen (siehe {@link #forEachSweet(String, Consumer)}), es wird
+     * also nur die Ergebnisliste aufgebaut.
+     */
+    private List<Sweet> streamInventory() {
+        List<Sweet> sweets = new ArrayList<>();
+        forEachSweet(null, sweets::add);
+        return List.copyOf(sweets);
+    }
+
+    /**
+     * Lädt das komplette Inventar im Protobuf-Format. Wie beim Stream wird die HTTP-API des Sidecars
+     * direkt angesprochen, damit der Accept-Header sicher beim Lager ankommt.
+     */
+    @SneakyThrows
+    private List<Sweet> fetchInventoryProtobuf() {
+        HttpResponse<byte[]> response = httpClient.send(sidecarRequest("inventory", PROTOBUF).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("Lager antwortet auf das Inventar mit Status " + response.statusCode());
+        }
+        return List.copyOf(InventoryProtobuf.decode(response.body()));
+    }
+
+    /**
+     * Führt einen blockierenden Aufruf aus. Antwortet er nicht innerhalb von {@code hedgeDelay}, wird er
+     * ein zweites Mal gestartet; das erste erfolgreiche Ergebnis gewinnt. Nur wenn alle gestarteten
+     * Aufrufe fehlschlagen oder das Zeitlimit abläuft, schlägt der Aufruf fehl. Noch laufende Aufrufe
+     * werden danach abgebrochen.
+     *
+     * @throws WarehouseCallException wenn das Zeitlimit abläuft oder alle Aufrufe mit einer checked Exception
+     *                                fehlschlagen
+     */
+    private <T> T hedged(Supplier<T> call, Duration hedgeDelay, Duration timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger(1);
+        AtomicInteger failed = new AtomicInteger();
+        List<Future<?>> attempts = new ArrayList<>(2);
+        // Kein synchronized: der Aufrufer ist meist ein virtueller Thread und soll seinen Carrier nicht blockieren
+        ReentrantLock attemptsLock = new ReentrantLock();
+        Runnable attempt = () -> {
+            try {
+                result.complete(call.get());
+            } catch (Exception e) {
+                if (failed.incrementAndGet() >= started.get()) {
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+        attempts.add(callExecutor.submit(attempt));
+        if (hedgeDelay.isPositive() && hedgeDelay.compareTo(timeout) < 0) {
+            CompletableFuture.delayedExecutor(hedgeDelay.toMillis(), TimeUnit.MILLISECONDS, callExecutor).execute(() -> {
+                attemptsLock.lock();
+                try {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    started.incrementAndGet();
+                    hedgeCounter.increment();
+                    attempts.add(callExecutor.submit(attempt));
+                } finally {
+                    attemptsLock.unlock();
+                }
+            });
+        }
+        try {
+            return result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new WarehouseCallException("Lager antwortet nicht innerhalb von " + timeout.toMillis() + " ms", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new WarehouseCallException("Aufruf des Lagers fehlgeschlagen: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WarehouseCallException("Warten auf das Lager unterbrochen", e);
+        } finally {
+            attemptsLock.lock();
+            try {
+                // Der Verlierer bzw. ein hängender Aufruf wird unterbrochen, statt weiter einen Thread zu belegen
+                result.cancel(false);
+                attempts.forEach(future -> future.cancel(true));
+            } finally {
+                attemptsLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Führt einen Aufruf des Lagers über den Circuit Breaker aus und misst ihn.
+     */
+    private <T> T call(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        String result = "failure";
+        try {
+            T value = circuitBreaker.call(call);
+            result = "success";
+            return value;
+        } catch (CircuitBreaker.OpenException e) {
+            result = "rejected";
+            throw e;
+        } catch (RuntimeException e) {
+            result = isTimeout(e) ? "timeout" : "failure";
+            throw e;
+        } finally {
+            Timer.builder("warehouse.calls")
+                    .description("Aufrufe des Lagers")
+                    .tag("operation", operation)
+                    .tag("result", result)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = Exceptions.unwrap(e); cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wartet höchstens {@code timeout} auf das Ergebnis.
+     */
+    private static <T> T await(Mono<T> mono, Duration timeout) {
+        return mono.timeout(timeout).block();
+    }
+
+    /**
+     * Liest das Inventar als NDJSON-Stream und übergibt jede Süßigkeit, sobald sie eingelesen ist.
+     * <p>
+     * Dapr-Service-Invocation über den {@link DaprClient} liefert nur den kompletten Body, deshalb
+     * wird der Stream direkt über die HTTP-API des Sidecars gelesen.
+     *
+     * @param sort   Sortierung im Format {@code feld[,asc|desc]} oder {@code null} für die Ablagereihenfolge
+     * @param action Wird für jede Süßigkeit aufgerufen
+     */
+    @SneakyThrows
+    public void forEachSweet(String sort, Consumer<Sweet> action) {
+        String query = sort != null ? "?sort=" + URLEncoder.encode(sort, StandardCharsets.UTF_8) : "";
+        HttpRequest request = sidecarRequest("inventory/stream" + query, NDJSON).build();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Lager antwortet auf den Inventar-Stream mit Status " + response.statusCode());
+            }
+            try (MappingIterator<Sweet> sweets = objectMapper.readerFor(Sweet.class).readValues(body)) {
+                while (sweets.hasNextValue()) {
+                    action.accept(sweets.nextValue());
+                }
+            }
+        }
+    }
+
+    private HttpRequest.Builder sidecarRequest(String method, String accept) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(properties.sidecarUrl()
+                        + "/v1.0/invoke/" + properties.appId() + "/method/" + method))
+                .header("Accept", accept)
+                .timeout(properties.streamTimeout())
+                .GET();
+        String apiToken = System.getenv("DAPR_API_TOKEN");
+        if (apiToken != null && !apiToken.isBlank()) {
+            request.header("dapr-api-token", apiToken);
+        }
+        return request;
+    }
+
+    /**
+     * Lädt eine Seite des sortierten Inventars über den Offset. Sortiert und gefiltert wird im Lager.
+     *
+     * @param sort        Sortierung im Format {@code feld[,asc|desc]} oder {@code null} für Sortierung nach Namen
+     * @param nameFilter  Nur Süßigkeiten, deren Name diesen Text enthält; {@code null} für alle
+     * @param inStockOnly Nur Süßigkeiten mit Bestand
+     */
+    public InventoryPage getInventoryPage(int offset, int limit, String sort, String nameFilter, boolean inStockOnly) {
+        Map<String, List<String>> query = pageQuery(limit, sort, nameFilter, inStockOnly);
+        query.put("offset", List.of(Integer.toString(offset)));
+        return fetchPage(query);
+    }
+
+    /**
+     * Lädt die Seite, die auf den Cursor einer vorherigen Seite folgt. Anders als beim Offset
+     * werden dabei keine Süßigkeiten übersprungen oder doppelt geliefert, wenn sich das Inventar
+     * zwischendurch ändert.
+     *
+     * @param cursor {@link InventoryPage#nextCursor()} der vorherigen Seite; {@code null} für die erste Seite
+     * @param sort   Dieselbe Sortierung und dieselben Filter wie für die vorherige Seite
+     */
+    public InventoryPage getInventoryPageAfter(String cursor, int limit, String sort, String nameFilter, boolean inStockOnly) {
+        Map<String, List<String>> query = pageQuery(limit, sort, nameFilter, inStockOnly);
+        if (cursor != null) {
+            query.put("cursor", List.of(cursor));
+        }
+        return fetchPage(query);
+    }
+
+    private Map<String, List<String>> pageQuery(int limit, String sort, String nameFilter, boolean inStockOnly) {
+        Map<String, List<String>> query = new HashMap<>();
+        query.put("limit", List.of(Integer.toString(limit > 0 ? limit : properties.pageSize())));
+        if (sort != null) {
+            query.put("sort", List.of(sort));
+        }
+        if (nameFilter != null && !nameFilter.isBlank()) {
+            query.put("q", List.of(nameFilter));
+        }
+        if (inStockOnly) {
+            query.put("inStock", List.of("true"));
+        }
+        return query;
+    }
+
+    private InventoryPage fetchPage(Map<String, List<String>> query) {
+        HttpExtension get = new HttpExtension(DaprHttp.HttpMethods.GET, query, Map.of());
+        return call("inventory-page", () -> await(
+                daprClient.invokeMethod(properties.appId(), "inventory/page", null, get, null, INVENTORY_PAGE_TYPE),
+                properties.resilience().readTimeout()));
     }
 
     @SneakyThrows
@@ -28,15 +420,16 @@ public class WarehouseAdapter {
 
         try {
             // Pass the 'sweet' object directly
-            byte[] response = daprClient.invokeMethod(
+            byte[] response = call("add-to-inventory", () -> await(daprClient.invokeMethod(
                     "warehouse",           // Target service app-id
                     "inventory",           // Target method name
                     sweet,                 // Request body object (NOT byte[])
                     HttpExtension.POST,         // HTTP Method (POST)
                     // Optional: Map<String, String> metadata,
                     byte[].class           // Expected response type
-            ).block();
+            ), properties.resilience().writeTimeout()));
 
+            invalidateInventory();
             return true;
         } catch (Exception e) {
             System.err.println("Error adding to inventory: " + e.getMessage());
@@ -45,4 +438,3 @@ public class WarehouseAdapter {
     }
 
 }
-
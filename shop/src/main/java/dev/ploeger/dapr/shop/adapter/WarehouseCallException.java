@@ -0,0 +1,13 @@
+package dev.ploeger.dapr.shop.adapter;
+
+/**
+ * Ein Aufruf des Lagers ist fehlgeschlagen oder hat sein Zeitlimit überschritten. Die eigentliche Ursache,
+ * etwa eine {@link java.io.IOException} oder {@link java.util.concurrent.TimeoutException}, bleibt als
+ * Cause erhalten.
+ */
+class WarehouseCallException extends RuntimeException {
+
+    WarehouseCallException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,32 @@
+package dev.ploeger.dapr.shop.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration der Warenkörbe im Dapr State Store.
+ *
+ * @param stateStoreName  Name der Dapr State-Store-Komponente
+ * @param writeDelay      Wie lange Änderungen gesammelt werden, bevor sie geschrieben werden
+ * @param writeTimeout    Maximale Dauer eines Schreibvorgangs, bevor er wiederholt wird
+ * @param readTimeout     Maximale Dauer beim Laden eines Warenkorbs aus dem State Store
+ * @param ttl             Nach dieser Zeit ohne Änderung löscht der State Store den Warenkorb; zugleich Lebensdauer des Cookies
+ * @param cacheSize       Maximale Anzahl lokal gehaltener Warenkörbe
+ * @param idleTimeout     Nicht mehr verwendete Warenkörbe werden nach dieser Zeit aus dem lokalen Cache entfernt
+ * @param revalidateAfter So lange nach dem Laden oder Ändern wird ein Warenkorb aus dem lokalen Cache gelesen,
+ *                        danach erneut aus dem State Store, falls ein anderer Pod ihn geändert hat
+ */
+@ConfigurationProperties(prefix = "shop.cart")
+public record CartProperties(
+        @DefaultValue("kvstore") String stateStoreName,
+        @DefaultValue("200ms") Duration writeDelay,
+        @DefaultValue("5s") Duration writeTimeout,
+        @DefaultValue("2s") Duration readTimeout,
+        @DefaultValue("7d") Duration ttl,
+        @DefaultValue("10000") int cacheSize,
+        @DefaultValue("30m") Duration idleTimeout,
+        @DefaultValue("10s") Duration revalidateAfter
+) {
+}
@@ -0,0 +1,51 @@
+package dev.ploeger.dapr.shop.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration des lokalen Order-Outbox-Journals.
+ *
+ * @param enabled         Outbox ein- oder ausschalten; ausgeschaltet werden Bestellungen direkt veröffentlicht
+ * @param directory       Verzeichnis des Journals; muss auf einem Volume liegen, das einen Neustart des Pods überdauert
+ * @param segmentSize     Größe einer Journal-Datei; größere Bestellungen werden abgelehnt
+ * @param fsync           Wann geschriebene Bestellungen auf den Datenträger gezwungen werden
+ * @param fsyncInterval   Abstand der Syncs bei {@link Fsync#INTERVAL}
+ * @param relayBatchSize  Maximale Anzahl an Bestellungen, die das Relay auf einmal veröffentlicht
+ * @param retryBackoff    Erste Wartezeit, bevor das Relay nicht veröffentlichte Bestellungen erneut sendet
+ * @param maxRetryBackoff Obergrenze der sich verdoppelnden Wartezeit
+ * @param drainTimeout    Wie lange das Relay beim Beenden noch veröffentlichen darf; muss unter der Zeit liegen,
+ *                        die Kubernetes dem Pod zum Beenden lässt
+ */
+@ConfigurationProperties(prefix = "shop.orders.outbox")
+public record OrderOutboxProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("data/outbox") String directory,
+        @DefaultValue("16MB") DataSize segmentSize,
+        @DefaultValue("INTERVAL") Fsync fsync,
+        @DefaultValue("100ms") Duration fsyncInterval,
+        @DefaultValue("100") int relayBatchSize,
+        @DefaultValue("200ms") Duration retryBackoff,
+        @DefaultValue("10s") Duration maxRetryBackoff,
+        @DefaultValue("20s") Duration drainTimeout
+) {
+
+    public enum Fsync {
+        /**
+         * Nach jeder Bestellung; eine angenommene Bestellung übersteht auch einen Absturz des Rechners.
+         */
+        ALWAYS,
+        /**
+         * Alle {@code fsync-interval}; bei einem Absturz des Rechners gehen höchstens die Bestellungen
+         * dieses Intervalls verloren, bei einem Absturz des Prozesses keine.
+         */
+        INTERVAL,
+        /**
+         * Nie; das Betriebssystem schreibt die Seiten selbst zurück.
+         */
+        NEVER
+    }
+}
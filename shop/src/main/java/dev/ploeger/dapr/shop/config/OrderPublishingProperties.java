@@ -0,0 +1,38 @@
+package dev.ploeger.dapr.shop.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration der gebündelten Veröffentlichung von Bestellungen über Dapr Bulk Publish.
+ *
+ * @param enabled       Bündelung ein- oder ausschalten; ausgeschaltet wird jede Bestellung einzeln veröffentlicht
+ * @param window        Wie lange nach der ersten Bestellung auf weitere gewartet wird
+ * @param maxBatchSize  Maximale Anzahl an Bestellungen je Bulk-Publish
+ * @param queueCapacity Maximale Anzahl wartender Bestellungen; darüber hinaus werden Bestellungen abgelehnt
+ * @param timeout       Maximale Dauer eines Bulk-Publish, bevor der Batch als fehlgeschlagen gilt
+ * @param format        Format der Bestellungen auf dem Topic; Billing liest beide Formate
+ */
+@ConfigurationProperties(prefix = "shop.orders.publishing")
+public record OrderPublishingProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("5ms") Duration window,
+        @DefaultValue("100") int maxBatchSize,
+        @DefaultValue("10000") int queueCapacity,
+        @DefaultValue("10s") Duration timeout,
+        @DefaultValue("json") PayloadFormat format
+) {
+
+    public enum PayloadFormat {
+        /**
+         * JSON im Feld {@code data} des CloudEvents.
+         */
+        JSON,
+        /**
+         * Binärformat aus {@code order.proto} im Feld {@code data_base64}; etwa halb so groß wie JSON.
+         */
+        COMPACT
+    }
+}
@@ -0,0 +1,74 @@
+package dev.ploeger.dapr.shop.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration der Aufrufe des Lager-Services.
+ *
+ * @param appId         Dapr-App-ID des Lagers
+ * @param sidecarUrl    HTTP-Endpunkt des eigenen Dapr-Sidecars; darüber wird das Inventar gestreamt
+ * @param pageSize      Seitengröße beim seitenweisen Lesen des Inventars
+ * @param streamTimeout Maximale Dauer, bis das Lager mit dem Streamen des Inventars beginnt
+ * @param snapshot      Gemeinsamer Inventarstand aller Sitzungen
+ * @param resilience    Zeitlimits, Circuit Breaker und Hedging der Aufrufe
+ * @param inventoryFormat Format, in dem das komplette Inventar geladen wird
+ */
+@ConfigurationProperties(prefix = "shop.warehouse")
+public record WarehouseClientProperties(
+        @DefaultValue("warehouse") String appId,
+        @DefaultValue("http://localhost:3500") String sidecarUrl,
+        @DefaultValue("50") int pageSize,
+        @DefaultValue("10s") Duration streamTimeout,
+        @DefaultValue Snapshot snapshot,
+        @DefaultValue Resilience resilience,
+        @DefaultValue("protobuf") InventoryFormat inventoryFormat
+) {
+
+    public enum InventoryFormat {
+        /**
+         * JSON, Zeile für Zeile gestreamt; die Süßigkeiten werden schon während der Übertragung verarbeitet.
+         */
+        NDJSON,
+        /**
+         * Protobuf in einem Stück; etwa ein Drittel der Bytes und deutlich schneller zu dekodieren.
+         */
+        PROTOBUF
+    }
+
+    /**
+     * Ein Inventarstand für die ganze Anwendung statt eines Aufrufs je Sitzung. Gleichzeitige
+     * Anfragen teilen sich einen einzigen Aufruf des Lagers.
+     *
+     * @param enabled      Gemeinsamen Stand ein- oder ausschalten
+     * @param refreshAfter Ab diesem Alter wird der Stand noch ausgeliefert, aber im Hintergrund neu geladen
+     * @param maxStaleness Ältere Stände werden nicht mehr ausgeliefert; der Aufrufer wartet auf das Neuladen
+     */
+    public record Snapshot(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("2s") Duration refreshAfter,
+            @DefaultValue("30s") Duration maxStaleness
+    ) {
+    }
+
+    /**
+     * Schutz der Shop-Threads vor einem langsamen oder nicht erreichbaren Lager.
+     *
+     * @param readTimeout      Maximale Dauer eines lesenden Aufrufs, beim Inventar inklusive Hedge
+     * @param writeTimeout     Maximale Dauer eines schreibenden Aufrufs
+     * @param hedgeDelay       Antwortet das Lager beim Laden des Inventars nicht innerhalb dieser Zeit, wird
+     *                         parallel ein zweiter Aufruf gestartet und die erste Antwort verwendet; 0 schaltet das ab
+     * @param failureThreshold Nach so vielen aufeinanderfolgenden Fehlschlägen öffnet der Circuit Breaker
+     * @param openDuration     So lange bleibt der Circuit Breaker offen, bevor ein Probeaufruf erfolgt
+     */
+    public record Resilience(
+            @DefaultValue("2s") Duration readTimeout,
+            @DefaultValue("5s") Duration writeTimeout,
+            @DefaultValue("150ms") Duration hedgeDelay,
+            @DefaultValue("5") int failureThreshold,
+            @DefaultValue("10s") Duration openDuration
+    ) {
+    }
+}
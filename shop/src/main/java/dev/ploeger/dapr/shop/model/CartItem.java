@@ -0,0 +1,15 @@
+package dev.ploeger.dapr.shop.model;
+
+/**
+ * Eine Position im Warenkorb.
+ *
+ * @param name     Name der Süßigkeit
+ * @param price    Preis je Stück zum Zeitpunkt des Hinzufügens
+ * @param quantity Menge
+ */
+public record CartItem(String name, double price, int quantity) {
+
+    public CartItem withQuantity(int quantity) {
+        return new CartItem(name, price, quantity);
+    }
+}
@@ -0,0 +1,13 @@
+package dev.ploeger.dapr.shop.model;
+
+import java.util.List;
+
+/**
+ * Vom Lager nach jedem Schreibzugriff veröffentlichte Inventaränderung.
+ *
+ * @param sweets       Neuer Stand aller geänderten Süßigkeiten
+ * @param createdNames Namen der darunter neu angelegten Süßigkeiten
+ * @param changedAt    Zeitpunkt der Änderung in Millisekunden seit der Epoche
+ */
+public record InventoryChangedEvent(List<Sweet> sweets, List<String> createdNames, long changedAt) {
+}
@@ -0,0 +1,14 @@
+package dev.ploeger.dapr.shop.model;
+
+import java.util.List;
+
+/**
+ * Eine Seite des sortierten Inventars, wie sie das Lager unter {@code /inventory/page} liefert.
+ *
+ * @param items      Die Süßigkeiten dieser Seite
+ * @param nextCursor Cursor für die nächste Seite, {@code null} auf der letzten Seite
+ * @param nextOffset Offset der nächsten Seite, {@code null} auf der letzten Seite
+ * @param total      Anzahl aller Süßigkeiten im Inventar
+ */
+public record InventoryPage(List<Sweet> items, String nextCursor, Integer nextOffset, int total) {
+}
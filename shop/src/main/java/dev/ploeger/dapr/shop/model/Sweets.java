@@ -1,6 +0,0 @@
-package dev.ploeger.dapr.shop.model;
-
-import java.util.ArrayList;
-
-public class Sweets extends ArrayList<Sweet> {
-}
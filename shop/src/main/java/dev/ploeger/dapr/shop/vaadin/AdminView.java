@@ -1,5 +1,8 @@
 package dev.ploeger.dapr.shop.vaadin;
 
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.component.html.H1;
@@ -9,27 +12,30 @@ import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.NumberField;
 import com.vaadin.flow.component.textfield.TextField;
-import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.shared.Registration;
+import dev.ploeger.dapr.shop.adapter.InventoryChangeBroadcaster;
 import dev.ploeger.dapr.shop.adapter.WarehouseAdapter;
 import dev.ploeger.dapr.shop.model.Sweet;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.ArrayList;
-import java.util.List;
-
 @Route("admin")
 public class AdminView extends VerticalLayout {
 
     private final WarehouseAdapter warehouseAdapter;
+    private final InventoryChangeBroadcaster inventoryChanges;
     private final Grid<Sweet> inventoryGrid;
-    private final List<Sweet> inventoryItems = new ArrayList<>();
+    private final InventoryDataProvider inventoryProvider;
+    private final TextField searchField;
     private final TextField nameField;
     private final NumberField priceField;
     private final NumberField quantityField;
+    private Registration inventoryChangeRegistration;
 
-    public AdminView(@Autowired WarehouseAdapter warehouseAdapter) {
+    public AdminView(@Autowired WarehouseAdapter warehouseAdapter, @Autowired InventoryChangeBroadcaster inventoryChanges) {
         this.warehouseAdapter = warehouseAdapter;
+        this.inventoryChanges = inventoryChanges;
 
         H1 title = new H1("Warehouse Administration");
 
@@ -58,11 +64,18 @@ public class AdminView extends VerticalLayout {
 
         // Grid für die Anzeige des aktuellen Inventars
         H3 inventoryTitle = new H3("Aktuelles Inventar");
+        searchField = new TextField();
+        searchField.setPlaceholder("Suchen");
+        searchField.setClearButtonVisible(true);
+        searchField.setValueChangeMode(ValueChangeMode.LAZY);
+        searchField.addValueChangeListener(e -> loadInventory());
+
         inventoryGrid = new Grid<>();
-        inventoryGrid.setDataProvider(new ListDataProvider<>(inventoryItems));
-        inventoryGrid.addColumn(Sweet::name).setHeader("Name");
-        inventoryGrid.addColumn(Sweet::price).setHeader("Preis (€)");
-        inventoryGrid.addColumn(Sweet::quantity).setHeader("Verfügbar");
+        inventoryGrid.addColumn(Sweet::name).setHeader("Name").setSortProperty("name");
+        inventoryGrid.addColumn(Sweet::price).setHeader("Preis (€)").setSortProperty("price");
+        inventoryGrid.addColumn(Sweet::quantity).setHeader("Verfügbar").setSortProperty("quantity");
+        // Seitenweise aus dem Lager, inklusive ausverkaufter Süßigkeiten
+        inventoryProvider = InventoryDataProvider.bind(inventoryGrid, warehouseAdapter, searchField::getValue, false);
 
         Button refreshButton = new Button("Inventar aktualisieren", e -> loadInventory());
 
@@ -71,12 +84,27 @@ public class AdminView extends VerticalLayout {
         setPadding(true);
 
         VerticalLayout formSection = new VerticalLayout(addSweetTitle, formLayout);
-        VerticalLayout inventorySection = new VerticalLayout(inventoryTitle, inventoryGrid, refreshButton);
+        VerticalLayout inventorySection = new VerticalLayout(inventoryTitle, searchField, inventoryGrid, refreshButton);
 
         add(title, formSection, inventorySection);
+    }
 
-        // Initial Inventar laden
-        loadInventory();
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        // Änderungen anderer Admins und Bestellungen werden per Push übernommen
+        UI ui = attachEvent.getUI();
+        inventoryChangeRegistration = inventoryChanges.register(event -> ui.access(
+                () -> inventoryProvider.applyChange(event)));
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        if (inventoryChangeRegistration != null) {
+            inventoryChangeRegistration.remove();
+            inventoryChangeRegistration = null;
+        }
+        super.onDetach(detachEvent);
     }
 
     private void addSweet() {
@@ -110,14 +138,7 @@ public class AdminView extends VerticalLayout {
     }
 
     private void loadInventory() {
-        try {
-            inventoryItems.clear();
-            inventoryItems.addAll(warehouseAdapter.getInventory());
-            inventoryGrid.getDataProvider().refreshAll();
-            Notification.show("Inventar erfolgreich aktualisiert", 1500, Notification.Position.BOTTOM_START);
-        } catch (Exception ex) {
-            Notification.show("Fehler beim Laden des Inventars: " + ex.getMessage(),
-                    3000, Notification.Position.MIDDLE);
-        }
+        // Das Grid lädt die sichtbaren Seiten neu; Fehler meldet der Data Provider selbst
+        inventoryGrid.getDataProvider().refreshAll();
     }
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package dev.ploeger.dapr.shop.vaadin;
+
+import com.vaadin.flow.component.page.AppShellConfigurator;
+import com.vaadin.flow.component.page.Push;
+
+/**
+ * Aktiviert Server-Push, damit Ergebnisse aus Hintergrund-Threads (z.B. die Bestätigung einer
+ * asynchron veröffentlichten Bestellung) ohne weitere Benutzeraktion im Browser ankommen.
+ */
+@Push
+public class AppShell implements AppShellConfigurator {
+}
@@ -0,0 +1,74 @@
+package dev.ploeger.dapr.shop.vaadin;
+
+import com.vaadin.flow.server.VaadinRequest;
+import com.vaadin.flow.server.VaadinResponse;
+import com.vaadin.flow.server.VaadinSession;
+import jakarta.servlet.http.Cookie;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Ordnet einer Browser-Sitzung ihren Warenkorb zu.
+ * <p>
+ * Die Warenkorb-ID steht in einem Cookie und nicht nur in der Vaadin-Sitzung. Wird der Kunde auf
+ * einen anderen Pod verteilt, bekommt er dort eine neue Sitzung, aber denselben Warenkorb.
+ */
+final class CartSession {
+    private static final String COOKIE_NAME = "cart-id";
+    private static final String SESSION_ATTRIBUTE = CartSession.class.getName();
+
+    private CartSession() {
+    }
+
+    /**
+     * Liefert die Warenkorb-ID der aktuellen Sitzung und legt bei Bedarf eine neue an.
+     * Muss während eines Requests aufgerufen werden, z.B. im Konstruktor einer View.
+     *
+     * @param maxAge Lebensdauer des Cookies
+     */
+    static String cartId(Duration maxAge) {
+        VaadinSession session = VaadinSession.getCurrent();
+        String cartId = (String) session.getAttribute(SESSION_ATTRIBUTE);
+        if (cartId == null) {
+            cartId = fromCookie(VaadinRequest.getCurrent()).orElseGet(() -> newCartId(maxAge));
+            session.setAttribute(SESSION_ATTRIBUTE, cartId);
+        }
+        return cartId;
+    }
+
+    private static Optional<String> fromCookie(VaadinRequest request) {
+        if (request == null || request.getCookies() == null) {
+            return Optional.empty();
+        }
+        return Arrays.stream(request.getCookies())
+                .filter(cookie -> COOKIE_NAME.equals(cookie.getName()))
+                .map(Cookie::getValue)
+                // Die ID wird Teil des State-Keys, also nur gültige UUIDs übernehmen
+                .filter(CartSession::isUuid)
+                .findFirst();
+    }
+
+    private static String newCartId(Duration maxAge) {
+        String cartId = UUID.randomUUID().toString();
+        VaadinResponse response = VaadinResponse.getCurrent();
+        if (response != null) {
+            Cookie cookie = new Cookie(COOKIE_NAME, cartId);
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) maxAge.toSeconds());
+            response.addCookie(cookie);
+        }
+        return cartId;
+    }
+
+    private static boolean isUuid(String value) {
+        try {
+            return UUID.fromString(value).toString().equals(value);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
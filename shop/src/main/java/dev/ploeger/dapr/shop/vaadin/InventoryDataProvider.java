@@ -0,0 +1,100 @@
+package dev.ploeger.dapr.shop.vaadin;
+
+import com.vaadin.flow.component.grid.Grid;
+import com.vaadin.flow.component.grid.dataview.GridLazyDataView;
+import com.vaadin.flow.component.notification.Notification;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.SortDirection;
+import dev.ploeger.dapr.shop.adapter.WarehouseAdapter;
+import dev.ploeger.dapr.shop.model.InventoryChangedEvent;
+import dev.ploeger.dapr.shop.model.Sweet;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Lädt das Inventar für ein Grid seitenweise aus dem Lager.
+ * <p>
+ * Das Grid fragt nur den sichtbaren Ausschnitt an; Sortierung und Filter werden an das Lager
+ * weitergereicht. Die Sitzung hält so nie den ganzen Katalog, sondern nur die angezeigten Seiten
+ * und die Namen der bisher geladenen Süßigkeiten.
+ */
+final class InventoryDataProvider {
+    static final int PAGE_SIZE = 50;
+    private static final Set<String> VALUE_SORTS = Set.of("price", "quantity");
+
+    private final boolean inStockOnly;
+    private final Set<String> loadedNames = new HashSet<>();
+    private GridLazyDataView<Sweet> dataView;
+    private String sortProperty;
+
+    private InventoryDataProvider(boolean inStockOnly) {
+        this.inStockOnly = inStockOnly;
+    }
+
+    /**
+     * Verbindet das Grid mit dem Lager. Spalten werden über {@code setSortProperty("name")},
+     * {@code "price"} bzw. {@code "quantity"} sortierbar; nach einer Änderung des Filters muss
+     * {@code grid.getDataProvider().refreshAll()} aufgerufen werden.
+     *
+     * @param nameFilter  Liefert den aktuellen Suchtext
+     * @param inStockOnly Nur Süßigkeiten mit Bestand anzeigen
+     * @return Die Anbindung des Grids, z.B. für {@link #applyChange}
+     */
+    static InventoryDataProvider bind(Grid<Sweet> grid, WarehouseAdapter warehouseAdapter, Supplier<String> nameFilter,
+                                      boolean inStockOnly) {
+        grid.setPageSize(PAGE_SIZE);
+        InventoryDataProvider provider = new InventoryDataProvider(inStockOnly);
+        provider.dataView = grid.setItems(query -> provider.fetch(warehouseAdapter, query, nameFilter.get()));
+        // Zeilen werden über den Namen identifiziert, damit geänderte Süßigkeiten einzeln ersetzt werden können
+        provider.dataView.setIdentifierProvider(Sweet::name);
+        return provider;
+    }
+
+    /**
+     * Übernimmt eine Inventaränderung in das Grid. Geänderte Süßigkeiten werden nur neu gezeichnet, sofern
+     * sie gerade geladen sind; kann die Änderung Zeilen verschieben, werden die sichtbaren Seiten neu angefragt.
+     * Das ist der Fall bei neuen Süßigkeiten, bei einer Sortierung nach Preis oder Bestand und bei
+     * {@code inStockOnly}, wenn eine Süßigkeit ausverkauft ist oder noch nicht geladen war und damit gerade
+     * wieder Bestand haben kann. Muss im UI-Thread laufen.
+     */
+    void applyChange(InventoryChangedEvent event) {
+        boolean rowsMoved = !event.createdNames().isEmpty()
+                || (sortProperty != null && VALUE_SORTS.contains(sortProperty))
+                || (inStockOnly && event.sweets().stream()
+                        .anyMatch(sweet -> sweet.quantity() <= 0 || !loadedNames.contains(sweet.name())));
+        if (inStockOnly) {
+            // Ausverkaufte fallen aus dem Grid und gelten bei neuem Bestand wieder als nicht geladen
+            event.sweets().stream().filter(sweet -> sweet.quantity() <= 0).map(Sweet::name).forEach(loadedNames::remove);
+        }
+        if (rowsMoved) {
+            dataView.refreshAll();
+            return;
+        }
+        event.sweets().forEach(dataView::refreshItem);
+    }
+
+    private Stream<Sweet> fetch(WarehouseAdapter warehouseAdapter, Query<Sweet, Void> query, String nameFilter) {
+        sortProperty = query.getSortOrders().isEmpty() ? null : query.getSortOrders().getFirst().getSorted();
+        try {
+            List<Sweet> items = warehouseAdapter.getInventoryPage(query.getOffset(), query.getLimit(), sortOf(query), nameFilter, inStockOnly)
+                    .items();
+            items.forEach(sweet -> loadedNames.add(sweet.name()));
+            return items.stream();
+        } catch (Exception ex) {
+            Notification.show("Fehler beim Laden des Inventars: " + ex.getMessage(),
+                    3000, Notification.Position.MIDDLE);
+            return Stream.empty();
+        }
+    }
+
+    private static String sortOf(Query<Sweet, Void> query) {
+        return query.getSortOrders().stream()
+                .findFirst()
+                .map(order -> order.getSorted() + (order.getDirection() == SortDirection.DESCENDING ? ",desc" : ",asc"))
+                .orElse(null);
+    }
+}
@@ -1,5 +1,8 @@
 package dev.ploeger.dapr.shop.vaadin;
 
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.dialog.Dialog;
 import com.vaadin.flow.component.grid.Grid;
@@ -11,34 +14,47 @@ import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.EmailField;
 import com.vaadin.flow.component.textfield.IntegerField;
 import com.vaadin.flow.component.textfield.TextField;
-import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.shared.Registration;
+import dev.ploeger.dapr.shop.adapter.CartAdapter;
+import dev.ploeger.dapr.shop.adapter.InventoryChangeBroadcaster;
 import dev.ploeger.dapr.shop.adapter.OrderAdapter;
 import dev.ploeger.dapr.shop.adapter.WarehouseAdapter;
+import dev.ploeger.dapr.shop.config.CartProperties;
+import dev.ploeger.dapr.shop.model.CartItem;
 import dev.ploeger.dapr.shop.model.Order;
 import dev.ploeger.dapr.shop.model.Sweet;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 @Route("")
 public class ShoppingView extends VerticalLayout {
 
     private Grid<Sweet> shopGrid;
+    private InventoryDataProvider shopInventoryProvider;
     private Grid<CartItem> cartGrid;
     private final WarehouseAdapter warehouseAdapter;
     private final OrderAdapter orderAdapter;
-    private final List<Sweet> availableSweets = new ArrayList<>();
-    private final List<CartItem> cartItems = new ArrayList<>();
+    private final InventoryChangeBroadcaster inventoryChanges;
+    private Registration inventoryChangeRegistration;
+    private final CartAdapter cartAdapter;
+    // Der Warenkorb selbst liegt im State Store, die Sitzung kennt nur seine ID
+    private final String cartId;
+    private final TextField searchField = new TextField();
     private Button orderButton;
 
-    public ShoppingView(@Autowired WarehouseAdapter warehouseAdapter, @Autowired OrderAdapter orderAdapter) {
+    public ShoppingView(@Autowired WarehouseAdapter warehouseAdapter, @Autowired OrderAdapter orderAdapter,
+                        @Autowired InventoryChangeBroadcaster inventoryChanges, @Autowired CartAdapter cartAdapter,
+                        @Autowired CartProperties cartProperties) {
         this.warehouseAdapter = warehouseAdapter;
         this.orderAdapter = orderAdapter;
+        this.inventoryChanges = inventoryChanges;
+        this.cartAdapter = cartAdapter;
+        this.cartId = CartSession.cartId(cartProperties.ttl());
 
         // UI-Komponenten initialisieren
         H1 title = new H1("Süßigkeiten Shop");
@@ -53,16 +69,10 @@ public class ShoppingView extends VerticalLayout {
 
         // Button-Klick-Handler
         inventarButton.addClickListener(e -> {
-            try {
-                availableSweets.clear();
-                availableSweets.addAll(warehouseAdapter.getInventory());
-                shopGrid.setItems(availableSweets);
-                shopGrid.setVisible(true);
-                Notification.show("Inventar erfolgreich abgerufen!");
-            } catch (Exception ex) {
-                Notification.show("Fehler beim Abrufen des Inventars: " + ex.getMessage(),
-                        3000, Notification.Position.MIDDLE);
-            }
+            // Das Grid lädt nur die sichtbaren Seiten nach; hier wird nur neu angefragt
+            shopGrid.getDataProvider().refreshAll();
+            shopGrid.setVisible(true);
+            searchField.setVisible(true);
         });
 
         // Layout zusammenstellen
@@ -71,14 +81,38 @@ public class ShoppingView extends VerticalLayout {
         add(title, inventarButton, mainLayout);
     }
 
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        // Änderungen im Lager werden per Push übernommen, ohne dass der Kunde neu laden muss
+        UI ui = attachEvent.getUI();
+        inventoryChangeRegistration = inventoryChanges.register(event -> ui.access(
+                () -> shopInventoryProvider.applyChange(event)));
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        if (inventoryChangeRegistration != null) {
+            inventoryChangeRegistration.remove();
+            inventoryChangeRegistration = null;
+        }
+        super.onDetach(detachEvent);
+    }
+
     private VerticalLayout createShopLayout() {
         VerticalLayout layout = new VerticalLayout();
         H3 shopTitle = new H3("Verfügbare Artikel");
 
+        searchField.setPlaceholder("Suchen");
+        searchField.setClearButtonVisible(true);
+        searchField.setValueChangeMode(ValueChangeMode.LAZY);
+        searchField.addValueChangeListener(e -> shopGrid.getDataProvider().refreshAll());
+        searchField.setVisible(false);
+
         shopGrid = new Grid<>();
-        shopGrid.addColumn(Sweet::name).setHeader("Name");
-        shopGrid.addColumn(Sweet::price).setHeader("Preis (€)");
-        shopGrid.addColumn(Sweet::quantity).setHeader("Verfügbar");
+        shopGrid.addColumn(Sweet::name).setHeader("Name").setSortProperty("name");
+        shopGrid.addColumn(Sweet::price).setHeader("Preis (€)").setSortProperty("price");
+        shopGrid.addColumn(Sweet::quantity).setHeader("Verfügbar").setSortProperty("quantity");
 
         shopGrid.addComponentColumn(sweet -> {
             IntegerField quantityField = new IntegerField();
@@ -100,9 +134,11 @@ public class ShoppingView extends VerticalLayout {
             return new HorizontalLayout(quantityField, addButton);
         }).setHeader("Zum Warenkorb hinzufügen");
 
+        // Nur Süßigkeiten mit Bestand anzeigen, sortiert und gefiltert im Lager
+        shopInventoryProvider = InventoryDataProvider.bind(shopGrid, warehouseAdapter, searchField::getValue, true);
         shopGrid.setVisible(false);
 
-        layout.add(shopTitle, shopGrid);
+        layout.add(shopTitle, searchField, shopGrid);
         return layout;
     }
 
@@ -111,11 +147,10 @@ public class ShoppingView extends VerticalLayout {
         H3 cartTitle = new H3("Warenkorb");
 
         cartGrid = new Grid<>();
-        cartGrid.setDataProvider(new ListDataProvider<>(cartItems));
-        cartGrid.addColumn(CartItem::getName).setHeader("Name");
-        cartGrid.addColumn(CartItem::getPrice).setHeader("Preis (€)");
-        cartGrid.addColumn(CartItem::getQuantity).setHeader("Menge");
-        cartGrid.addColumn(item -> item.getPrice() * item.getQuantity()).setHeader("Gesamt (€)");
+        cartGrid.addColumn(CartItem::name).setHeader("Name");
+        cartGrid.addColumn(CartItem::price).setHeader("Preis (€)");
+        cartGrid.addColumn(CartItem::quantity).setHeader("Menge");
+        cartGrid.addColumn(item -> item.price() * item.quantity()).setHeader("Gesamt (€)");
 
         cartGrid.addComponentColumn(item -> {
             Button removeButton = new Button("Entfernen");
@@ -124,19 +159,28 @@ public class ShoppingView extends VerticalLayout {
         });
 
         orderButton = new Button("Bestellung aufgeben");
-        orderButton.setEnabled(false);
         orderButton.addClickListener(e -> showOrderDialog());
+        // Ein bereits gefüllter Warenkorb, z.B. aus einer früheren Sitzung, wird gleich angezeigt
+        refreshCart();
 
         layout.add(cartTitle, cartGrid, orderButton);
         return layout;
     }
 
+    private void refreshCart() {
+        List<CartItem> cartItems = cartAdapter.getCart(cartId);
+        cartGrid.setItems(cartItems);
+        orderButton.setEnabled(!cartItems.isEmpty());
+    }
+
     private void addToCart(Sweet sweet, int quantity) {
         // Prüfe, ob das Item bereits im Warenkorb ist
+        List<CartItem> cartItems = new ArrayList<>(cartAdapter.getCart(cartId));
         boolean found = false;
-        for (CartItem item : cartItems) {
-            if (item.getName().equals(sweet.name())) {
-                item.setQuantity(item.getQuantity() + quantity);
+        for (int i = 0; i < cartItems.size(); i++) {
+            CartItem item = cartItems.get(i);
+            if (item.name().equals(sweet.name())) {
+                cartItems.set(i, item.withQuantity(item.quantity() + quantity));
                 found = true;
                 break;
             }
@@ -144,21 +188,21 @@ public class ShoppingView extends VerticalLayout {
 
         // Wenn nicht gefunden, neuen CartItem erstellen
         if (!found) {
-            CartItem newItem = new CartItem(sweet.name(), sweet.price(), quantity);
-            cartItems.add(newItem);
+            cartItems.add(new CartItem(sweet.name(), sweet.price(), quantity));
         }
 
-        // UI aktualisieren
-        cartGrid.getDataProvider().refreshAll();
-        orderButton.setEnabled(!cartItems.isEmpty());
+        // Speichern und UI aktualisieren
+        cartAdapter.saveCart(cartId, cartItems);
+        refreshCart();
         Notification.show(quantity + "x " + sweet.name() + " zum Warenkorb hinzugefügt");
     }
 
     private void removeFromCart(CartItem item) {
-        cartItems.remove(item);
-        cartGrid.getDataProvider().refreshAll();
-        orderButton.setEnabled(!cartItems.isEmpty());
-        Notification.show(item.getName() + " aus Warenkorb entfernt");
+        List<CartItem> cartItems = new ArrayList<>(cartAdapter.getCart(cartId));
+        cartItems.removeIf(cartItem -> cartItem.name().equals(item.name()));
+        cartAdapter.saveCart(cartId, cartItems);
+        refreshCart();
+        Notification.show(item.name() + " aus Warenkorb entfernt");
     }
 
     private void showOrderDialog() {
@@ -215,54 +259,24 @@ public class ShoppingView extends VerticalLayout {
 
     private void placeOrder(String name, String address, String email, String phone, String paymentMethod) {
         // Konvertiere CartItems zurück zu Sweet-Objekten für die Bestellung
-        List<Sweet> orderedSweets = cartItems.stream()
-                .map(item -> new Sweet(item.getName(), item.getPrice(), item.getQuantity()))
+        List<Sweet> orderedSweets = cartAdapter.getCart(cartId).stream()
+                .map(item -> new Sweet(item.name(), item.price(), item.quantity()))
                 .collect(Collectors.toList());
 
         Order order = new Order(name, address, email, phone, paymentMethod, orderedSweets);
 
-        try {
-            boolean success = orderAdapter.publishOrder(order);
-            if (success) {
+        // Die Bestellung wird gebündelt veröffentlicht; der UI-Thread wartet nicht auf den Broker
+        orderButton.setEnabled(false);
+        UI ui = UI.getCurrent();
+        orderAdapter.publishOrderAsync(order).whenComplete((success, ex) -> ui.access(() -> {
+            if (Boolean.TRUE.equals(success)) {
                 Notification.show("Bestellung erfolgreich aufgegeben!", 3000, Notification.Position.MIDDLE);
                 // Warenkorb leeren
-                cartItems.clear();
-                cartGrid.getDataProvider().refreshAll();
-                orderButton.setEnabled(false);
+                cartAdapter.clearCart(cartId);
             } else {
                 Notification.show("Fehler beim Aufgeben der Bestellung.", 3000, Notification.Position.MIDDLE);
             }
-        } catch (Exception ex) {
-            Notification.show("Fehler: " + ex.getMessage(), 3000, Notification.Position.MIDDLE);
-        }
-    }
-
-    // Innere Klasse für Warenkorb-Items
-    private static class CartItem {
-        private final String name;
-        private final double price;
-        private int quantity;
-
-        public CartItem(String name, double price, int quantity) {
-            this.name = name;
-            this.price = price;
-            this.quantity = quantity;
-        }
-
-        public String getName() {
-            return name;
-        }
-
-        public double getPrice() {
-            return price;
-        }
-
-        public int getQuantity() {
-            return quantity;
-        }
-
-        public void setQuantity(int quantity) {
-            this.quantity = quantity;
-        }
+            refreshCart();
+        }));
     }
-}
\ No newline at end of file
+}
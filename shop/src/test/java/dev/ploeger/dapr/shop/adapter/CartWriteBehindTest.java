@@ -0,0 +1,89 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import dev.ploeger.dapr.shop.model.CartItem;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CartWriteBehindTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Map<String, List<CartItem>>> writes = new CopyOnWriteArrayList<>();
+    private CartWriteBehind<List<CartItem>> writeBehind;
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.close();
+    }
+
+    @Test
+    void onlyTheLatestStateOfACartIsWritten() {
+        writeBehind = new CartWriteBehind<>(batch -> {
+            writes.add(batch);
+            return Mono.empty();
+        }, Duration.ofHours(1), Duration.ofSeconds(1), meterRegistry);
+
+        writeBehind.write("a", List.of(item(1)));
+        writeBehind.write("a", List.of(item(2)));
+        writeBehind.write("b", List.of());
+        writeBehind.flush();
+
+        assertThat(writes).containsExactly(Map.of("a", List.of(item(2)), "b", List.of()));
+        assertThat(writeBehind.pending("a")).isNull();
+        assertThat(meterRegistry.get("cart.writes").tag("result", "written").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void failedWritesAreRetriedWithoutOverwritingNewerChanges() {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        writeBehind = new CartWriteBehind<>(batch -> {
+            if (fail.getAndSet(false)) {
+                // Während des fehlschlagenden Schreibens wird "a" erneut geändert
+                writeBehind.write("a", List.of(item(3)));
+                return Mono.error(new IllegalStateException("State Store nicht erreichbar"));
+            }
+            writes.add(batch);
+            return Mono.empty();
+        }, Duration.ofHours(1), Duration.ofSeconds(1), meterRegistry);
+
+        writeBehind.write("a", List.of(item(1)));
+        writeBehind.write("b", List.of(item(2)));
+        writeBehind.flush();
+        assertThat(writeBehind.pending("a")).containsExactly(item(3));
+        assertThat(writeBehind.pending("b")).containsExactly(item(2));
+
+        writeBehind.flush();
+        assertThat(writes).containsExactly(Map.of("a", List.of(item(3)), "b", List.of(item(2))));
+        assertThat(meterRegistry.get("cart.writes").tag("result", "failed").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void pendingCartsCanBeUpdatedOrDiscardedBeforeTheyAreWritten() {
+        writeBehind = new CartWriteBehind<>(batch -> {
+            writes.add(batch);
+            return Mono.empty();
+        }, Duration.ofHours(1), Duration.ofSeconds(1), meterRegistry);
+
+        writeBehind.write("a", List.of(item(1)));
+        writeBehind.write("b", List.of(item(2)));
+        writeBehind.update("a", items -> List.of(item(5)));
+        writeBehind.update("b", items -> null);
+        writeBehind.update("c", items -> List.of(item(7)));
+        writeBehind.flush();
+
+        assertThat(writes).containsExactly(Map.of("a", List.of(item(5))));
+    }
+
+    private static CartItem item(int quantity) {
+        return new CartItem("Lakritz", 1.49, quantity);
+    }
+}
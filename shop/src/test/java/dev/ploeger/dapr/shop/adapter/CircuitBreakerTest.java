@@ -0,0 +1,73 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 2, Duration.ofSeconds(10), meterRegistry, now::get);
+
+    @Test
+    void opensAfterConsecutiveFailuresAndRejectsCalls() {
+        fail();
+        assertThat(breaker.call(() -> "ok")).isEqualTo("ok");
+        fail();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        fail();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThatThrownBy(() -> breaker.call(() -> "ok")).isInstanceOf(CircuitBreaker.OpenException.class);
+        assertThat(meterRegistry.get("test.circuit.state").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void trialCallAfterOpenDurationClosesOrReopens() {
+        fail();
+        fail();
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        fail();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> breaker.call(() -> "ok")).isInstanceOf(CircuitBreaker.OpenException.class);
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThat(breaker.call(() -> "ok")).isEqualTo("ok");
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(meterRegistry.get("test.circuit.transitions").tag("state", "half_open").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void checkedExceptionInTrialCallReopensInsteadOfBlockingForever() {
+        fail();
+        fail();
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThatThrownBy(() -> breaker.call(CircuitBreakerTest::sneakyIoFailure)).isInstanceOf(IOException.class);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThat(breaker.call(() -> "ok")).isEqualTo("ok");
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @SneakyThrows
+    private static String sneakyIoFailure() {
+        throw new IOException("Verbindung abgebrochen");
+    }
+
+    private void fail() {
+        assertThatThrownBy(() -> breaker.call(() -> {
+            throw new IllegalStateException("Lager nicht erreichbar");
+        })).isInstanceOf(IllegalStateException.class);
+    }
+}
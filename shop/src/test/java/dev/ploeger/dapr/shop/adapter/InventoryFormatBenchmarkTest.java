@@ -0,0 +1,118 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import dev.ploeger.dapr.shop.model.Sweet;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark: vergleicht das Laden des Inventars als JSON mit dem Protobuf-Format.
+ * <p>
+ * Statt des Lagers antwortet ein In-Process-HTTP-Server mit dem bereits kodierten Inventar; gemessen
+ * werden also nur Übertragung und Dekodieren im Shop. Die Größe wird bei jedem Build geprüft. Die
+ * p99-Latenz je Format hängt vom Rechner ab und wird deshalb nur gemessen und ausgegeben, und nur mit
+ * {@code mvn test -Pbenchmark}.
+ */
+@Slf4j
+class InventoryFormatBenchmarkTest {
+    private static final int SWEETS = 2_000;
+    private static final int WARMUP = 100;
+    private static final int REQUESTS = 500;
+    private static final TypeReference<List<Sweet>> SWEET_LIST = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final List<Sweet> inventory = IntStream.range(0, SWEETS)
+            .mapToObj(i -> new Sweet("Süßigkeit " + i, (49 + i % 300) / 100.0, i % 250))
+            .toList();
+    private HttpServer warehouse;
+    private byte[] json;
+    private byte[] protobuf;
+
+    @BeforeEach
+    void startWarehouseStandIn() throws IOException {
+        json = objectMapper.writeValueAsBytes(inventory);
+        protobuf = InventoryProtobuf.encode(inventory);
+        warehouse = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        warehouse.createContext("/inventory", exchange -> {
+            boolean binary = "application/x-protobuf".equals(exchange.getRequestHeaders().getFirst("Accept"));
+            byte[] body = binary ? protobuf : json;
+            exchange.getResponseHeaders().add("Content-Type", binary ? "application/x-protobuf" : "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        warehouse.start();
+    }
+
+    @AfterEach
+    void stopWarehouseStandIn() {
+        warehouse.stop(0);
+    }
+
+    @Test
+    void protobufRoundTripKeepsTheInventory() throws IOException {
+        assertThat(InventoryProtobuf.decode(protobuf)).isEqualTo(inventory);
+    }
+
+    @Test
+    void protobufIsLessThanHalfTheSizeOfJson() {
+        assertThat(protobuf.length * 2)
+                .as("%d Süßigkeiten: Protobuf %d Bytes, JSON %d Bytes", SWEETS, protobuf.length, json.length)
+                .isLessThan(json.length);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void reportsLatencyOfBothFormats() throws Exception {
+        long jsonP99 = p99("application/json", body -> objectMapper.readValue(body, SWEET_LIST));
+        long protobufP99 = p99("application/x-protobuf", InventoryProtobuf::decode);
+
+        log.info("{} Süßigkeiten, p99: Protobuf {} µs ({} Bytes), JSON {} µs ({} Bytes)",
+                SWEETS, protobufP99 / 1_000, protobuf.length, jsonP99 / 1_000, json.length);
+    }
+
+    private long p99(String accept, Decoder decoder) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + warehouse.getAddress().getPort() + "/inventory"))
+                .header("Accept", accept)
+                .GET()
+                .build();
+        long[] durations = new long[REQUESTS];
+        for (int i = -WARMUP; i < REQUESTS; i++) {
+            long start = System.nanoTime();
+            List<Sweet> sweets = decoder.decode(httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray()).body());
+            long duration = System.nanoTime() - start;
+            assertThat(sweets).hasSize(SWEETS);
+            if (i >= 0) {
+                durations[i] = duration;
+            }
+        }
+        Arrays.sort(durations);
+        return durations[(int) Math.ceil(REQUESTS * 0.99) - 1];
+    }
+
+    @FunctionalInterface
+    private interface Decoder {
+        List<Sweet> decode(byte[] body) throws IOException;
+    }
+}
@@ -0,0 +1,85 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import dev.ploeger.dapr.shop.config.OrderOutboxProperties.Fsync;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderJournalTest {
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void unacknowledgedEntriesAreReadAgainAfterReopening() throws Exception {
+        try (OrderJournal journal = new OrderJournal(directory, SEGMENT_SIZE, Fsync.ALWAYS)) {
+            journal.append(bytes("Anna"));
+            journal.append(bytes("Ben"));
+            journal.append(bytes("Clara"));
+            List<OrderJournal.Entry> entries = journal.poll(2, Duration.ZERO);
+            assertThat(entries).extracting(OrderJournal.Entry::sequence).containsExactly(1L, 2L);
+            journal.acknowledge(1);
+        }
+
+        try (OrderJournal journal = new OrderJournal(directory, SEGMENT_SIZE, Fsync.ALWAYS)) {
+            assertThat(journal.pending()).isEqualTo(2);
+            assertThat(journal.poll(10, Duration.ZERO)).extracting(entry -> text(entry.payload()))
+                    .containsExactly("Ben", "Clara");
+            assertThat(journal.append(bytes("David"))).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void acknowledgedSegmentsAreDeleted() throws Exception {
+        try (OrderJournal journal = new OrderJournal(directory, SEGMENT_SIZE, Fsync.NEVER)) {
+            // Ein Eintrag belegt 16 Bytes Header plus Nutzdaten, es passen also drei in ein Segment
+            for (int i = 0; i < 10; i++) {
+                journal.append(new byte[60]);
+            }
+            assertThat(journal.segmentCount()).isEqualTo(4);
+
+            List<OrderJournal.Entry> entries = journal.poll(10, Duration.ZERO);
+            assertThat(entries).hasSize(10);
+            journal.acknowledge(entries.get(6).sequence());
+
+            assertThat(journal.segmentCount()).isEqualTo(2);
+            assertThat(journal.pending()).isEqualTo(3);
+            assertThat(journal.poll(10, Duration.ZERO)).isEmpty();
+        }
+    }
+
+    @Test
+    void pollWaitsForNewEntries() throws Exception {
+        try (OrderJournal journal = new OrderJournal(directory, SEGMENT_SIZE, Fsync.NEVER)) {
+            Thread.ofVirtual().start(() -> {
+                sleep(50);
+                journal.append(bytes("Anna"));
+            });
+            assertThat(journal.poll(10, Duration.ofSeconds(5))).hasSize(1);
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] payload) {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
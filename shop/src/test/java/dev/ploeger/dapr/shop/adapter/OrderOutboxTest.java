@@ -0,0 +1,72 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.ploeger.dapr.shop.config.OrderOutboxProperties;
+import dev.ploeger.dapr.shop.model.Order;
+import dev.ploeger.dapr.shop.model.Sweet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void closeWaitsUntilAcceptedOrdersArePublished() throws Exception {
+        AtomicInteger published = new AtomicInteger();
+        // Ein langsamer Broker: jede Veröffentlichung dauert 100 ms
+        try (OrderOutbox outbox = new OrderOutbox(properties(Duration.ofSeconds(10)), new ObjectMapper(),
+                order -> CompletableFuture.supplyAsync(() -> {
+                    published.incrementAndGet();
+                    return true;
+                }, CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS)),
+                new SimpleMeterRegistry())) {
+            for (int i = 0; i < 5; i++) {
+                outbox.append(order("Kunde " + i));
+            }
+        }
+
+        assertThat(published).hasValue(5);
+        try (OrderJournal journal = new OrderJournal(directory, (int) DataSize.ofKilobytes(64).toBytes(),
+                OrderOutboxProperties.Fsync.ALWAYS)) {
+            assertThat(journal.pending()).isZero();
+        }
+    }
+
+    @Test
+    void closeGivesUpAfterDrainTimeoutAndKeepsOrdersInTheJournal() throws Exception {
+        try (OrderOutbox outbox = new OrderOutbox(properties(Duration.ofMillis(200)), new ObjectMapper(),
+                order -> CompletableFuture.completedFuture(false), new SimpleMeterRegistry())) {
+            outbox.append(order("Kunde"));
+        }
+
+        try (OrderJournal journal = new OrderJournal(directory, (int) DataSize.ofKilobytes(64).toBytes(),
+                OrderOutboxProperties.Fsync.ALWAYS)) {
+            assertThat(journal.pending()).isEqualTo(1);
+        }
+    }
+
+    private OrderOutboxProperties properties(Duration drainTimeout) {
+        // Ein Eintrag je Batch, damit jede Bestellung einzeln bestätigt wird
+        return new OrderOutboxProperties(true, directory.toString(), DataSize.ofKilobytes(64),
+                OrderOutboxProperties.Fsync.ALWAYS, Duration.ofMillis(100), 1, Duration.ofMillis(50),
+                Duration.ofMillis(100), drainTimeout);
+    }
+
+    private static Order order(String name) {
+        return new Order(name, "Musterstraße 1", "kunde@example.org", null, "Rechnung",
+                List.of(new Sweet("Lakritz", 2.49, 1)));
+    }
+}
@@ -0,0 +1,49 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.ploeger.dapr.shop.model.Order;
+import dev.ploeger.dapr.shop.model.Sweet;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderProtobufTest {
+
+    private final Order order = new Order("Erika Mustermann", "Musterstraße 1, 12345 Musterstadt",
+            "erika@example.org", "+49 123 456789", "PayPal",
+            List.of(new Sweet("Gummibärchen", 1.99, 3), new Sweet("Lakritz", 2.49, 1)));
+
+    @Test
+    void roundTripKeepsOrderAndIsSmallerThanJson() throws Exception {
+        byte[] bytes = OrderProtobuf.encode(order);
+
+        assertThat(OrderProtobuf.decode(bytes)).isEqualTo(order);
+        assertThat(bytes.length).isLessThan(new ObjectMapper().writeValueAsBytes(order).length * 3 / 4);
+    }
+
+    @Test
+    void pricesWithFractionsOfACentAreKeptExactly() throws Exception {
+        Order fractional = new Order("Max", null, null, null, null,
+                List.of(new Sweet("Trüffel", 1.999, 2), new Sweet("Bonbon", 0.004, 100)));
+
+        assertThat(OrderProtobuf.decode(OrderProtobuf.encode(fractional))).isEqualTo(fractional);
+    }
+
+    @Test
+    void missingFieldsStayNull() throws Exception {
+        Order partial = new Order("Max", null, null, null, null, List.of());
+
+        assertThat(OrderProtobuf.decode(OrderProtobuf.encode(partial))).isEqualTo(partial);
+    }
+
+    @Test
+    void rejectsNewerVersion() {
+        byte[] bytes = OrderProtobuf.encode(order);
+        bytes[1] = 2;
+
+        assertThatThrownBy(() -> OrderProtobuf.decode(bytes)).hasMessageContaining("Version");
+    }
+}
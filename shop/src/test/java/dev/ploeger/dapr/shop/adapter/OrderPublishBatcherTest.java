@@ -0,0 +1,76 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import dev.ploeger.dapr.shop.config.OrderPublishingProperties;
+import dev.ploeger.dapr.shop.model.Order;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderPublishBatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Integer> publishedBatchSizes = new CopyOnWriteArrayList<>();
+    private OrderPublishBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        batcher.close();
+    }
+
+    @Test
+    void concurrentOrdersArePublishedTogether() {
+        batcher = new OrderPublishBatcher(properties(Duration.ofMillis(20)), orders -> {
+            publishedBatchSizes.add(orders.size());
+            return Mono.delay(Duration.ofMillis(50)).thenReturn(Set.<Integer>of());
+        }, meterRegistry, false);
+
+        List<CompletableFuture<Boolean>> results = IntStream.range(0, 50)
+                .mapToObj(i -> batcher.submit(order("Kunde " + i)))
+                .toList();
+
+        assertThat(results).allSatisfy(result -> assertThat(result.join()).isTrue());
+        assertThat(publishedBatchSizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(50);
+        assertThat(publishedBatchSizes.size()).isLessThan(50);
+        assertThat(meterRegistry.get("orders.publish.orders").tag("result", "published").counter().count()).isEqualTo(50);
+    }
+
+    @Test
+    void failedEntriesOnlyFailTheirOwnOrders() {
+        batcher = new OrderPublishBatcher(properties(Duration.ofMillis(50)),
+                orders -> Mono.just(Set.of(1)), meterRegistry, false);
+
+        CompletableFuture<Boolean> first = batcher.submit(order("Anna"));
+        CompletableFuture<Boolean> second = batcher.submit(order("Ben"));
+
+        assertThat(first.join()).isTrue();
+        assertThat(second.join()).isFalse();
+        assertThat(meterRegistry.get("orders.publish.batches").tag("result", "partial").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failedBulkPublishCompletesAllOrdersWithFalse() {
+        batcher = new OrderPublishBatcher(properties(Duration.ofMillis(5)),
+                orders -> Mono.error(new IllegalStateException("Sidecar nicht erreichbar")), meterRegistry, false);
+
+        assertThat(batcher.submit(order("Anna")).join()).isFalse();
+        assertThat(meterRegistry.get("orders.publish.batches").tag("result", "failed").counter().count()).isEqualTo(1);
+    }
+
+    private static OrderPublishingProperties properties(Duration window) {
+        return new OrderPublishingProperties(true, window, 100, 1000, Duration.ofSeconds(5));
+    }
+
+    private static Order order(String name) {
+        return new Order(name, "Musterstraße 1", "kunde@example.org", "0123", "Kreditkarte", List.of());
+    }
+}
@@ -0,0 +1,163 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import dev.ploeger.dapr.shop.config.OrderOutboxProperties;
+import dev.ploeger.dapr.shop.config.WarehouseClientProperties;
+import dev.ploeger.dapr.shop.model.Order;
+import dev.ploeger.dapr.shop.model.Sweet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Prüft per JFR-Event {@code jdk.VirtualThreadPinned}, dass die Hot Paths des Shops auf den virtuellen
+ * Request-Threads keine Carrier-Threads blockieren: das Schreiben in die Order-Outbox inklusive fsync und
+ * die Aufrufe des Lagers über Circuit Breaker und Hedging.
+ * <p>
+ * Unter JDK 21 meldet {@code jdk.VirtualThreadPinned} nur das Parken innerhalb eines Monitors. Warten auf
+ * einen belegten Monitor oder in {@code Object.wait()} blockiert den Carrier ebenso, deshalb zählen auch
+ * {@code jdk.JavaMonitorEnter} und {@code jdk.JavaMonitorWait} auf virtuellen Threads, sofern der Monitor
+ * zu einer eigenen Klasse gehört.
+ */
+class VirtualThreadPinningTest {
+    private static final String OWN_PACKAGE = "dev.ploeger.dapr";
+    private static final List<String> PINNING_EVENTS =
+            List.of("jdk.VirtualThreadPinned", "jdk.JavaMonitorEnter", "jdk.JavaMonitorWait");
+    private static final List<Sweet> INVENTORY = List.of(new Sweet("Lakritz", 2.49, 50));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void hotPathsDoNotPinCarrierThreads() throws Exception {
+        List<String> pinnedStacks = new CopyOnWriteArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            for (String pinningEvent : PINNING_EVENTS) {
+                recording.enable(pinningEvent).withThreshold(Duration.ZERO).withStackTrace();
+                recording.onEvent(pinningEvent, event -> {
+                    if (pinsOwnCode(event)) {
+                        pinnedStacks.add(event.getEventType().getName() + ": " + event.getStackTrace());
+                    }
+                });
+            }
+            recording.startAsync();
+
+            appendOrdersOnVirtualThreads();
+            callWarehouseOnVirtualThreads();
+
+            recording.stop();
+        }
+        assertThat(pinnedStacks).isEmpty();
+    }
+
+    private void appendOrdersOnVirtualThreads() throws Exception {
+        // Kleine Segmente, damit auch der Wechsel auf ein neues Segment unter Last läuft
+        OrderOutboxProperties properties = new OrderOutboxProperties(true, directory.toString(),
+                DataSize.ofKilobytes(4), OrderOutboxProperties.Fsync.ALWAYS, Duration.ofMillis(100),
+                100, Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofSeconds(5));
+        Order order = new Order("Erika Mustermann", "Musterstraße 1", "erika@example.org", null, "Rechnung", INVENTORY);
+        try (OrderOutbox outbox = new OrderOutbox(properties, new ObjectMapper(),
+                published -> CompletableFuture.completedFuture(true), new SimpleMeterRegistry());
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            IntStream.range(0, 500).forEach(i -> executor.submit(() -> {
+                outbox.append(order);
+                return null;
+            }));
+        }
+    }
+
+    private void callWarehouseOnVirtualThreads() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer sidecar = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        sidecar.setExecutor(Executors.newCachedThreadPool());
+        sidecar.createContext("/v1.0/invoke/warehouse/method/inventory", exchange -> {
+            try (exchange) {
+                int request = requests.incrementAndGet();
+                // Jede zehnte Antwort ist langsam und löst einen Hedge aus, jede siebte schlägt fehl
+                if (request % 10 == 0) {
+                    sleep(Duration.ofMillis(30));
+                }
+                if (request % 7 == 0) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                byte[] body = InventoryProtobuf.encode(INVENTORY);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            }
+        });
+        sidecar.start();
+
+        WarehouseAdapter adapter = new WarehouseAdapter();
+        ReflectionTestUtils.setField(adapter, "properties", new WarehouseClientProperties("warehouse",
+                "http://localhost:" + sidecar.getAddress().getPort(), 50, Duration.ofSeconds(10),
+                new WarehouseClientProperties.Snapshot(false, Duration.ofSeconds(2), Duration.ofSeconds(30)),
+                new WarehouseClientProperties.Resilience(Duration.ofSeconds(1), Duration.ofSeconds(5),
+                        Duration.ofMillis(10), 3, Duration.ofMillis(20)),
+                WarehouseClientProperties.InventoryFormat.PROTOBUF));
+        ReflectionTestUtils.setField(adapter, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(adapter, "virtualThreads", true);
+        adapter.init();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            IntStream.range(0, 200).forEach(i -> executor.submit(() -> {
+                try {
+                    adapter.getInventory();
+                } catch (RuntimeException e) {
+                    // Fehlschläge und ein offener Breaker sind hier gewollt, geprüft wird nur das Pinning
+                }
+            }));
+        } finally {
+            adapter.shutdownCalls();
+            sidecar.stop(0);
+        }
+    }
+
+    private static boolean pinsOwnCode(RecordedEvent event) {
+        if (event.getEventType().getName().equals("jdk.VirtualThreadPinned")) {
+            return touchesOwnCode(event);
+        }
+        // Monitore von Bibliotheken (z.B. beim Registrieren von Metriken) sind nicht Gegenstand des Tests
+        return event.getThread("eventThread") != null && event.getThread("eventThread").isVirtual()
+                && event.getClass("monitorClass") != null
+                && event.getClass("monitorClass").getName().startsWith(OWN_PACKAGE);
+    }
+
+    private static boolean touchesOwnCode(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+        return event.getStackTrace().getFrames().stream()
+                .map(RecordedFrame::getMethod)
+                .anyMatch(method -> method.getType().getName().startsWith(OWN_PACKAGE));
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
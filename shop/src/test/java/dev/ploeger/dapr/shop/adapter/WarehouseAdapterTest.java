@@ -0,0 +1,135 @@
+package dev.ploeger.dapr.shop.adapter;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.ploeger.dapr.shop.config.WarehouseClientProperties;
+import dev.ploeger.dapr.shop.model.Sweet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Prüft Zeitlimit, Circuit Breaker und Rückfall auf den letzten Inventarstand gegen einen In-Process-HTTP-Server,
+ * der statt des Sidecars antwortet.
+ */
+class WarehouseAdapterTest {
+    private static final Duration READ_TIMEOUT = Duration.ofMillis(200);
+    private static final Duration OPEN_DURATION = Duration.ofMillis(300);
+    private static final List<Sweet> INVENTORY = List.of(new Sweet("Lakritz", 2.49, 50));
+
+    private enum Behaviour {
+        OK, SLOW, ERROR
+    }
+
+    private final AtomicReference<Behaviour> behaviour = new AtomicReference<>(Behaviour.OK);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WarehouseAdapter adapter = new WarehouseAdapter();
+    private HttpServer sidecar;
+
+    @BeforeEach
+    void startSidecarStandIn() throws IOException {
+        sidecar = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        sidecar.setExecutor(Executors.newCachedThreadPool());
+        sidecar.createContext("/v1.0/invoke/warehouse/method/inventory", exchange -> {
+            try (exchange) {
+                switch (behaviour.get()) {
+                    case SLOW -> {
+                        sleep(READ_TIMEOUT.multipliedBy(5));
+                        exchange.sendResponseHeaders(503, -1);
+                    }
+                    case ERROR -> exchange.sendResponseHeaders(500, -1);
+                    case OK -> {
+                        byte[] body = InventoryProtobuf.encode(INVENTORY);
+                        exchange.sendResponseHeaders(200, body.length);
+                        try (OutputStream output = exchange.getResponseBody()) {
+                            output.write(body);
+                        }
+                    }
+                }
+            }
+        });
+        sidecar.start();
+
+        WarehouseClientProperties properties = new WarehouseClientProperties("warehouse",
+                "http://localhost:" + sidecar.getAddress().getPort(), 50, Duration.ofSeconds(10),
+                new WarehouseClientProperties.Snapshot(false, Duration.ofSeconds(2), Duration.ofSeconds(30)),
+                new WarehouseClientProperties.Resilience(READ_TIMEOUT, Duration.ofSeconds(5), Duration.ZERO, 2, OPEN_DURATION),
+                WarehouseClientProperties.InventoryFormat.PROTOBUF);
+        ReflectionTestUtils.setField(adapter, "properties", properties);
+        ReflectionTestUtils.setField(adapter, "meterRegistry", meterRegistry);
+        adapter.init();
+    }
+
+    @AfterEach
+    void stopSidecarStandIn() {
+        adapter.shutdownCalls();
+        sidecar.stop(0);
+    }
+
+    @Test
+    void timeoutsAndIoFailuresOpenTheBreakerAndATrialCallClosesIt() throws InterruptedException {
+        behaviour.set(Behaviour.SLOW);
+        assertThatThrownBy(adapter::getInventory).isInstanceOf(WarehouseCallException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+        behaviour.set(Behaviour.ERROR);
+        assertThatThrownBy(adapter::getInventory).isInstanceOf(WarehouseCallException.class)
+                .hasCauseInstanceOf(IOException.class);
+
+        assertThat(calls("timeout")).isEqualTo(1);
+        assertThat(calls("failure")).isEqualTo(1);
+        assertThat(breakerState()).isEqualTo(CircuitBreaker.State.OPEN.ordinal());
+        assertThatThrownBy(adapter::getInventory).isInstanceOf(CircuitBreaker.OpenException.class);
+
+        // Ein Probeaufruf, der ins Zeitlimit läuft, öffnet den Breaker wieder, statt ihn halb offen zu blockieren
+        Thread.sleep(OPEN_DURATION.plusMillis(50));
+        behaviour.set(Behaviour.SLOW);
+        assertThatThrownBy(adapter::getInventory).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(breakerState()).isEqualTo(CircuitBreaker.State.OPEN.ordinal());
+
+        Thread.sleep(OPEN_DURATION.plusMillis(50));
+        behaviour.set(Behaviour.OK);
+        assertThat(adapter.getInventory()).isEqualTo(INVENTORY);
+        assertThat(breakerState()).isEqualTo(CircuitBreaker.State.CLOSED.ordinal());
+        assertThat(calls("success")).isEqualTo(1);
+    }
+
+    @Test
+    void fallsBackToLastKnownInventoryOnIoFailure() {
+        assertThat(adapter.getInventory()).isEqualTo(INVENTORY);
+
+        behaviour.set(Behaviour.ERROR);
+        assertThat(adapter.getInventory()).isEqualTo(INVENTORY);
+        assertThat(meterRegistry.get("warehouse.inventory.fallbacks").counter().count()).isEqualTo(1);
+        assertThat(calls("failure")).isEqualTo(1);
+    }
+
+    private long calls(String result) {
+        var timer = meterRegistry.find("warehouse.calls").tag("operation", "inventory").tag("result", result).timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    private double breakerState() {
+        return meterRegistry.get("warehouse.circuit.state").gauge().value();
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
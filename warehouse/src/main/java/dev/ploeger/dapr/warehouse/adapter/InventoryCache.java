@@ -0,0 +1,75 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.ploeger.dapr.warehouse.config.InventoryProperties;
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Read-Through-Cache vor dem Laden des Inventars aus dem State Store.
+ * <p>
+ * Gleichzeitige Cache-Misses teilen sich einen einzigen Ladevorgang. Fehlgeschlagene Ladevorgänge
+ * werden nicht gecacht. Treffer, Fehltreffer und Ladezeiten werden als {@code cache.*}-Metriken
+ * mit dem Tag {@code cache=inventory} über Actuator bereitgestellt.
+ */
+@Component
+public class InventoryCache {
+    private static final String CACHE_NAME = "inventory";
+    private static final String INVENTORY_ENTRY = "all";
+
+    private final boolean enabled;
+    private final AsyncCache<String, List<Sweet>> cache;
+
+    public InventoryCache(InventoryProperties inventoryProperties, MeterRegistry meterRegistry) {
+        InventoryProperties.Cache config = inventoryProperties.cache();
+        this.enabled = config.enabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.maxEntries())
+                .expireAfterWrite(config.ttl())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME, Tags.empty());
+    }
+
+    /**
+     * Liefert das gecachte Inventar oder lädt es über den übergebenen Loader.
+     *
+     * @param loader Lädt das Inventar aus dem State Store; Fehler werden an den Aufrufer weitergereicht
+     * @return Ein Mono mit dem (unveränderlichen) Inventar
+     */
+    public Mono<List<Sweet>> getInventory(Supplier<Mono<List<Sweet>>> loader) {
+        return getInventory(INVENTORY_ENTRY, loader);
+    }
+
+    /**
+     * Liefert eine gecachte Sicht auf das Inventar (z.B. eine Sortierung) oder lädt sie über den
+     * übergebenen Loader. Alle Sichten werden gemeinsam invalidiert.
+     *
+     * @param view   Name der Sicht; jede Sicht ist ein eigener Cache-Eintrag
+     * @param loader Lädt die Sicht aus dem State Store; Fehler werden an den Aufrufer weitergereicht
+     * @return Ein Mono mit der (unveränderlichen) Sicht
+     */
+    public Mono<List<Sweet>> getInventory(String view, Supplier<Mono<List<Sweet>>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        // Abbrüche einzelner Aufrufer dürfen den geteilten Ladevorgang nicht abbrechen
+        return Mono.fromFuture(() -> cache.get(view,
+                (key, executor) -> loader.get().<List<Sweet>>map(List::copyOf).toFuture()), true);
+    }
+
+    /**
+     * Verwirft den gecachten Inventarstand, z.B. nach einem lokalen Schreibzugriff.
+     */
+    public void invalidate() {
+        cache.synchronous().invalidateAll();
+    }
+}
@@ -0,0 +1,47 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.config.InventoryProperties;
+import dev.ploeger.dapr.warehouse.model.Inventory;
+import dev.ploeger.dapr.warehouse.model.InventoryChangedEvent;
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import io.dapr.client.DaprClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Veröffentlicht Inventaränderungen als {@link InventoryChangedEvent} über Dapr PubSub, damit offene
+ * Shop-Ansichten nur die geänderten Zeilen aktualisieren können, statt das Inventar neu zu laden.
+ * <p>
+ * Veröffentlicht wird ohne auf den Broker zu warten; ein verlorenes Event führt nur dazu, dass eine
+ * Ansicht bis zum nächsten Neuladen einen älteren Stand zeigt.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class InventoryEventPublisher {
+
+    private final DaprClient daprClient;
+    private final InventoryProperties inventoryProperties;
+
+    /**
+     * Veröffentlicht die seit dem Laden geänderten Süßigkeiten des übergebenen Inventarstands.
+     */
+    void publishChanges(Inventory inventory) {
+        InventoryProperties.Events config = inventoryProperties.events();
+        if (!config.enabled() || inventory.changedNames().isEmpty()) {
+            return;
+        }
+        List<Sweet> changed = inventory.changedNames().stream().map(inventory::get).toList();
+        InventoryChangedEvent event = new InventoryChangedEvent(changed,
+                List.copyOf(inventory.createdNames()), System.currentTimeMillis());
+        daprClient.publishEvent(config.pubsubName(), config.topic(), event)
+                .subscribe(
+                        ignored -> {
+                        },
+                        e -> log.warn("Inventaränderung an {} Süßigkeiten konnte nicht veröffentlicht werden: {}",
+                                changed.size(), e.getMessage()));
+    }
+}
@@ -0,0 +1,39 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.config.InventoryProperties;
+import dev.ploeger.dapr.warehouse.config.InventoryProperties.StorageMode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stößt beim Start die einmalige Migration des alten "inventory"-Blobs in das Format
+ * {@link StorageMode#PER_SWEET} an. Schlägt die Migration fehl (z.B. weil der Sidecar
+ * noch nicht erreichbar ist), startet der Service trotzdem; die Migration wird beim
+ * nächsten Start erneut versucht.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class InventoryMigration {
+
+    private final KvStoreAdapter kvStoreAdapter;
+    private final InventoryProperties inventoryProperties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (inventoryProperties.storageMode() != StorageMode.PER_SWEET) {
+            return;
+        }
+        kvStoreAdapter.migrateBlobToPerSweet()
+                .subscribe(
+                        count -> {
+                            if (count > 0) {
+                                log.info("Migration des Inventars abgeschlossen ({} Süßigkeiten).", count);
+                            }
+                        },
+                        e -> log.error("Migration des Inventars in das Format PER_SWEET fehlgeschlagen", e));
+    }
+}
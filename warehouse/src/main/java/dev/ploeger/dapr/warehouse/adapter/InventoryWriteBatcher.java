@@ -0,0 +1,142 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.config.InventoryProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Sammelt gleichzeitig eintreffende Inventaränderungen und schreibt sie gemeinsam (Group Commit).
+ * <p>
+ * Ein einzelner Worker-Thread nimmt die erste wartende Änderung aus der Queue und sammelt weitere,
+ * bis das Zeitfenster abgelaufen oder die maximale Batchgröße erreicht ist. Der gesamte Batch wird
+ * dann auf einen Inventarstand angewendet und mit einem einzigen Schreibzugriff gespeichert. Da
+ * immer nur ein Batch gleichzeitig geschrieben wird, wachsen die Batches unter Last von selbst,
+ * während sich die Batches gegenseitig keine ETag-Konflikte erzeugen.
+ */
+@Slf4j
+class InventoryWriteBatcher implements AutoCloseable {
+    private static final Duration IDLE_POLL = Duration.ofMillis(200);
+
+    private final Function<List<SweetMutation>, Mono<List<Boolean>>> committer;
+    private final int maxBatchSize;
+    private final Duration window;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final DistributionSummary batchSizes;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * @param committer      Wendet einen Batch auf einen Inventarstand an und liefert das Ergebnis je Änderung
+     * @param virtualThreads Worker als virtuellen statt als Plattform-Thread starten
+     */
+    InventoryWriteBatcher(InventoryProperties.Batching config,
+                          Function<List<SweetMutation>, Mono<List<Boolean>>> committer,
+                          MeterRegistry meterRegistry,
+                          boolean virtualThreads) {
+        this.committer = committer;
+        this.maxBatchSize = config.maxBatchSize();
+        this.window = config.window();
+        this.batchSizes = DistributionSummary.builder("inventory.write.batch.size")
+                .description("Anzahl der Inventaränderungen je gemeinsamem Schreibzugriff")
+                .register(meterRegistry);
+        Thread.Builder threadBuilder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
+        this.worker = threadBuilder
+                .name("inventory-write-batcher")
+                .start(this::run);
+    }
+
+    /**
+     * Reiht eine Änderung ein. Das Mono wird abgeschlossen, sobald der Batch mit dieser Änderung
+     * geschrieben wurde.
+     *
+     * @return Ein Mono, das true enthält, wenn die Änderung angewendet und gespeichert wurde.
+     */
+    Mono<Boolean> submit(SweetMutation mutation) {
+        return Mono.defer(() -> {
+            if (!running) {
+                log.warn("Write-Batcher ist beendet, Änderung an '{}' wird verworfen.", mutation.sweetName());
+                return Mono.just(false);
+            }
+            PendingWrite pending = new PendingWrite(mutation, new CompletableFuture<>());
+            queue.add(pending);
+            return Mono.fromFuture(pending.result(), true);
+        });
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join(Duration.ofSeconds(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Alles, was nach dem Beenden noch in der Queue liegt, wird abgelehnt
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().complete(false);
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(IDLE_POLL.toMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    commit(collectBatch(first));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<PendingWrite> collectBatch(PendingWrite first) throws InterruptedException {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + window.toNanos();
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                // Fenster abgelaufen: nur noch mitnehmen, was bereits wartet
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                break;
+            }
+            PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        batchSizes.record(batch.size());
+        List<SweetMutation> mutations = batch.stream().map(PendingWrite::mutation).toList();
+        try {
+            List<Boolean> results = committer.apply(mutations).block();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results != null && results.get(i));
+            }
+        } catch (Exception e) {
+            log.error("Fehler beim gemeinsamen Schreiben von {} Inventaränderungen", batch.size(), e);
+            batch.forEach(pending -> pending.result().complete(false));
+        }
+    }
+
+    private record PendingWrite(SweetMutation mutation, CompletableFuture<Boolean> result) {
+    }
+}
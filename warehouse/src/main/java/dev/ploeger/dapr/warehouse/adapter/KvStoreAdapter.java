@@ -1,36 +1,92 @@
 package dev.ploeger.dapr.warehouse.adapter;
 
+import dev.ploeger.dapr.warehouse.config.InventoryProperties;
+import dev.ploeger.dapr.warehouse.config.InventoryProperties.StorageMode;
+import dev.ploeger.dapr.warehouse.model.Inventory;
+import dev.ploeger.dapr.warehouse.model.InventorySort;
 import dev.ploeger.dapr.warehouse.model.Sweet;
 import io.dapr.client.DaprClient;
-import io.dapr.client.DaprClientBuilder;
 import io.dapr.client.domain.State;
+import io.dapr.client.domain.StateOptions;
+import io.dapr.client.domain.TransactionalStateOperation;
+import io.dapr.client.domain.TransactionalStateOperation.OperationType;
+import io.dapr.exceptions.DaprException;
 import io.dapr.utils.TypeRef;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PreDestroy; // Keep PreDestroy for cleanup
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class KvStoreAdapter {
-    private static final String STATE_STORE_NAME = "kvstore";
+    static final String STATE_STORE_NAME = "kvstore";
     private static final String INVENTORY_KEY = "inventory";
-    private static final TypeRef<List<Sweet>> SWEET_LIST_TYPE = new TypeRef<>() {};
+    private static final String INVENTORY_INDEX_KEY = "inventory-index";
+    private static final String SWEET_KEY_PREFIX = "sweet||";
+    private static final TypeRef<Inventory> INVENTORY_TYPE = TypeRef.get(Inventory.class);
+    private static final TypeRef<List<String>> NAME_LIST_TYPE = new TypeRef<>() {};
+    private static final TypeRef<Sweet> SWEET_TYPE = TypeRef.get(Sweet.class);
+    /**
+     * First-Write: Ein Schreibzugriff mit ETag schlägt fehl, wenn der Key inzwischen geändert wurde;
+     * ohne ETag ist er nur erlaubt, wenn der Key noch nicht existiert.
+     */
+    private static final StateOptions FIRST_WRITE = new StateOptions(
+            StateOptions.Consistency.STRONG, StateOptions.Concurrency.FIRST_WRITE);
 
     private final DaprClient daprClient;
+    private final InventoryProperties inventoryProperties;
+    private final InventoryCache inventoryCache;
+    private final InventoryEventPublisher eventPublisher;
+    private final InventoryWriteBatcher writeBatcher;
+    private final Counter conflictCounter;
+    private final Counter retryCounter;
+    private final Counter exhaustedCounter;
 
-
+    public KvStoreAdapter(DaprClient daprClient, InventoryProperties inventoryProperties,
+                          InventoryCache inventoryCache, InventoryEventPublisher eventPublisher,
+                          MeterRegistry meterRegistry,
+                          @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.daprClient = daprClient;
+        this.inventoryProperties = inventoryProperties;
+        this.inventoryCache = inventoryCache;
+        this.eventPublisher = eventPublisher;
+        this.conflictCounter = Counter.builder("inventory.write.conflicts")
+                .description("ETag-Konflikte beim Schreiben des Inventars")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("inventory.write.retries")
+                .description("Wiederholte Schreibversuche nach ETag-Konflikten")
+                .register(meterRegistry);
+        this.exhaustedCounter = Counter.builder("inventory.write.retries.exhausted")
+                .description("Schreibzugriffe, die auch nach allen Wiederholungen einen Konflikt hatten")
+                .register(meterRegistry);
+        this.writeBatcher = inventoryProperties.batching().enabled()
+                ? new InventoryWriteBatcher(inventoryProperties.batching(), this::applyMutations, meterRegistry, virtualThreads)
+                : null;
+    }
 
     @PreDestroy
     public void cleanup() {
+        if (this.writeBatcher != null) {
+            log.info("Stopping inventory write batcher...");
+            this.writeBatcher.close();
+        }
         if (this.daprClient != null) {
             try {
                 log.info("Closing Dapr client...");
@@ -45,18 +101,14 @@ public class KvStoreAdapter {
 
     /**
      * Lädt den aktuellen Süßigkeitenbestand aus dem Key-Value Store reaktiv.
-     * Falls der Bestand leer ist oder der Key nicht existiert, wird der Store
-     * mit Standardwerten initialisiert und diese zurückgegeben.
+     * Die Abfrage läuft über den {@link InventoryCache}; nur bei einem Cache-Miss wird der
+     * State Store gelesen. Im Modus {@link StorageMode#PER_SWEET} werden die Süßigkeiten
+     * anhand des Index-Keys mit einem einzigen Bulk-Read gelesen.
      *
-     * @return Ein Mono, das die Liste aller verfügbaren Süßigkeiten enthält oder ein Fehler-Signal (gibt leere Liste bei Fehler).
+     * @return Ein Mono, das die (unveränderliche) Liste aller verfügbaren Süßigkeiten enthält (gibt leere Liste bei Fehler).
      */
     public Mono<List<Sweet>> getInventory() {
-        return daprClient.getState(STATE_STORE_NAME, INVENTORY_KEY, SWEET_LIST_TYPE)
-                .map(State::getValue) // Extract the value from the State object
-                // Filter out null or empty lists after getting the state value
-                .filter(inventory -> inventory != null && !inventory.isEmpty())
-                // If the Mono is empty after map/filter (key not found, value was null, or value was empty list),
-                // switch to the initialization logic.
+        return inventoryCache.getInventory(this::loadInventory)
                 .onErrorResume(e -> {
                     // This catches errors during the initial getState call
                     log.error("Fehler beim Laden des Inventars aus dem KV-Store", e);
@@ -64,6 +116,29 @@ public class KvStoreAdapter {
                     return Mono.just(new ArrayList<>());
                 });
     }
+
+    /**
+     * Lädt das Inventar in der angegebenen Sortierung. Jede Sortierung wird im {@link InventoryCache}
+     * als eigene, unveränderliche Liste gehalten, sodass Seiten und Streams sie ohne Kopie lesen können.
+     *
+     * @return Ein Mono mit der sortierten Liste aller Süßigkeiten (gibt leere Liste bei Fehler).
+     */
+    public Mono<List<Sweet>> getInventory(InventorySort sort) {
+        // Eigener Ladevorgang statt getInventory(): der Loader läuft innerhalb des Caches und darf ihn nicht erneut aufrufen
+        return inventoryCache.getInventory("sorted:" + sort, () -> loadInventory()
+                        .map(sweets -> sweets.stream().sorted(sort.comparator()).toList()))
+                .onErrorResume(e -> {
+                    log.error("Fehler beim Laden des Inventars aus dem KV-Store", e);
+                    return Mono.just(new ArrayList<>());
+                });
+    }
+
+    private Mono<List<Sweet>> loadInventory() {
+        return isPerSweet()
+                ? loadPerSweetInventory()
+                : loadBlobState().map(state -> List.copyOf(inventoryOf(state).sweets()));
+    }
+
     /**
      * Fügt eine neue Süßigkeit zum Inventar hinzu.
      * Diese Methode ist ein Wrapper für addOrUpdateSweet, speziell für das Hinzufügen.
@@ -76,87 +151,360 @@ public class KvStoreAdapter {
     }
     /**
      * Aktualisiert den Bestand einer bestimmten Süßigkeit im KV-Store reaktiv.
-     * Liest den aktuellen Zustand (ggf. initialisiert), modifiziert ihn und speichert ihn zurück.
-     * ACHTUNG: Nicht atomar ohne ETag-Nutzung.
+     * Die Änderung wird, falls aktiviert, mit gleichzeitig eintreffenden Änderungen gebündelt
+     * (siehe {@link #applyMutations(List)}).
      *
      * @param sweetName Name der Süßigkeit
      * @param quantity  Neue Menge
-     * @return Ein Mono, das true bei Erfolg enthält, false wenn die Süßigkeit nicht gefunden wurde, oder ein Fehler-Signal.
+     * @return Ein Mono, das true bei Erfolg enthält, false wenn die Süßigkeit nicht gefunden wurde oder das Speichern fehlschlug.
      */
     public Mono<Boolean> updateSweetQuantity(String sweetName, int quantity) {
-        // getInventory now handles initialization if needed
-        return getInventory()
-                .flatMap(inventory -> {
-                    Optional<Sweet> sweetToUpdate = inventory.stream()
-                            .filter(s -> s.name().equals(sweetName))
-                            .findFirst();
-
-                    if (sweetToUpdate.isPresent()) {
-                        // Create a *new* list with the updated item
-                        List<Sweet> updatedInventory = inventory.stream()
-                                .map(s -> s.name().equals(sweetName) ? new Sweet(s.name(), s.price(), quantity) : s)
-                                .collect(Collectors.toList());
-
-                        // Save the updated list
-                        // Consider adding ETag handling here for optimistic concurrency control
-                        return daprClient.saveState(STATE_STORE_NAME, INVENTORY_KEY, updatedInventory)
-                                .thenReturn(true) // Return true on successful save
-                                .onErrorResume(e -> {
-                                    log.error("Fehler beim Speichern des aktualisierten Inventars im KV-Store", e);
-                                    return Mono.just(false); // Indicate failure on save error
-                                });
-                    } else {
-                        // Sweet not found
-                        log.warn("Süßigkeit '{}' nicht im Inventar gefunden für Update.", sweetName);
-                        return Mono.just(false);
+        return submit(SweetMutation.setQuantity(sweetName, quantity));
+    }
+
+    /**
+     * Fügt eine neue Süßigkeit zum Inventar hinzu oder aktualisiert eine bestehende reaktiv.
+     * Die Änderung wird, falls aktiviert, mit gleichzeitig eintreffenden Änderungen gebündelt
+     * (siehe {@link #applyMutations(List)}).
+     *
+     * @param sweet Die hinzuzufügende oder zu aktualisierende Süßigkeit
+     * @return Ein Mono, das true bei Erfolg enthält, false wenn das Speichern fehlschlug.
+     */
+    public Mono<Boolean> addOrUpdateSweet(Sweet sweet) {
+        return submit(SweetMutation.upsert(sweet));
+    }
+
+    /**
+     * Legt viele Süßigkeiten in einem Durchgang an oder aktualisiert sie. Alle Einträge werden auf
+     * einen Inventarstand angewendet und mit einem einzigen Schreibzugriff gespeichert (siehe
+     * {@link #applyMutations(List)}); der Write-Batcher wird dabei umgangen.
+     *
+     * @param sweets Die zu speichernden Süßigkeiten; bei gleichem Namen gewinnt der spätere Eintrag
+     * @return Ein Mono mit dem Ergebnis je Süßigkeit in derselben Reihenfolge.
+     */
+    public Mono<List<Boolean>> addOrUpdateSweets(List<Sweet> sweets) {
+        return applyMutations(sweets.stream().map(SweetMutation::upsert).toList());
+    }
+
+    private Mono<Boolean> submit(SweetMutation mutation) {
+        if (writeBatcher != null) {
+            return writeBatcher.submit(mutation);
+        }
+        return applyMutations(List.of(mutation)).map(results -> results.get(0));
+    }
+
+    /**
+     * Wendet mehrere Änderungen der Reihe nach auf einen gemeinsamen Inventarstand an und
+     * speichert das Ergebnis mit einem einzigen Schreibzugriff.
+     * <p>
+     * Der Inventarstand wird samt ETag gelesen und nur zurückgeschrieben, wenn er zwischenzeitlich
+     * nicht geändert wurde; bei einem Konflikt wird der komplette Lese-Schreib-Zyklus mit Backoff
+     * wiederholt. Im Modus {@link StorageMode#BLOB} ist das ein {@code saveState} auf den Inventar-Key,
+     * im Modus {@link StorageMode#PER_SWEET} eine State-Transaktion über die geänderten Süßigkeiten
+     * (und den Index-Key, falls neue Süßigkeiten angelegt werden).
+     *
+     * @param mutations Die anzuwendenden Änderungen
+     * @return Ein Mono mit dem Ergebnis je Änderung in derselben Reihenfolge; false, wenn die Änderung
+     * abgelehnt wurde oder das Speichern fehlschlug.
+     */
+    public Mono<List<Boolean>> applyMutations(List<SweetMutation> mutations) {
+        if (mutations.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        return retryOnConflict(() -> apply(mutations, false, null))
+                .doOnNext(results -> {
+                    if (results.contains(true)) {
+                        inventoryCache.invalidate();
                     }
                 })
                 .onErrorResume(e -> {
-                    log.error("Fehler beim Aktualisieren der Süßigkeitenmenge (vor dem Speichern)", e);
-                    return Mono.just(false); // Indicate failure on fetch error or processing error
+                    if (!Exceptions.isRetryExhausted(e)) {
+                        log.error("Fehler beim Speichern von Inventaränderungen", e);
+                    }
+                    return Mono.just(Collections.nCopies(mutations.size(), false));
                 });
     }
 
     /**
-     * Fügt eine neue Süßigkeit zum Inventar hinzu oder aktualisiert eine bestehende reaktiv.
-     * Liest den aktuellen Zustand (ggf. initialisiert), modifiziert ihn und speichert ihn zurück.
-     * ACHTUNG: Nicht atomar ohne ETag-Nutzung.
+     * Wie {@link #applyMutations(List)}, schreibt aber zusätzliche State-Operationen (z.B. eine
+     * Reservierung) in derselben State-Transaktion wie die Bestandsänderungen.
+     * <p>
+     * Die zusätzlichen Operationen werden bei jedem Versuch neu erzeugt, damit sie mit aktuellen
+     * ETags geschrieben werden; sie werden auch dann geschrieben, wenn keine Süßigkeit geändert wurde.
+     * Schlägt das Erzeugen fehl, wird nichts geschrieben und der Fehler weitergereicht.
+     * Fehler, auch erschöpfte Wiederholungen, werden an den Aufrufer weitergereicht.
      *
-     * @param sweet Die hinzuzufügende oder zu aktualisierende Süßigkeit
-     * @return Ein Mono, das true bei Erfolg enthält, oder ein Fehler-Signal.
+     * @param allOrNothing         Wird eine Änderung abgelehnt, wird gar nichts geschrieben
+     * @param additionalOperations Erzeugt die zusätzlich zu schreibenden Operationen; {@code null}, wenn es keine gibt
+     * @return Ein Mono mit dem Ergebnis je Änderung in derselben Reihenfolge.
      */
-    public Mono<Boolean> addOrUpdateSweet(Sweet sweet) {
-        // getInventory now handles initialization if needed
-        return getInventory()
-                .flatMap(inventory -> {
-                    boolean exists = inventory.stream().anyMatch(s -> s.name().equals(sweet.name()));
-                    List<Sweet> updatedInventory;
-
-                    if (exists) {
-                        // Update existing: create a new list with the sweet updated
-                        updatedInventory = inventory.stream()
-                                .map(s -> s.name().equals(sweet.name()) ? sweet : s) // Replace existing
-                                .collect(Collectors.toList());
-                    } else {
-                        // Add new: create a new list with the new sweet added
-                        updatedInventory = new ArrayList<>(inventory);
-                        updatedInventory.add(sweet);
+    Mono<List<Boolean>> applyInTransaction(List<SweetMutation> mutations, boolean allOrNothing,
+                                           Supplier<Mono<List<TransactionalStateOperation<?>>>> additionalOperations) {
+        return retryOnConflict(() -> apply(mutations, allOrNothing, additionalOperations))
+                .doOnNext(results -> {
+                    if (!allOrNothing || !results.contains(false)) {
+                        inventoryCache.invalidate();
                     }
+                });
+    }
 
-                    // Save the modified list
-                    // Consider adding ETag handling here for optimistic concurrency control
-                    return daprClient.saveState(STATE_STORE_NAME, INVENTORY_KEY, updatedInventory)
-                            .thenReturn(true) // Return true on success
-                            .onErrorResume(e -> {
-                                log.error("Fehler beim Speichern des Inventars nach Add/Update im KV-Store", e);
-                                return Mono.just(false); // Indicate failure
-                            });
+    private Mono<List<Boolean>> apply(List<SweetMutation> mutations, boolean allOrNothing,
+                                      Supplier<Mono<List<TransactionalStateOperation<?>>>> additionalOperations) {
+        return isPerSweet()
+                ? applyPerSweet(mutations, allOrNothing, additionalOperations)
+                : applyBlob(mutations, allOrNothing, additionalOperations);
+    }
+
+    /**
+     * Überführt ein im alten Format unter "inventory" abgelegtes Inventar einmalig in das
+     * Format {@link StorageMode#PER_SWEET}. Süßigkeiten, Index-Key und das Löschen des alten
+     * Keys werden in einer einzigen State-Transaktion geschrieben. Existiert bereits ein
+     * Index-Key, gilt die Migration als erledigt und es passiert nichts. Migrieren mehrere
+     * Instanzen gleichzeitig, gewinnt dank First-Write genau eine.
+     *
+     * @return Ein Mono mit der Anzahl migrierter Süßigkeiten (0, wenn nichts zu tun war).
+     */
+    public Mono<Integer> migrateBlobToPerSweet() {
+        return daprClient.getState(STATE_STORE_NAME, INVENTORY_INDEX_KEY, NAME_LIST_TYPE)
+                .flatMap(indexState -> {
+                    if (indexState.getValue() != null) {
+                        log.debug("Inventar-Index vorhanden, keine Migration notwendig.");
+                        return Mono.just(0);
+                    }
+                    return loadBlobState()
+                            .filter(state -> !inventoryOf(state).isEmpty())
+                            .flatMap(this::writeMigration)
+                            .defaultIfEmpty(0);
                 })
-                .onErrorResume(e -> {
-                    log.error("Fehler beim Hinzufügen/Aktualisieren der Süßigkeit (vor dem Speichern)", e);
-                    return Mono.just(false); // Indicate failure
+                .onErrorResume(KvStoreAdapter::isEtagConflict, e -> {
+                    log.info("Migration übersprungen: Inventar wurde parallel geändert oder bereits von einer anderen Instanz migriert.");
+                    return Mono.just(0);
+                });
+    }
+
+    private Mono<Integer> writeMigration(State<Inventory> blobState) {
+        Inventory inventory = blobState.getValue();
+        List<TransactionalStateOperation<?>> operations = new ArrayList<>(inventory.size() + 2);
+        List<String> names = new ArrayList<>(inventory.size());
+        for (Sweet sweet : inventory.sweets()) {
+            operations.add(upsert(sweetKey(sweet.name()), sweet, null));
+            names.add(sweet.name());
+        }
+        operations.add(upsert(INVENTORY_INDEX_KEY, names, null));
+        operations.add(delete(INVENTORY_KEY, etagOf(blobState)));
+
+        return daprClient.executeStateTransaction(STATE_STORE_NAME, operations)
+                .thenReturn(names.size())
+                .doOnSuccess(count -> {
+                    inventoryCache.invalidate();
+                    log.info("{} Süßigkeiten in das Format PER_SWEET migriert.", count);
+                });
+    }
+
+    // --- Ablageformat BLOB: das komplette Inventar unter einem Key ---
+
+    private Mono<State<Inventory>> loadBlobState() {
+        return daprClient.getState(STATE_STORE_NAME, INVENTORY_KEY, INVENTORY_TYPE);
+    }
+
+    private Mono<List<Boolean>> applyBlob(List<SweetMutation> mutations, boolean allOrNothing,
+                                          Supplier<Mono<List<TransactionalStateOperation<?>>>> additionalOperations) {
+        return loadBlobState()
+                .flatMap(state -> {
+                    Inventory inventory = inventoryOf(state);
+                    List<Boolean> results = applyAll(inventory, mutations);
+                    if (allOrNothing && results.contains(false)) {
+                        return Mono.just(results);
+                    }
+                    if (additionalOperations == null) {
+                        if (inventory.changedNames().isEmpty()) {
+                            return Mono.just(results);
+                        }
+                        // Save the modified inventory, guarded by the ETag we read it with
+                        return daprClient.saveState(STATE_STORE_NAME, INVENTORY_KEY, etagOf(state), inventory, FIRST_WRITE)
+                                .doOnSuccess(ignored -> eventPublisher.publishChanges(inventory))
+                                .thenReturn(results);
+                    }
+                    return additionalOperations.get().flatMap(additional -> {
+                        List<TransactionalStateOperation<?>> operations = new ArrayList<>(additional.size() + 1);
+                        if (!inventory.changedNames().isEmpty()) {
+                            operations.add(upsert(INVENTORY_KEY, inventory, etagOf(state)));
+                        }
+                        operations.addAll(additional);
+                        return executeTransaction(operations)
+                                .doOnSuccess(ignored -> eventPublisher.publishChanges(inventory))
+                                .thenReturn(results);
+                    });
+                });
+    }
+
+    // --- Ablageformat PER_SWEET: ein Key pro Süßigkeit plus Index-Key ---
+
+    private Mono<List<Sweet>> loadPerSweetInventory() {
+        return loadIndexState()
+                .map(KvStoreAdapter::valueOrEmpty)
+                .flatMap(names -> {
+                    if (names.isEmpty()) {
+                        return Mono.just(new ArrayList<Sweet>());
+                    }
+                    List<String> keys = names.stream().map(KvStoreAdapter::sweetKey).collect(Collectors.toList());
+                    return daprClient.getBulkState(STATE_STORE_NAME, keys, SWEET_TYPE)
+                            .map(states -> states.stream()
+                                    .map(State::getValue)
+                                    .filter(Objects::nonNull)
+                                    .collect(Collectors.toCollection(ArrayList::new)));
+                });
+    }
+
+    private Mono<List<Boolean>> applyPerSweet(List<SweetMutation> mutations, boolean allOrNothing,
+                                              Supplier<Mono<List<TransactionalStateOperation<?>>>> additionalOperations) {
+        List<String> keys = mutations.stream()
+                .map(mutation -> sweetKey(mutation.sweetName()))
+                .distinct()
+                .collect(Collectors.toList());
+        return daprClient.getBulkState(STATE_STORE_NAME, keys, SWEET_TYPE)
+                .flatMap(states -> {
+                    Map<String, String> etags = new HashMap<>();
+                    List<Sweet> current = new ArrayList<>(states.size());
+                    for (State<Sweet> state : states) {
+                        etags.put(state.getKey(), etagOf(state));
+                        if (state.getValue() != null) {
+                            current.add(state.getValue());
+                        }
+                    }
+
+                    Inventory inventory = new Inventory(current);
+                    List<Boolean> results = applyAll(inventory, mutations);
+                    if (allOrNothing && results.contains(false)) {
+                        return Mono.just(results);
+                    }
+
+                    List<TransactionalStateOperation<?>> operations = new ArrayList<>(inventory.changedNames().size() + 1);
+                    for (String name : inventory.changedNames()) {
+                        // Neue Süßigkeiten ohne ETag: First-Write erlaubt dann nur das Anlegen
+                        String key = sweetKey(name);
+                        operations.add(upsert(key, inventory.get(name), etags.get(key)));
+                    }
+                    // Neue Süßigkeiten: Einträge und Index gemeinsam schreiben, damit der Index nie ins Leere zeigt.
+                    // Der Index ist per ETag abgesichert, damit parallel angelegte Süßigkeiten sich nicht verdrängen.
+                    Mono<List<TransactionalStateOperation<?>>> indexOperations = inventory.createdNames().isEmpty()
+                            ? Mono.just(List.of())
+                            : loadIndexState().map(indexState -> {
+                                Set<String> names = new LinkedHashSet<>(valueOrEmpty(indexState));
+                                names.addAll(inventory.createdNames());
+                                return List.of(upsert(INVENTORY_INDEX_KEY, new ArrayList<>(names), etagOf(indexState)));
+                            });
+                    Mono<List<TransactionalStateOperation<?>>> additional = additionalOperations != null
+                            ? additionalOperations.get()
+                            : Mono.just(List.of());
+                    return Mono.zip(indexOperations, additional)
+                            .flatMap(tuple -> {
+                                operations.addAll(tuple.getT1());
+                                operations.addAll(tuple.getT2());
+                                if (operations.isEmpty()) {
+                                    return Mono.just(results);
+                                }
+                                return executeTransaction(operations)
+                                        .doOnSuccess(ignored -> eventPublisher.publishChanges(inventory))
+                                        .thenReturn(results);
+                            });
+                });
+    }
+
+    private Mono<State<List<String>>> loadIndexState() {
+        return daprClient.getState(STATE_STORE_NAME, INVENTORY_INDEX_KEY, NAME_LIST_TYPE);
+    }
+
+    /**
+     * Wendet die Änderungen der Reihe nach auf den übergebenen Stand an (der dabei verändert wird).
+     *
+     * @return Ergebnis je Änderung; false, wenn die Änderung abgelehnt wurde
+     */
+    private static List<Boolean> applyAll(Inventory inventory, List<SweetMutation> mutations) {
+        List<Boolean> results = new ArrayList<>(mutations.size());
+        for (SweetMutation mutation : mutations) {
+            Sweet current = inventory.get(mutation.sweetName());
+            Sweet updated = mutation.change().apply(current);
+            if (updated == null) {
+                if (current == null) {
+                    log.warn("Süßigkeit '{}' nicht im Inventar gefunden für Update.", mutation.sweetName());
+                } else {
+                    log.warn("Änderung an Süßigkeit '{}' abgelehnt.", mutation.sweetName());
+                }
+                results.add(false);
+            } else {
+                inventory.put(updated);
+                results.add(true);
+            }
+        }
+        return results;
+    }
+
+    // --- Optimistische Nebenläufigkeit ---
+
+    /**
+     * Führt einen Lese-Schreib-Zyklus aus und wiederholt ihn bei ETag-Konflikten mit
+     * exponentiellem, zufällig gestreutem Backoff. Andere Fehler werden nicht wiederholt und,
+     * wie ein Konflikt nach der letzten Wiederholung, an den Aufrufer weitergereicht.
+     */
+    <T> Mono<T> retryOnConflict(Supplier<Mono<T>> attempt) {
+        InventoryProperties.Concurrency concurrency = inventoryProperties.concurrency();
+        return Mono.defer(attempt)
+                .doOnError(KvStoreAdapter::isEtagConflict, e -> conflictCounter.increment())
+                .retryWhen(Retry.backoff(concurrency.maxRetries(), concurrency.minBackoff())
+                        .maxBackoff(concurrency.maxBackoff())
+                        .jitter(concurrency.jitter())
+                        .filter(KvStoreAdapter::isEtagConflict)
+                        .doBeforeRetry(signal -> retryCounter.increment()))
+                .doOnError(Exceptions::isRetryExhausted, e -> {
+                    exhaustedCounter.increment();
+                    log.warn("ETag-Konflikt nach {} Wiederholungen", concurrency.maxRetries());
                 });
     }
 
+    private static boolean isEtagConflict(Throwable e) {
+        if (!(e instanceof DaprException daprException)) {
+            return false;
+        }
+        if ("ABORTED".equals(daprException.getErrorCode())) {
+            return true;
+        }
+        String message = daprException.getMessage();
+        return message != null && message.toLowerCase().contains("etag mismatch");
+    }
+
+    // --- Gemeinsame Hilfsmethoden ---
 
-}
\ No newline at end of file
+    private boolean isPerSweet() {
+        return inventoryProperties.storageMode() == StorageMode.PER_SWEET;
+    }
+
+    private static Inventory inventoryOf(State<Inventory> state) {
+        return state.getValue() != null ? state.getValue() : Inventory.empty();
+    }
+
+    private static <T> List<T> valueOrEmpty(State<List<T>> state) {
+        return state.getValue() != null ? state.getValue() : new ArrayList<>();
+    }
+
+    static String etagOf(State<?> state) {
+        String etag = state.getEtag();
+        return etag == null || etag.isEmpty() ? null : etag;
+    }
+
+    private Mono<Void> executeTransaction(List<TransactionalStateOperation<?>> operations) {
+        return daprClient.executeStateTransaction(STATE_STORE_NAME, operations);
+    }
+
+    static <T> TransactionalStateOperation<T> upsert(String key, T value, String etag) {
+        return new TransactionalStateOperation<>(OperationType.UPSERT, new State<>(key, value, etag, FIRST_WRITE));
+    }
+
+    static <T> TransactionalStateOperation<T> delete(String key, String etag) {
+        return new TransactionalStateOperation<>(OperationType.DELETE, new State<>(key, etag, FIRST_WRITE));
+    }
+
+    private static String sweetKey(String sweetName) {
+        return SWEET_KEY_PREFIX + sweetName;
+    }
+}
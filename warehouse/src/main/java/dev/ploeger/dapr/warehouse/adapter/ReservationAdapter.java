@@ -0,0 +1,343 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.config.ReservationProperties;
+import dev.ploeger.dapr.warehouse.model.OrderLine;
+import dev.ploeger.dapr.warehouse.model.Reservation;
+import dev.ploeger.dapr.warehouse.model.ReservationResult;
+import dev.ploeger.dapr.warehouse.model.ReservationResult.Status;
+import io.dapr.client.DaprClient;
+import io.dapr.client.domain.State;
+import io.dapr.client.domain.TransactionalStateOperation;
+import io.dapr.utils.TypeRef;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static dev.ploeger.dapr.warehouse.adapter.KvStoreAdapter.STATE_STORE_NAME;
+import static dev.ploeger.dapr.warehouse.adapter.KvStoreAdapter.delete;
+import static dev.ploeger.dapr.warehouse.adapter.KvStoreAdapter.etagOf;
+import static dev.ploeger.dapr.warehouse.adapter.KvStoreAdapter.upsert;
+
+/**
+ * Reserviert und bucht Lagerbestand für ganze Bestellungen atomar ab.
+ * <p>
+ * Alle Positionen einer Bestellung werden auf einen gemeinsamen Inventarstand angewendet; reicht der
+ * Bestand auch nur für eine Position nicht, wird nichts geändert und die betroffenen Positionen werden
+ * gemeldet. Eine Reservierung wird in derselben State-Transaktion wie die Abbuchung unter einem eigenen Key
+ * gespeichert. Bis zum Bestätigen bleibt der Bestand abgebucht; beim Freigeben oder Ablaufen wird er
+ * zurückgebucht.
+ * <p>
+ * Gefunden werden abgelaufene Reservierungen über einen Ablauf-Index (ID → Ablaufzeitpunkt), der nach
+ * Zeitraum ({@code expiry-bucket}) und innerhalb davon nach ID auf {@code expiry-shards} Keys verteilt ist.
+ * Gleichzeitige Reservierungen schreiben so meist in verschiedene Keys. Bestätigen und Freigeben löschen nur
+ * die Reservierung, nicht ihren Indexeintrag. Der Sweeper arbeitet die vergangenen Zeiträume der Reihe nach
+ * ab: Er gibt die noch vorhandenen Reservierungen frei und löscht danach die Keys des Zeitraums. Wie weit er
+ * gekommen ist, merkt er sich im Key {@code reservation-expiry-cursor}.
+ * <p>
+ * Reservierungen und Index sind per ETag abgesichert, eine Reservierung kann also nur genau einmal
+ * bestätigt oder freigegeben werden, auch wenn mehrere Instanzen gleichzeitig darauf zugreifen.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReservationAdapter {
+    private static final String RESERVATION_KEY_PREFIX = "reservation||";
+    private static final String EXPIRY_KEY_PREFIX = "reservation-expiry||";
+    private static final String EXPIRY_CURSOR_KEY = "reservation-expiry-cursor";
+    /**
+     * Früherer Index aller Reservierungen in einem Key; wird nur noch vom Sweeper abgearbeitet und dann gelöscht.
+     */
+    private static final String LEGACY_INDEX_KEY = "reservation-index";
+    private static final TypeRef<Reservation> RESERVATION_TYPE = TypeRef.get(Reservation.class);
+    private static final TypeRef<Map<String, Long>> EXPIRY_INDEX_TYPE = new TypeRef<>() {};
+    private static final TypeRef<Long> CURSOR_TYPE = TypeRef.get(Long.class);
+    /**
+     * Ergebnis eines Sweep-Schritts, wenn kein vergangener Zeitraum mehr offen ist oder er nicht abgeschlossen wurde.
+     */
+    private static final int NO_BUCKET_SWEPT = -1;
+
+    private final DaprClient daprClient;
+    private final KvStoreAdapter kvStoreAdapter;
+    private final ReservationProperties reservationProperties;
+
+    /**
+     * Bucht alle Positionen atomar und endgültig ab, ohne eine Reservierung anzulegen.
+     *
+     * @return {@link Status#DECREMENTED} oder {@link Status#INSUFFICIENT_STOCK} mit den abgelehnten Positionen
+     */
+    public Mono<ReservationResult> decrement(List<OrderLine> lines) {
+        return kvStoreAdapter.applyInTransaction(decrements(lines), true, null)
+                .map(results -> results.contains(false)
+                        ? ReservationResult.insufficientStock(rejected(lines, results))
+                        : ReservationResult.of(Status.DECREMENTED, null));
+    }
+
+    /**
+     * Reserviert alle Positionen atomar. Der Bestand wird sofort abgebucht und nach Ablauf der
+     * Gültigkeit automatisch zurückgebucht, falls die Reservierung bis dahin nicht bestätigt wurde.
+     *
+     * @param ttl Gültigkeit; {@code null} für die Standarddauer, Werte über der Obergrenze werden gekappt
+     * @return {@link Status#RESERVED} mit ID und Ablaufzeitpunkt oder {@link Status#INSUFFICIENT_STOCK}
+     */
+    public Mono<ReservationResult> reserve(List<OrderLine> lines, Duration ttl) {
+        Duration validity = ttl == null ? reservationProperties.defaultTtl() : ttl;
+        if (validity.compareTo(reservationProperties.maxTtl()) > 0) {
+            validity = reservationProperties.maxTtl();
+        }
+        Reservation reservation = new Reservation(UUID.randomUUID().toString(), List.copyOf(lines),
+                System.currentTimeMillis() + validity.toMillis());
+
+        String expiryKey = expiryKey(bucketOf(reservation.expiresAt()), shardOf(reservation.id()));
+        return kvStoreAdapter.applyInTransaction(decrements(lines), true, () -> loadIndexState(expiryKey)
+                        .map(expiryState -> {
+                            Map<String, Long> expiries = indexOf(expiryState);
+                            expiries.put(reservation.id(), reservation.expiresAt());
+                            return List.of(
+                                    upsert(reservationKey(reservation.id()), reservation, null),
+                                    upsert(expiryKey, expiries, etagOf(expiryState)));
+                        }))
+                .map(results -> {
+                    if (results.contains(false)) {
+                        return ReservationResult.insufficientStock(rejected(lines, results));
+                    }
+                    log.info("Reservierung {} angelegt ({} Positionen).", reservation.id(), lines.size());
+                    return ReservationResult.reserved(reservation);
+                });
+    }
+
+    /**
+     * Bestätigt eine Reservierung: Der Bestand bleibt abgebucht und die Reservierung wird gelöscht.
+     * Eine bereits abgelaufene Reservierung wird stattdessen freigegeben.
+     *
+     * @return {@link Status#COMMITTED}, {@link Status#EXPIRED} oder {@link Status#NOT_FOUND}
+     */
+    public Mono<ReservationResult> commit(String reservationId) {
+        return kvStoreAdapter.retryOnConflict(() -> loadReservationState(reservationId)
+                .flatMap(state -> {
+                    Reservation reservation = state.getValue();
+                    if (reservation == null) {
+                        return Mono.just(ReservationResult.of(Status.NOT_FOUND, reservationId));
+                    }
+                    if (reservation.isExpiredAt(System.currentTimeMillis())) {
+                        return releaseStock(reservation, Status.EXPIRED);
+                    }
+                    return daprClient.executeStateTransaction(STATE_STORE_NAME, removeReservation(state))
+                            .thenReturn(ReservationResult.of(Status.COMMITTED, reservationId))
+                            .doOnSuccess(result -> log.info("Reservierung {} bestätigt.", reservationId));
+                }));
+    }
+
+    /**
+     * Gibt eine Reservierung frei und bucht den reservierten Bestand zurück.
+     *
+     * @return {@link Status#RELEASED} oder {@link Status#NOT_FOUND}
+     */
+    public Mono<ReservationResult> release(String reservationId) {
+        return loadReservationState(reservationId)
+                .flatMap(state -> state.getValue() == null
+                        ? Mono.just(ReservationResult.of(Status.NOT_FOUND, reservationId))
+                        : releaseStock(state.getValue(), Status.RELEASED));
+    }
+
+    /**
+     * Gibt alle abgelaufenen Reservierungen frei. Schlägt das für eine Reservierung fehl, bleibt ihr Zeitraum
+     * offen und wird beim nächsten Aufruf erneut abgearbeitet, zusammen mit allen späteren.
+     *
+     * @return Ein Mono mit der Anzahl freigegebener Reservierungen.
+     */
+    public Mono<Integer> releaseExpired() {
+        long now = System.currentTimeMillis();
+        return releaseExpiredFromLegacyIndex(now)
+                .flatMap(legacy -> Mono.defer(() -> releaseNextBucket(now))
+                        .repeat()
+                        .takeWhile(released -> released != NO_BUCKET_SWEPT)
+                        .reduce(legacy, Integer::sum));
+    }
+
+    /**
+     * Gibt die Reservierungen des ältesten offenen Zeitraums frei, löscht dessen Index-Keys und rückt den
+     * Cursor weiter. Alles in einer Transaktion per ETag, damit kein Eintrag verloren geht, der nach dem
+     * Lesen hinzukam, und zwei Instanzen den Cursor nicht gegenseitig überschreiben.
+     *
+     * @return Ein Mono mit der Anzahl freigegebener Reservierungen oder {@link #NO_BUCKET_SWEPT}
+     */
+    private Mono<Integer> releaseNextBucket(long now) {
+        long bucketMillis = reservationProperties.expiryBucket().toMillis();
+        return daprClient.getState(STATE_STORE_NAME, EXPIRY_CURSOR_KEY, CURSOR_TYPE)
+                .flatMap(cursorState -> {
+                    // Ohne Cursor kann keine Reservierung vor dem Zeitraum ablaufen, der jetzt maximal zurückliegt
+                    long bucket = cursorState.getValue() != null
+                            ? cursorState.getValue()
+                            : bucketOf(now - reservationProperties.maxTtl().toMillis());
+                    if (bucket + bucketMillis > now) {
+                        return Mono.just(NO_BUCKET_SWEPT);
+                    }
+                    List<String> keys = IntStream.range(0, reservationProperties.expiryShards())
+                            .mapToObj(shard -> expiryKey(bucket, shard))
+                            .toList();
+                    return daprClient.getBulkState(STATE_STORE_NAME, keys, EXPIRY_INDEX_TYPE)
+                            .flatMap(expiryStates -> Flux.fromIterable(expiryStates)
+                                    .flatMapIterable(expiryState -> indexOf(expiryState).keySet())
+                                    .concatMap(this::releaseIfPresent)
+                                    .filter(result -> result.status() == Status.EXPIRED)
+                                    .count()
+                                    .flatMap(released -> {
+                                        List<TransactionalStateOperation<?>> operations = new ArrayList<>();
+                                        for (State<Map<String, Long>> expiryState : expiryStates) {
+                                            if (expiryState.getValue() != null) {
+                                                operations.add(delete(expiryState.getKey(), etagOf(expiryState)));
+                                            }
+                                        }
+                                        operations.add(upsert(EXPIRY_CURSOR_KEY, bucket + bucketMillis, etagOf(cursorState)));
+                                        return daprClient.executeStateTransaction(STATE_STORE_NAME, operations)
+                                                .thenReturn(released.intValue());
+                                    }));
+                })
+                .onErrorResume(e -> {
+                    log.warn("Ablauf-Index konnte nicht vollständig abgearbeitet werden, neuer Versuch beim nächsten Lauf: {}",
+                            e.getMessage());
+                    return Mono.just(NO_BUCKET_SWEPT);
+                });
+    }
+
+    /**
+     * Arbeitet den früheren, nicht aufgeteilten Index ab, bis er leer ist und gelöscht werden kann.
+     */
+    private Mono<Integer> releaseExpiredFromLegacyIndex(long now) {
+        return daprClient.getState(STATE_STORE_NAME, LEGACY_INDEX_KEY, EXPIRY_INDEX_TYPE)
+                .flatMap(indexState -> {
+                    Map<String, Long> index = indexOf(indexState);
+                    List<String> expired = index.entrySet().stream()
+                            .filter(entry -> now >= entry.getValue())
+                            .map(Map.Entry::getKey)
+                            .toList();
+                    if (expired.isEmpty()) {
+                        return Mono.just(0);
+                    }
+                    return Flux.fromIterable(expired)
+                            .concatMap(this::releaseIfPresent)
+                            .filter(result -> result.status() == Status.EXPIRED)
+                            .count()
+                            .flatMap(released -> {
+                                expired.forEach(index::remove);
+                                TransactionalStateOperation<?> update = index.isEmpty()
+                                        ? delete(LEGACY_INDEX_KEY, etagOf(indexState))
+                                        : upsert(LEGACY_INDEX_KEY, index, etagOf(indexState));
+                                return daprClient.executeStateTransaction(STATE_STORE_NAME, List.of(update))
+                                        .thenReturn(released.intValue());
+                            });
+                })
+                .onErrorResume(e -> {
+                    log.warn("Früherer Reservierungsindex konnte nicht abgearbeitet werden: {}", e.getMessage());
+                    return Mono.just(0);
+                });
+    }
+
+    /**
+     * Gibt eine abgelaufene Reservierung frei, sofern sie nicht inzwischen bestätigt oder freigegeben wurde.
+     */
+    private Mono<ReservationResult> releaseIfPresent(String reservationId) {
+        return loadReservationState(reservationId)
+                .flatMap(state -> state.getValue() == null
+                        ? Mono.just(ReservationResult.of(Status.NOT_FOUND, reservationId))
+                        : releaseStock(state.getValue(), Status.EXPIRED));
+    }
+
+    /**
+     * Bucht den reservierten Bestand zurück und löscht die Reservierung in derselben State-Transaktion.
+     * Wurde die Reservierung inzwischen von einem anderen Aufrufer bestätigt oder freigegeben, wird
+     * nichts zurückgebucht.
+     */
+    private Mono<ReservationResult> releaseStock(Reservation reservation, Status status) {
+        List<SweetMutation> increments = reservation.lines().stream()
+                .map(line -> SweetMutation.increment(line.name(), line.quantity()))
+                .toList();
+        // Die Reservierung wird bei jedem Versuch neu gelesen; ist sie weg, bricht die Transaktion ab
+        return kvStoreAdapter.applyInTransaction(increments, false, () -> loadReservationState(reservation.id())
+                        .flatMap(state -> state.getValue() == null
+                                ? Mono.error(new ReservationGoneException())
+                                : Mono.just(removeReservation(state))))
+                .map(results -> {
+                    if (results.contains(false)) {
+                        log.warn("Reservierung {}: nicht alle Positionen konnten zurückgebucht werden.", reservation.id());
+                    }
+                    log.info("Reservierung {} freigegeben ({}).", reservation.id(), status);
+                    return ReservationResult.of(status, reservation.id());
+                })
+                .onErrorResume(ReservationGoneException.class,
+                        e -> Mono.just(ReservationResult.of(Status.NOT_FOUND, reservation.id())));
+    }
+
+    /**
+     * Der Eintrag im Ablauf-Index bleibt stehen; der Sweeper überspringt ihn, weil die Reservierung fehlt.
+     *
+     * @return Operationen, die die Reservierung löschen
+     */
+    private static List<TransactionalStateOperation<?>> removeReservation(State<Reservation> reservationState) {
+        return List.of(delete(reservationKey(reservationState.getValue().id()), etagOf(reservationState)));
+    }
+
+    private Mono<State<Reservation>> loadReservationState(String reservationId) {
+        return daprClient.getState(STATE_STORE_NAME, reservationKey(reservationId), RESERVATION_TYPE);
+    }
+
+    private Mono<State<Map<String, Long>>> loadIndexState(String key) {
+        return daprClient.getState(STATE_STORE_NAME, key, EXPIRY_INDEX_TYPE);
+    }
+
+    private long bucketOf(long timestamp) {
+        long bucketMillis = reservationProperties.expiryBucket().toMillis();
+        return Math.floorDiv(timestamp, bucketMillis) * bucketMillis;
+    }
+
+    private int shardOf(String reservationId) {
+        return Math.floorMod(reservationId.hashCode(), reservationProperties.expiryShards());
+    }
+
+    private static Map<String, Long> indexOf(State<Map<String, Long>> state) {
+        return state.getValue() != null ? new HashMap<>(state.getValue()) : new HashMap<>();
+    }
+
+    private static List<SweetMutation> decrements(List<OrderLine> lines) {
+        return lines.stream()
+                .map(line -> SweetMutation.decrement(line.name(), line.quantity()))
+                .toList();
+    }
+
+    private static List<OrderLine> rejected(List<OrderLine> lines, List<Boolean> results) {
+        List<OrderLine> rejected = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (!results.get(i)) {
+                rejected.add(lines.get(i));
+            }
+        }
+        return rejected;
+    }
+
+    private static String reservationKey(String reservationId) {
+        return RESERVATION_KEY_PREFIX + reservationId;
+    }
+
+    private static String expiryKey(long bucket, int shard) {
+        return EXPIRY_KEY_PREFIX + bucket + "||" + shard;
+    }
+
+    /**
+     * Die Reservierung wurde zwischen Lesen und Schreiben bestätigt oder freigegeben.
+     */
+    private static class ReservationGoneException extends RuntimeException {
+        ReservationGoneException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.config.ReservationProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gibt in festen Abständen abgelaufene Reservierungen frei und bucht deren Bestand zurück.
+ * Laufen mehrere Instanzen, darf jede den Sweep ausführen; dieselbe Reservierung wird dank
+ * ETag trotzdem nur einmal freigegeben.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReservationSweeper {
+
+    private final ReservationAdapter reservationAdapter;
+    private final ReservationProperties reservationProperties;
+    private final TaskScheduler taskScheduler;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleSweep() {
+        taskScheduler.scheduleWithFixedDelay(this::releaseExpired, reservationProperties.sweepInterval());
+    }
+
+    void releaseExpired() {
+        try {
+            Integer released = reservationAdapter.releaseExpired().block();
+            if (released != null && released > 0) {
+                log.info("{} abgelaufene Reservierungen freigegeben.", released);
+            }
+        } catch (Exception e) {
+            log.error("Freigeben abgelaufener Reservierungen fehlgeschlagen", e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.model.Sweet;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Eine Änderung an genau einer Süßigkeit des Inventars.
+ * <p>
+ * Die Änderungsfunktion erhält den aktuellen Stand der Süßigkeit ({@code null}, wenn sie nicht
+ * im Inventar ist) und liefert den neuen Stand. Liefert sie {@code null}, wird die Änderung
+ * abgelehnt und der Bestand bleibt unverändert.
+ *
+ * @param sweetName Name der betroffenen Süßigkeit
+ * @param change    Berechnet den neuen Stand aus dem aktuellen
+ */
+public record SweetMutation(String sweetName, UnaryOperator<Sweet> change) {
+
+    /**
+     * Setzt die Menge einer vorhandenen Süßigkeit; unbekannte Süßigkeiten werden abgelehnt.
+     */
+    public static SweetMutation setQuantity(String sweetName, int quantity) {
+        return new SweetMutation(sweetName,
+                current -> current == null ? null : new Sweet(current.name(), current.price(), quantity));
+    }
+
+    /**
+     * Verringert die Menge einer vorhandenen Süßigkeit. Unbekannte Süßigkeiten und zu geringer
+     * Bestand werden abgelehnt.
+     */
+    public static SweetMutation decrement(String sweetName, int amount) {
+        return new SweetMutation(sweetName, current -> current == null || current.quantity() < amount
+                ? null
+                : new Sweet(current.name(), current.price(), current.quantity() - amount));
+    }
+
+    /**
+     * Erhöht die Menge einer vorhandenen Süßigkeit; unbekannte Süßigkeiten werden abgelehnt.
+     */
+    public static SweetMutation increment(String sweetName, int amount) {
+        return new SweetMutation(sweetName,
+                current -> current == null ? null : new Sweet(current.name(), current.price(), current.quantity() + amount));
+    }
+
+    /**
+     * Legt eine Süßigkeit an oder ersetzt eine vorhandene vollständig.
+     */
+    public static SweetMutation upsert(Sweet sweet) {
+        return new SweetMutation(sweet.name(), current -> sweet);
+    }
+}
@@ -0,0 +1,24 @@
+package dev.ploeger.dapr.warehouse.config;
+
+import dev.ploeger.dapr.warehouse.serializer.CompactStateSerializer;
+import io.dapr.client.DaprClient;
+import io.dapr.client.DaprClientBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Ersetzt den {@link DaprClient} der Dapr-Autokonfiguration, um das Format im State Store festzulegen.
+ * PubSub und Service-Invocation bleiben bei JSON.
+ */
+@Configuration
+public class DaprClientConfig {
+
+    @Bean
+    public DaprClient daprClient(DaprClientBuilder daprClientBuilder, SerializationProperties serializationProperties) {
+        if (serializationProperties.stateFormat() == SerializationProperties.Format.COMPACT) {
+            daprClientBuilder.withStateSerializer(
+                    new CompactStateSerializer((int) serializationProperties.compressionThreshold().toBytes()));
+        }
+        return daprClientBuilder.build();
+    }
+}
@@ -0,0 +1,100 @@
+package dev.ploeger.dapr.warehouse.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration der Inventar-Ablage im Dapr State Store.
+ *
+ * @param storageMode Ablageformat des Inventars (siehe {@link StorageMode})
+ * @param concurrency Wiederholungsstrategie bei ETag-Konflikten
+ * @param cache       Lesecache vor dem State Store
+ * @param batching    Bündelung gleichzeitiger Schreibzugriffe
+ * @param events      Veröffentlichung von Inventaränderungen
+ */
+@ConfigurationProperties(prefix = "warehouse.inventory")
+public record InventoryProperties(
+        @DefaultValue("blob") StorageMode storageMode,
+        @DefaultValue Concurrency concurrency,
+        @DefaultValue Cache cache,
+        @DefaultValue Batching batching,
+        @DefaultValue Events events
+) {
+
+    /**
+     * Ablageformat des Inventars im State Store.
+     */
+    public enum StorageMode {
+        /**
+         * Das gesamte Inventar liegt als eine Liste unter dem Key "inventory".
+         */
+        BLOB,
+        /**
+         * Jede Süßigkeit liegt unter einem eigenen Key, ergänzt um einen kleinen Index-Key mit allen Namen.
+         */
+        PER_SWEET
+    }
+
+    /**
+     * Optimistische Nebenläufigkeit: Schreibzugriffe werden mit dem gelesenen ETag abgesichert
+     * und bei einem Konflikt mit zufällig gestreutem, exponentiellem Backoff wiederholt.
+     *
+     * @param maxRetries Maximale Anzahl an Wiederholungen nach einem Konflikt
+     * @param minBackoff Wartezeit vor der ersten Wiederholung
+     * @param maxBackoff Obergrenze der Wartezeit zwischen zwei Wiederholungen
+     * @param jitter     Anteil (0 bis 1) der Wartezeit, der zufällig gestreut wird
+     */
+    public record Concurrency(
+            @DefaultValue("5") int maxRetries,
+            @DefaultValue("10ms") Duration minBackoff,
+            @DefaultValue("500ms") Duration maxBackoff,
+            @DefaultValue("0.5") double jitter
+    ) {
+    }
+
+    /**
+     * In-Process-Lesecache für das Inventar. Lokale Schreibzugriffe invalidieren ihn sofort,
+     * Änderungen anderer Instanzen werden spätestens nach Ablauf der TTL sichtbar.
+     *
+     * @param enabled    Cache ein- oder ausschalten
+     * @param ttl        Maximale Lebensdauer eines Eintrags
+     * @param maxEntries Maximale Anzahl gecachter Einträge
+     */
+    public record Cache(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("5s") Duration ttl,
+            @DefaultValue("100") long maxEntries
+    ) {
+    }
+
+    /**
+     * Group Commit: gleichzeitig eintreffende Änderungen werden gesammelt und mit einem
+     * einzigen Schreibzugriff gespeichert.
+     *
+     * @param enabled      Bündelung ein- oder ausschalten
+     * @param window       Wie lange nach der ersten Änderung auf weitere gewartet wird
+     * @param maxBatchSize Maximale Anzahl an Änderungen je Schreibzugriff
+     */
+    public record Batching(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("2ms") Duration window,
+            @DefaultValue("200") int maxBatchSize
+    ) {
+    }
+
+    /**
+     * Nach jedem Schreibzugriff werden die geänderten Süßigkeiten auf einem Topic veröffentlicht.
+     *
+     * @param enabled    Veröffentlichung ein- oder ausschalten
+     * @param pubsubName Name der Dapr-PubSub-Komponente
+     * @param topic      Topic für die Änderungen
+     */
+    public record Events(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("inventory-pubsub") String pubsubName,
+            @DefaultValue("inventory-changes") String topic
+    ) {
+    }
+}
@@ -0,0 +1,28 @@
+package dev.ploeger.dapr.warehouse.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguration der Bestandsreservierungen.
+ *
+ * @param defaultTtl    Gültigkeit einer Reservierung, wenn die Anfrage keine angibt
+ * @param maxTtl        Obergrenze für die angefragte Gültigkeit
+ * @param sweepInterval Abstand, in dem abgelaufene Reservierungen freigegeben werden
+ * @param expiryBucket  Zeitraum, dessen ablaufende Reservierungen gemeinsam im Ablauf-Index stehen
+ * @param expiryShards  Anzahl Keys je Zeitraum im Ablauf-Index; mehr Keys bedeuten weniger ETag-Konflikte
+ *                      zwischen gleichzeitigen Reservierungen, aber mehr Lesezugriffe beim Freigeben.
+ *                      Beide Werte nur ändern, solange keine Reservierungen offen sind, sonst findet der
+ *                      Sweeper deren Indexeinträge nicht mehr
+ */
+@ConfigurationProperties(prefix = "warehouse.reservations")
+public record ReservationProperties(
+        @DefaultValue("15m") Duration defaultTtl,
+        @DefaultValue("2h") Duration maxTtl,
+        @DefaultValue("30s") Duration sweepInterval,
+        @DefaultValue("1m") Duration expiryBucket,
+        @DefaultValue("16") int expiryShards
+) {
+}
@@ -0,0 +1,29 @@
+package dev.ploeger.dapr.warehouse.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Format der Werte im Dapr State Store.
+ *
+ * @param stateFormat          Format, in dem Süßigkeiten und Inventare geschrieben werden; gelesen werden immer beide
+ * @param compressionThreshold Ab dieser Größe wird ein kompakt geschriebener Wert komprimiert; 0 schaltet das ab
+ */
+@ConfigurationProperties(prefix = "warehouse.serialization")
+public record SerializationProperties(
+        @DefaultValue("compact") Format stateFormat,
+        @DefaultValue("4KB") DataSize compressionThreshold
+) {
+
+    public enum Format {
+        /**
+         * JSON über den Standard-Serializer von Dapr.
+         */
+        JSON,
+        /**
+         * Kompaktes Binärformat, siehe {@link dev.ploeger.dapr.warehouse.serializer.CompactStateSerializer}.
+         */
+        COMPACT
+    }
+}
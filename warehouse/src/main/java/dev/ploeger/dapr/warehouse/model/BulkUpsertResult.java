@@ -0,0 +1,43 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import java.util.List;
+
+/**
+ * Ergebnis eines Bulk-Imports von Süßigkeiten.
+ *
+ * @param upserted Anzahl angelegter oder aktualisierter Süßigkeiten
+ * @param rejected Anzahl wegen ungültiger Daten abgelehnter Einträge
+ * @param failed   Anzahl Einträge, die nicht gespeichert werden konnten
+ * @param items    Ergebnis je Eintrag in der Reihenfolge des Requests
+ */
+public record BulkUpsertResult(int upserted, int rejected, int failed, List<Item> items) {
+
+    public static BulkUpsertResult of(List<Item> items) {
+        int upserted = 0;
+        int rejected = 0;
+        int failed = 0;
+        for (Item item : items) {
+            switch (item.status()) {
+                case UPSERTED -> upserted++;
+                case REJECTED -> rejected++;
+                case FAILED -> failed++;
+            }
+        }
+        return new BulkUpsertResult(upserted, rejected, failed, items);
+    }
+
+    /**
+     * @param index   Position des Eintrags im Request (ab 0)
+     * @param name    Name der Süßigkeit
+     * @param status  Ergebnis für diesen Eintrag
+     * @param message Begründung bei abgelehnten oder fehlgeschlagenen Einträgen
+     */
+    public record Item(int index, String name, Status status, String message) {
+    }
+
+    public enum Status {
+        UPSERTED,
+        REJECTED,
+        FAILED
+    }
+}
@@ -0,0 +1,90 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inventar, nach Namen der Süßigkeiten indiziert.
+ * <p>
+ * Suchen und Ändern einer Süßigkeit kosten O(1) und ändern das Inventar an Ort und Stelle. Die
+ * Reihenfolge der Süßigkeiten bleibt erhalten. Serialisiert wird das Inventar direkt aus den Werten
+ * der Map als JSON-Liste von {@link Sweet}s, also im selben Format wie bisher eine {@code List<Sweet>},
+ * ohne dafür eine Liste aufzubauen.
+ * <p>
+ * Zusätzlich merkt sich das Inventar, welche Süßigkeiten seit dem Laden geändert bzw. neu angelegt
+ * wurden, damit beim Speichern nur diese geschrieben werden müssen. Instanzen sind nicht threadsicher.
+ */
+public class Inventory {
+    private final Map<String, Sweet> sweets;
+    private final Set<String> changedNames = new LinkedHashSet<>();
+    private final Set<String> createdNames = new LinkedHashSet<>();
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public Inventory(List<Sweet> sweets) {
+        this.sweets = new LinkedHashMap<>(Math.max(16, (int) (sweets.size() / 0.75f) + 1));
+        sweets.forEach(sweet -> this.sweets.put(sweet.name(), sweet));
+    }
+
+    public static Inventory empty() {
+        return new Inventory(List.of());
+    }
+
+    /**
+     * @return Die Süßigkeit mit diesem Namen oder {@code null}, wenn sie nicht im Inventar ist.
+     */
+    public Sweet get(String name) {
+        return sweets.get(name);
+    }
+
+    public boolean contains(String name) {
+        return sweets.containsKey(name);
+    }
+
+    /**
+     * Legt eine Süßigkeit an oder ersetzt die vorhandene gleichen Namens.
+     */
+    public void put(Sweet sweet) {
+        if (sweets.put(sweet.name(), sweet) == null) {
+            createdNames.add(sweet.name());
+        }
+        changedNames.add(sweet.name());
+    }
+
+    public int size() {
+        return sweets.size();
+    }
+
+    public boolean isEmpty() {
+        return sweets.isEmpty();
+    }
+
+    /**
+     * @return Unveränderliche Sicht auf alle Süßigkeiten; das ist zugleich die persistierte Form.
+     */
+    @JsonValue
+    public Collection<Sweet> sweets() {
+        return Collections.unmodifiableCollection(sweets.values());
+    }
+
+    /**
+     * @return Namen der seit dem Laden geänderten oder angelegten Süßigkeiten
+     */
+    public Set<String> changedNames() {
+        return Collections.unmodifiableSet(changedNames);
+    }
+
+    /**
+     * @return Namen der seit dem Laden neu angelegten Süßigkeiten
+     */
+    public Set<String> createdNames() {
+        return Collections.unmodifiableSet(createdNames);
+    }
+}
@@ -0,0 +1,13 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import java.util.List;
+
+/**
+ * Wird nach jedem Schreibzugriff auf das Inventar veröffentlicht und enthält nur die geänderten Süßigkeiten.
+ *
+ * @param sweets       Neuer Stand aller geänderten Süßigkeiten
+ * @param createdNames Namen der darunter neu angelegten Süßigkeiten
+ * @param changedAt    Zeitpunkt der Änderung in Millisekunden seit der Epoche
+ */
+public record InventoryChangedEvent(List<Sweet> sweets, List<String> createdNames, long changedAt) {
+}
@@ -0,0 +1,35 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Filter für paginierte und gestreamte Abfragen des Inventars.
+ *
+ * @param nameContains Nur Süßigkeiten, deren Name diesen Text enthält (ohne Beachtung der Groß-/Kleinschreibung)
+ * @param inStockOnly  Nur Süßigkeiten mit Bestand
+ */
+public record InventoryFilter(String nameContains, boolean inStockOnly) implements Predicate<Sweet> {
+
+    public InventoryFilter {
+        nameContains = nameContains == null || nameContains.isBlank()
+                ? null
+                : nameContains.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return true, wenn der Filter keine Süßigkeit ausschließt
+     */
+    public boolean isEmpty() {
+        return nameContains == null && !inStockOnly;
+    }
+
+    @Override
+    public boolean test(Sweet sweet) {
+        if (inStockOnly && sweet.quantity() <= 0) {
+            return false;
+        }
+        return nameContains == null
+                || (sweet.name() != null && sweet.name().toLowerCase(Locale.ROOT).contains(nameContains));
+    }
+}
@@ -0,0 +1,106 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Eine Seite des sortierten Inventars.
+ * <p>
+ * Geblättert wird entweder über den Offset oder über den Cursor. Der Cursor enthält den Sortierwert und
+ * Namen der letzten Süßigkeit der Seite; die nächste Seite beginnt direkt dahinter, auch wenn sich das
+ * Inventar zwischen zwei Abfragen ändert (Keyset-Pagination).
+ *
+ * @param items      Die Süßigkeiten dieser Seite
+ * @param nextCursor Cursor für die nächste Seite, {@code null} auf der letzten Seite
+ * @param nextOffset Offset der nächsten Seite, {@code null} auf der letzten Seite
+ * @param total      Anzahl aller Süßigkeiten im Inventar
+ */
+public record InventoryPage(List<Sweet> items, String nextCursor, Integer nextOffset, int total) {
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * Schneidet eine Seite aus dem bereits sortierten Inventar, ohne Süßigkeiten zu kopieren.
+     *
+     * @param sorted Das mit {@code sort} sortierte Inventar
+     * @param cursor Cursor einer vorherigen Seite oder {@code null}; hat Vorrang vor dem Offset
+     * @throws IllegalArgumentException wenn der Cursor ungültig ist oder zu einer anderen Sortierung gehört
+     */
+    public static InventoryPage of(List<Sweet> sorted, InventorySort sort, String cursor, int offset, int limit) {
+        int from = cursor != null ? indexAfter(sorted, sort, cursor) : Math.min(Math.max(offset, 0), sorted.size());
+        int to = Math.min(from + limit, sorted.size());
+        List<Sweet> items = Collections.unmodifiableList(sorted.subList(from, to));
+        boolean hasMore = to < sorted.size();
+        return new InventoryPage(items,
+                hasMore && to > from ? encodeCursor(sort, sorted.get(to - 1)) : null,
+                hasMore ? to : null,
+                sorted.size());
+    }
+
+    /**
+     * Wie {@link #of(List, InventorySort, String, int, int)}, berücksichtigt aber nur Süßigkeiten, die dem
+     * Filter entsprechen. Das Inventar wird dazu durchlaufen statt gefiltert kopiert; nur die Seite selbst
+     * wird als Liste aufgebaut. Offset und {@code total} beziehen sich auf die gefilterten Süßigkeiten.
+     *
+     * @param filter Filter oder {@code null} für alle Süßigkeiten
+     */
+    public static InventoryPage of(List<Sweet> sorted, InventorySort sort, Predicate<Sweet> filter,
+                                   String cursor, int offset, int limit) {
+        if (filter == null) {
+            return of(sorted, sort, cursor, offset, limit);
+        }
+        int start = cursor != null ? indexAfter(sorted, sort, cursor) : 0;
+        int skip = cursor != null ? 0 : Math.max(offset, 0);
+        int matchesBefore = 0;
+        int total = 0;
+        int lastIndex = -1;
+        List<Sweet> items = new ArrayList<>(Math.min(limit, sorted.size()));
+        for (int i = 0; i < sorted.size(); i++) {
+            Sweet sweet = sorted.get(i);
+            if (!filter.test(sweet)) {
+                continue;
+            }
+            total++;
+            if (i < start || skip > 0) {
+                matchesBefore++;
+                if (i >= start) {
+                    skip--;
+                }
+            } else if (items.size() < limit) {
+                items.add(sweet);
+                lastIndex = i;
+            }
+        }
+        boolean hasMore = matchesBefore + items.size() < total;
+        return new InventoryPage(Collections.unmodifiableList(items),
+                hasMore && lastIndex >= 0 ? encodeCursor(sort, sorted.get(lastIndex)) : null,
+                hasMore ? matchesBefore + items.size() : null,
+                total);
+    }
+
+    private static int indexAfter(List<Sweet> sorted, InventorySort sort, String cursor) {
+        Sweet last = decodeCursor(sort, cursor);
+        int index = Collections.binarySearch(sorted, last, sort.comparator());
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private static String encodeCursor(InventorySort sort, Sweet last) {
+        String value = String.join(SEPARATOR, sort.toString(), Double.toString(last.price()),
+                Integer.toString(last.quantity()), last.name());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Sweet decodeCursor(InventorySort sort, String cursor) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, 4);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Ungültiger Cursor");
+        }
+        if (!parts[0].equals(sort.toString())) {
+            throw new IllegalArgumentException("Cursor gehört zur Sortierung " + parts[0]);
+        }
+        return new Sweet(parts[3], Double.parseDouble(parts[1]), Integer.parseInt(parts[2]));
+    }
+}
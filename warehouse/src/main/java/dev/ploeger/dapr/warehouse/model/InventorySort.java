@@ -0,0 +1,58 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Sortierung des Inventars für paginierte und gestreamte Abfragen. Bei gleichem Sortierwert wird
+ * nach dem (eindeutigen) Namen sortiert, die Reihenfolge ist also immer vollständig festgelegt.
+ *
+ * @param field      Sortierfeld
+ * @param descending Absteigend statt aufsteigend sortieren
+ */
+public record InventorySort(Field field, boolean descending) {
+    public static final InventorySort DEFAULT = new InventorySort(Field.NAME, false);
+
+    public enum Field {
+        NAME,
+        PRICE,
+        QUANTITY
+    }
+
+    /**
+     * Liest eine Sortierung im Format {@code feld[,asc|desc]}, z.B. {@code price,desc}.
+     *
+     * @param value Die Sortierung; {@code null} oder leer für {@link #DEFAULT}
+     * @throws IllegalArgumentException bei unbekanntem Feld oder unbekannter Richtung
+     */
+    public static InventorySort parse(String value) {
+        if (value == null || value.isBlank()) {
+            return DEFAULT;
+        }
+        String[] parts = value.trim().split(",", 2);
+        Field field = Field.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+        if (parts.length == 1) {
+            return new InventorySort(field, false);
+        }
+        return switch (parts[1].trim().toLowerCase(Locale.ROOT)) {
+            case "asc" -> new InventorySort(field, false);
+            case "desc" -> new InventorySort(field, true);
+            default -> throw new IllegalArgumentException("Unbekannte Sortierrichtung: " + parts[1]);
+        };
+    }
+
+    public Comparator<Sweet> comparator() {
+        Comparator<Sweet> comparator = switch (field) {
+            case NAME -> Comparator.comparing(Sweet::name);
+            case PRICE -> Comparator.comparingDouble(Sweet::price);
+            case QUANTITY -> Comparator.comparingInt(Sweet::quantity);
+        };
+        comparator = comparator.thenComparing(Sweet::name);
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    @Override
+    public String toString() {
+        return field.name().toLowerCase(Locale.ROOT) + (descending ? ",desc" : ",asc");
+    }
+}
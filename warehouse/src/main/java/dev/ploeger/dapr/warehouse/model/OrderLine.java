@@ -0,0 +1,10 @@
+package dev.ploeger.dapr.warehouse.model;
+
+/**
+ * Eine Position einer Bestellung bzw. Reservierung.
+ *
+ * @param name     Name der Süßigkeit
+ * @param quantity Angeforderte Menge
+ */
+public record OrderLine(String name, int quantity) {
+}
@@ -0,0 +1,18 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import java.util.List;
+
+/**
+ * Eine Reservierung von Lagerbestand. Der Bestand ist bereits abgebucht, solange die Reservierung
+ * besteht; beim Bestätigen bleibt er abgebucht, beim Freigeben oder Ablaufen wird er zurückgebucht.
+ *
+ * @param id        Eindeutige ID der Reservierung
+ * @param lines     Reservierte Positionen
+ * @param expiresAt Ablaufzeitpunkt in Millisekunden seit der Epoche
+ */
+public record Reservation(String id, List<OrderLine> lines, long expiresAt) {
+
+    public boolean isExpiredAt(long now) {
+        return now >= expiresAt;
+    }
+}
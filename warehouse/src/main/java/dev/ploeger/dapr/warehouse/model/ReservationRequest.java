@@ -0,0 +1,13 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Anfrage zum Reservieren oder direkten Abbuchen mehrerer Positionen.
+ *
+ * @param lines Die Positionen; dieselbe Süßigkeit darf mehrfach vorkommen
+ * @param ttl   Gültigkeit der Reservierung; ohne Angabe gilt die konfigurierte Standarddauer
+ */
+public record ReservationRequest(List<OrderLine> lines, Duration ttl) {
+}
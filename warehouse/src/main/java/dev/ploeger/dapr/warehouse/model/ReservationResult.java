@@ -0,0 +1,43 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import java.util.List;
+
+/**
+ * Ergebnis einer Operation auf dem Lagerbestand einer Bestellung.
+ *
+ * @param status        Ergebnis der Operation
+ * @param reservationId ID der betroffenen Reservierung, falls vorhanden
+ * @param expiresAt     Ablaufzeitpunkt der Reservierung in Millisekunden seit der Epoche, falls vorhanden
+ * @param rejectedLines Positionen, für die der Bestand nicht ausreicht oder die Süßigkeit unbekannt ist
+ */
+public record ReservationResult(Status status, String reservationId, Long expiresAt, List<OrderLine> rejectedLines) {
+
+    public static ReservationResult of(Status status, String reservationId) {
+        return new ReservationResult(status, reservationId, null, List.of());
+    }
+
+    public static ReservationResult reserved(Reservation reservation) {
+        return new ReservationResult(Status.RESERVED, reservation.id(), reservation.expiresAt(), List.of());
+    }
+
+    public static ReservationResult insufficientStock(List<OrderLine> rejectedLines) {
+        return new ReservationResult(Status.INSUFFICIENT_STOCK, null, null, rejectedLines);
+    }
+
+    public enum Status {
+        /** Bestand reserviert, Reservierung muss noch bestätigt oder freigegeben werden */
+        RESERVED,
+        /** Bestand direkt und endgültig abgebucht */
+        DECREMENTED,
+        /** Reservierung bestätigt, der Bestand bleibt abgebucht */
+        COMMITTED,
+        /** Reservierung freigegeben, der Bestand wurde zurückgebucht */
+        RELEASED,
+        /** Reservierung war abgelaufen, der Bestand wurde zurückgebucht */
+        EXPIRED,
+        /** Nicht genug Bestand; es wurde nichts geändert */
+        INSUFFICIENT_STOCK,
+        /** Keine Reservierung mit dieser ID (mehr) vorhanden */
+        NOT_FOUND
+    }
+}
@@ -0,0 +1,70 @@
+package dev.ploeger.dapr.warehouse.resource;
+
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import dev.ploeger.dapr.warehouse.serializer.InventoryProtobuf;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Schreibt Antworten vom Typ {@code List<Sweet>} im Protobuf-Format, wenn der Aufrufer
+ * {@code Accept: application/x-protobuf} sendet. Ohne diesen Header bleibt es bei JSON, weil der
+ * Converter hinter dem JSON-Converter registriert ist. Request-Bodies mit diesem Content-Type liest er
+ * ebenso; ein fehlerhafter Body wird mit 400 abgelehnt.
+ */
+class InventoryProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<List<Sweet>> {
+    private static final ResolvableType SWEET_LIST = ResolvableType.forClassWithGenerics(List.class, Sweet.class);
+
+    InventoryProtobufHttpMessageConverter() {
+        super(MediaType.parseMediaType(InventoryProtobuf.MEDIA_TYPE));
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return type != null && SWEET_LIST.isAssignableFrom(ResolvableType.forType(type)) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return type != null && SWEET_LIST.isAssignableFrom(ResolvableType.forType(type)) && canWrite(mediaType);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected void writeInternal(List<Sweet> sweets, Type type, HttpOutputMessage outputMessage) throws IOException {
+        byte[] bytes = InventoryProtobuf.encode(sweets);
+        outputMessage.getHeaders().setContentLength(bytes.length);
+        outputMessage.getBody().write(bytes);
+    }
+
+    @Override
+    protected List<Sweet> readInternal(Class<? extends List<Sweet>> clazz, HttpInputMessage inputMessage) throws IOException {
+        return decode(inputMessage);
+    }
+
+    @Override
+    public List<Sweet> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return decode(inputMessage);
+    }
+
+    private static List<Sweet> decode(HttpInputMessage inputMessage) throws IOException {
+        byte[] bytes = inputMessage.getBody().readAllBytes();
+        try {
+            return InventoryProtobuf.decode(bytes);
+        } catch (IOException | RuntimeException e) {
+            throw new HttpMessageNotReadableException("Inventar im Protobuf-Format nicht lesbar: " + e.getMessage(),
+                    e, inputMessage);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package dev.ploeger.dapr.warehouse.resource;
+
+import dev.ploeger.dapr.warehouse.adapter.ReservationAdapter;
+import dev.ploeger.dapr.warehouse.model.OrderLine;
+import dev.ploeger.dapr.warehouse.model.ReservationRequest;
+import dev.ploeger.dapr.warehouse.model.ReservationResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * HTTP-API für das atomare Abbuchen und Reservieren von Bestand für ganze Bestellungen.
+ * <p>
+ * Eine Bestellung wird mit einem einzigen Aufruf geprüft und abgebucht; reicht der Bestand für eine
+ * Position nicht, wird nichts geändert und mit 409 geantwortet. Reservierungen werden über
+ * {@code POST /reservations/{id}/commit} bestätigt oder über {@code DELETE /reservations/{id}}
+ * freigegeben; nicht bestätigte Reservierungen laufen automatisch ab.
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class ReservationResource {
+
+    private final ReservationAdapter reservationAdapter;
+
+    /**
+     * Bucht alle Positionen sofort und endgültig ab.
+     *
+     * @return 200 bei Erfolg, 409 mit den abgelehnten Positionen, 400 bei ungültigen Positionen
+     */
+    @PostMapping("/inventory/decrement")
+    public Mono<ResponseEntity<ReservationResult>> decrement(@RequestBody ReservationRequest request) {
+        if (!isValid(request)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return reservationAdapter.decrement(request.lines())
+                .map(ReservationResource::toResponse)
+                .onErrorResume(ReservationResource::failed);
+    }
+
+    /**
+     * Reserviert alle Positionen; der Bestand ist damit bis zum Bestätigen, Freigeben oder Ablaufen abgebucht.
+     *
+     * @return 201 mit ID und Ablaufzeitpunkt, 409 mit den abgelehnten Positionen, 400 bei ungültigen Positionen
+     */
+    @PostMapping("/reservations")
+    public Mono<ResponseEntity<ReservationResult>> reserve(@RequestBody ReservationRequest request) {
+        if (!isValid(request) || (request.ttl() != null && (request.ttl().isNegative() || request.ttl().isZero()))) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return reservationAdapter.reserve(request.lines(), request.ttl())
+                .map(ReservationResource::toResponse)
+                .onErrorResume(ReservationResource::failed);
+    }
+
+    /**
+     * @return 200 bei Erfolg, 404 wenn die Reservierung unbekannt ist, 410 wenn sie abgelaufen war
+     */
+    @PostMapping("/reservations/{id}/commit")
+    public Mono<ResponseEntity<ReservationResult>> commit(@PathVariable String id) {
+        return reservationAdapter.commit(id)
+                .map(ReservationResource::toResponse)
+                .onErrorResume(ReservationResource::failed);
+    }
+
+    /**
+     * @return 200 bei Erfolg, 404 wenn die Reservierung unbekannt ist
+     */
+    @DeleteMapping("/reservations/{id}")
+    public Mono<ResponseEntity<ReservationResult>> release(@PathVariable String id) {
+        return reservationAdapter.release(id)
+                .map(ReservationResource::toResponse)
+                .onErrorResume(ReservationResource::failed);
+    }
+
+    private static ResponseEntity<ReservationResult> toResponse(ReservationResult result) {
+        HttpStatus status = switch (result.status()) {
+            case RESERVED -> HttpStatus.CREATED;
+            case DECREMENTED, COMMITTED, RELEASED -> HttpStatus.OK;
+            case EXPIRED -> HttpStatus.GONE;
+            case INSUFFICIENT_STOCK -> HttpStatus.CONFLICT;
+            case NOT_FOUND -> HttpStatus.NOT_FOUND;
+        };
+        return new ResponseEntity<>(result, status);
+    }
+
+    private static Mono<ResponseEntity<ReservationResult>> failed(Throwable e) {
+        log.error("Fehler beim Ändern des Bestands", e);
+        return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+    }
+
+    private static boolean isValid(ReservationRequest request) {
+        List<OrderLine> lines = request != null ? request.lines() : null;
+        if (lines == null || lines.isEmpty()) {
+            return false;
+        }
+        return lines.stream().allMatch(line -> line != null
+                && line.name() != null && !line.name().isBlank()
+                && line.quantity() > 0);
+    }
+}
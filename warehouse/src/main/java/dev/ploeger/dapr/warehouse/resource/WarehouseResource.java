@@ -1,35 +1,189 @@
 package dev.ploeger.dapr.warehouse.resource;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.ploeger.dapr.warehouse.adapter.KvStoreAdapter;
+import dev.ploeger.dapr.warehouse.model.BulkUpsertResult;
+import dev.ploeger.dapr.warehouse.model.InventoryFilter;
+import dev.ploeger.dapr.warehouse.model.InventoryPage;
+import dev.ploeger.dapr.warehouse.model.InventorySort;
 import dev.ploeger.dapr.warehouse.model.Sweet;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * HTTP-API des Lagers.
+ * <p>
+ * Die Endpunkte geben die {@link Mono}s des {@link KvStoreAdapter} direkt zurück. Spring MVC
+ * beantwortet sie asynchron: Der Servlet-Thread wird sofort wieder freigegeben und erst bei
+ * Eintreffen der Antwort des Sidecars wird die Response geschrieben.
+ */
 @RestController
 @RequiredArgsConstructor
+@Slf4j
 public class WarehouseResource {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 500;
+
     private final KvStoreAdapter kvStoreAdapter;
+    private final ObjectMapper objectMapper;
 
+    /**
+     * Liefert das komplette Inventar als JSON oder, mit {@code Accept: application/x-protobuf}, im
+     * Binärformat aus {@code inventory.proto} (siehe {@link InventoryProtobufHttpMessageConverter}).
+     */
     @GetMapping("/inventory")
-    public List<Sweet> getInventory() {
-        return kvStoreAdapter.getInventory().block();
+    public Mono<List<Sweet>> getInventory() {
+        return kvStoreAdapter.getInventory();
     }
 
-    @PostMapping("/inventory")
-    public ResponseEntity<String> addToInventory(@RequestBody Sweet sweet) {
+    /**
+     * Liefert eine Seite des sortierten Inventars.
+     *
+     * @param sort    Sortierung im Format {@code feld[,asc|desc]} mit den Feldern name, price und quantity
+     * @param cursor  {@code nextCursor} der vorherigen Seite; hat Vorrang vor {@code offset}
+     * @param limit   Seitengröße, höchstens {@value #MAX_PAGE_SIZE}
+     * @param q       Nur Süßigkeiten, deren Name diesen Text enthält
+     * @param inStock Nur Süßigkeiten mit Bestand
+     * @return 400, wenn Sortierung oder Cursor ungültig sind
+     */
+    @GetMapping("/inventory/page")
+    public Mono<ResponseEntity<InventoryPage>> getInventoryPage(@RequestParam(required = false) String sort,
+                                                               @RequestParam(required = false) String cursor,
+                                                               @RequestParam(defaultValue = "0") int offset,
+                                                               @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                                                               @RequestParam(required = false) String q,
+                                                               @RequestParam(defaultValue = "false") boolean inStock) {
+        InventorySort inventorySort;
+        try {
+            inventorySort = InventorySort.parse(sort);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        int pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        InventoryFilter filter = new InventoryFilter(q, inStock);
+        return kvStoreAdapter.getInventory(inventorySort)
+                .map(sweets -> ResponseEntity.ok(InventoryPage.of(sweets, inventorySort,
+                        filter.isEmpty() ? null : filter, cursor, offset, pageSize)))
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    /**
+     * Streamt das Inventar als NDJSON, eine Süßigkeit pro Zeile. Jede Süßigkeit wird geschrieben, sobald
+     * sie vorliegt, ohne das gesamte Inventar als ein JSON-Dokument aufzubauen.
+     *
+     * @param sort    Sortierung wie bei {@code /inventory/page}; ohne Angabe in Ablagereihenfolge
+     * @param q       Nur Süßigkeiten, deren Name diesen Text enthält
+     * @param inStock Nur Süßigkeiten mit Bestand
+     */
+    @GetMapping(path = "/inventory/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Sweet> streamInventory(@RequestParam(required = false) String sort,
+                                       @RequestParam(required = false) String q,
+                                       @RequestParam(defaultValue = "false") boolean inStock) {
+        Mono<List<Sweet>> sweets;
         try {
-            kvStoreAdapter.addToInventory(sweet).block();
-            return new ResponseEntity<>("Artikel erfolgreich hinzugefügt", HttpStatus.CREATED);
-        } catch (Exception e) {
-            return new ResponseEntity<>("Fehler beim Hinzufügen: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+            sweets = sort == null ? kvStoreAdapter.getInventory() : kvStoreAdapter.getInventory(InventorySort.parse(sort));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return sweets.flatMapIterable(list -> list)
+                .filter(new InventoryFilter(q, inStock));
+    }
+
+    @PostMapping("/inventory")
+    public Mono<ResponseEntity<String>> addToInventory(@RequestBody Sweet sweet) {
+        return kvStoreAdapter.addToInventory(sweet)
+                .map(success -> success
+                        ? new ResponseEntity<>("Artikel erfolgreich hinzugefügt", HttpStatus.CREATED)
+                        : new ResponseEntity<>("Fehler beim Hinzufügen: Artikel konnte nicht gespeichert werden", HttpStatus.INTERNAL_SERVER_ERROR))
+                .onErrorResume(e -> Mono.just(
+                        new ResponseEntity<>("Fehler beim Hinzufügen: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR)));
+    }
+
+    /**
+     * Legt viele Süßigkeiten auf einmal an oder aktualisiert sie.
+     * <p>
+     * Der Body ist entweder ein JSON-Array von Süßigkeiten oder NDJSON (eine Süßigkeit pro Zeile) und
+     * wird Eintrag für Eintrag gelesen, ohne das gesamte Dokument als JSON-Baum aufzubauen. Gültige
+     * Einträge werden in einem Durchgang angewendet und mit einem einzigen Schreibzugriff gespeichert.
+     *
+     * @return Ergebnis je Eintrag; 400, wenn der Body kein gültiges JSON ist, 500, wenn nichts gespeichert werden konnte
+     */
+    @PostMapping(path = "/inventory/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<BulkUpsertResult>> bulkAddToInventory(InputStream body) {
+        List<BulkUpsertResult.Item> items = new ArrayList<>();
+        List<Sweet> accepted = new ArrayList<>();
+        List<Integer> acceptedIndexes = new ArrayList<>();
+        try (MappingIterator<Sweet> sweets = objectMapper.readerFor(Sweet.class).readValues(body)) {
+            int index = 0;
+            while (sweets.hasNextValue()) {
+                Sweet sweet = sweets.nextValue();
+                String problem = validate(sweet);
+                if (problem != null) {
+                    String name = sweet != null ? sweet.name() : null;
+                    items.add(new BulkUpsertResult.Item(index, name, BulkUpsertResult.Status.REJECTED, problem));
+                } else {
+                    items.add(null); // wird nach dem Speichern gefüllt
+                    accepted.add(sweet);
+                    acceptedIndexes.add(index);
+                }
+                index++;
+            }
+        } catch (IOException e) {
+            log.warn("Ungültiger Body für Bulk-Import", e);
+            return Mono.just(ResponseEntity.badRequest().body(BulkUpsertResult.of(List.of(
+                    new BulkUpsertResult.Item(items.size(), null, BulkUpsertResult.Status.REJECTED,
+                            "Ungültiges JSON: " + e.getOriginalMessage())))));
+        }
+
+        return kvStoreAdapter.addOrUpdateSweets(accepted)
+                .map(saved -> {
+                    for (int i = 0; i < accepted.size(); i++) {
+                        int index = acceptedIndexes.get(i);
+                        items.set(index, saved.get(i)
+                                ? new BulkUpsertResult.Item(index, accepted.get(i).name(), BulkUpsertResult.Status.UPSERTED, null)
+                                : new BulkUpsertResult.Item(index, accepted.get(i).name(), BulkUpsertResult.Status.FAILED,
+                                "Speichern fehlgeschlagen"));
+                    }
+                    BulkUpsertResult result = BulkUpsertResult.of(items);
+                    HttpStatus status = result.failed() > 0 && result.upserted() == 0
+                            ? HttpStatus.INTERNAL_SERVER_ERROR
+                            : HttpStatus.OK;
+                    return new ResponseEntity<>(result, status);
+                });
+    }
+
+    private static String validate(Sweet sweet) {
+        if (sweet == null) {
+            return "Eintrag fehlt";
+        }
+        if (sweet.name() == null || sweet.name().isBlank()) {
+            return "Name fehlt";
+        }
+        if (sweet.price() < 0) {
+            return "Preis darf nicht negativ sein";
+        }
+        if (sweet.quantity() < 0) {
+            return "Menge darf nicht negativ sein";
         }
+        return null;
     }
-}
\ No newline at end of file
+}
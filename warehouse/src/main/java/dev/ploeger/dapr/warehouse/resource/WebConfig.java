@@ -0,0 +1,17 @@
+package dev.ploeger.dapr.warehouse.resource;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+class WebConfig implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Am Ende, damit JSON das Format für Aufrufer ohne Accept-Header bleibt
+        converters.add(new InventoryProtobufHttpMessageConverter());
+    }
+}
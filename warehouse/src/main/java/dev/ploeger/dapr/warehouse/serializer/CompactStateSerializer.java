@@ -0,0 +1,139 @@
+package dev.ploeger.dapr.warehouse.serializer;
+
+import dev.ploeger.dapr.warehouse.model.Inventory;
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import io.dapr.serializer.DaprObjectSerializer;
+import io.dapr.serializer.DefaultObjectSerializer;
+import io.dapr.utils.TypeRef;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Serialisiert Süßigkeiten und Inventare für den State Store in einem kompakten Binärformat.
+ * <p>
+ * Ein Wert besteht aus vier Header-Bytes (Kennung {@code 0xC5}, Version, Typ, Flags) und den
+ * Süßigkeiten im Protobuf-Format von {@link InventoryProtobuf}. Ab {@code compressionThreshold}
+ * Bytes wird der Rumpf mit Deflate komprimiert. Alle anderen Typen, z.B. Reservierungen und der
+ * Namens-Index, werden weiterhin als JSON geschrieben.
+ * <p>
+ * Beim Lesen wird am ersten Byte erkannt, ob ein Wert binär oder als JSON gespeichert ist; JSON kann
+ * nie mit {@code 0xC5} beginnen. Vor der Umstellung gespeicherte Werte bleiben so lesbar und werden
+ * beim nächsten Schreiben binär abgelegt.
+ */
+public class CompactStateSerializer implements DaprObjectSerializer {
+    static final byte MAGIC = (byte) 0xC5;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4;
+
+    private static final byte TYPE_SWEET = 1;
+    private static final byte TYPE_SWEETS = 2;
+    private static final byte FLAG_DEFLATE = 1;
+
+    private final DaprObjectSerializer json = new DefaultObjectSerializer();
+    private final int compressionThreshold;
+
+    /**
+     * @param compressionThreshold Ab dieser Größe des Rumpfs in Bytes wird komprimiert; 0 schaltet das ab
+     */
+    public CompactStateSerializer(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws IOException {
+        if (value instanceof Sweet sweet) {
+            return write(TYPE_SWEET, List.of(sweet));
+        }
+        if (value instanceof Inventory inventory) {
+            return write(TYPE_SWEETS, inventory.sweets());
+        }
+        if (value instanceof Collection<?> collection && !collection.isEmpty()
+                && collection.stream().allMatch(Sweet.class::isInstance)) {
+            @SuppressWarnings("unchecked")
+            Collection<Sweet> sweets = (Collection<Sweet>) collection;
+            return write(TYPE_SWEETS, sweets);
+        }
+        return json.serialize(value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(byte[] data, TypeRef<T> type) throws IOException {
+        if (data == null || data.length == 0 || data[0] != MAGIC) {
+            return json.deserialize(data, type);
+        }
+        if (data.length < HEADER_SIZE || data[1] > VERSION) {
+            throw new IOException("Unbekannte Version " + (data.length > 1 ? data[1] : -1) + " des kompakten Formats");
+        }
+        byte[] body = data;
+        int offset = HEADER_SIZE;
+        int length = data.length - HEADER_SIZE;
+        if ((data[3] & FLAG_DEFLATE) != 0) {
+            try (InputStream inflater = new InflaterInputStream(new ByteArrayInputStream(data, offset, length))) {
+                body = inflater.readAllBytes();
+            }
+            offset = 0;
+            length = body.length;
+        }
+        List<Sweet> sweets = InventoryProtobuf.decode(body, offset, length);
+
+        Class<?> target = rawType(type.getType());
+        if (target == Sweet.class) {
+            if (data[2] != TYPE_SWEET || sweets.size() != 1) {
+                throw new IOException("Gespeicherter Wert ist keine einzelne Süßigkeit");
+            }
+            return (T) sweets.getFirst();
+        }
+        if (target == Inventory.class) {
+            return (T) new Inventory(sweets);
+        }
+        if (target.isAssignableFrom(ArrayList.class)) {
+            return (T) new ArrayList<>(sweets);
+        }
+        throw new IOException("Kompaktes Format kann nicht als " + type.getType() + " gelesen werden");
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/octet-stream";
+    }
+
+    private byte[] write(byte type, Collection<Sweet> sweets) throws IOException {
+        byte[] body = InventoryProtobuf.encode(sweets);
+        boolean compress = compressionThreshold > 0 && body.length >= compressionThreshold;
+        ByteArrayOutputStream output = new ByteArrayOutputStream(HEADER_SIZE + (compress ? body.length / 2 : body.length));
+        output.write(new byte[]{MAGIC, VERSION, type, compress ? FLAG_DEFLATE : 0});
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream compressed = new DeflaterOutputStream(output, deflater)) {
+                compressed.write(body);
+            } finally {
+                deflater.end();
+            }
+        } else {
+            output.write(body);
+        }
+        return output.toByteArray();
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class<?> clazz) {
+            return clazz;
+        }
+        if (type instanceof ParameterizedType parameterized) {
+            return (Class<?>) parameterized.getRawType();
+        }
+        return Object.class;
+    }
+}
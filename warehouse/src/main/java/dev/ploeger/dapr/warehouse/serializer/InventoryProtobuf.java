@@ -0,0 +1,112 @@
+package dev.ploeger.dapr.warehouse.serializer;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import dev.ploeger.dapr.warehouse.model.Sweet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Kodiert das Inventar im Protobuf-Format aus {@code src/main/proto/inventory.proto}.
+ * <p>
+ * Gegenüber JSON entfallen die Feldnamen und Zahlen werden als Varint geschrieben; eine Süßigkeit
+ * braucht so etwa ein Drittel der Bytes. Verwendet für {@code GET /inventory} und als Rumpf des
+ * kompakten State-Formats (siehe {@link CompactStateSerializer}).
+ */
+public final class InventoryProtobuf {
+    public static final String MEDIA_TYPE = "application/x-protobuf";
+
+    private static final int INVENTORY_SWEETS = 1;
+    private static final int SWEET_NAME = 1;
+    private static final int SWEET_PRICE_CENTS = 2;
+    private static final int SWEET_QUANTITY = 3;
+    private static final int SWEET_PRICE = 4;
+
+    private InventoryProtobuf() {
+    }
+
+    public static byte[] encode(Collection<Sweet> sweets) {
+        int size = 0;
+        for (Sweet sweet : sweets) {
+            int sweetSize = sweetSize(sweet);
+            size += CodedOutputStream.computeTagSize(INVENTORY_SWEETS)
+                    + CodedOutputStream.computeUInt32SizeNoTag(sweetSize) + sweetSize;
+        }
+        byte[] bytes = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        try {
+            for (Sweet sweet : sweets) {
+                output.writeTag(INVENTORY_SWEETS, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(sweetSize(sweet));
+                output.writeString(SWEET_NAME, sweet.name());
+                output.writeSInt64(SWEET_PRICE_CENTS, toCents(sweet.price()));
+                output.writeSInt32(SWEET_QUANTITY, sweet.quantity());
+                if (!isWholeCents(sweet.price())) {
+                    output.writeDouble(SWEET_PRICE, sweet.price());
+                }
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes;
+    }
+
+    public static List<Sweet> decode(byte[] bytes) throws IOException {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    public static List<Sweet> decode(byte[] bytes, int offset, int length) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(bytes, offset, length);
+        List<Sweet> sweets = new ArrayList<>();
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) != INVENTORY_SWEETS) {
+                input.skipField(tag);
+                continue;
+            }
+            int limit = input.pushLimit(input.readRawVarint32());
+            String name = "";
+            long priceCents = 0;
+        Double price = null;
+            int quantity = 0;
+            while ((tag = input.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case SWEET_NAME -> name = input.readString();
+                    case SWEET_PRICE_CENTS -> priceCents = input.readSInt64();
+                case SWEET_PRICE -> price = input.readDouble();
+                    case SWEET_QUANTITY -> quantity = input.readSInt32();
+                    default -> input.skipField(tag);
+                }
+            }
+            input.popLimit(limit);
+            sweets.add(new Sweet(name, price != null ? price : priceCents / 100.0, quantity));
+        }
+        return sweets;
+    }
+
+    private static int sweetSize(Sweet sweet) {
+        return CodedOutputStream.computeStringSize(SWEET_NAME, sweet.name())
+                + CodedOutputStream.computeSInt64Size(SWEET_PRICE_CENTS, toCents(sweet.price()))
+                + CodedOutputStream.computeSInt32Size(SWEET_QUANTITY, sweet.quantity())
+                + (isWholeCents(sweet.price()) ? 0 : CodedOutputStream.computeDoubleSize(SWEET_PRICE, sweet.price()));
+    }
+
+    private static long toCents(double price) {
+        return Math.round(price * 100);
+    }
+
+    /**
+     * Preise aus ganzen Cent stehen nur als Varint im Feld {@code price_cents}. Alle anderen stehen zusätzlich
+     * exakt im Feld {@code price}, damit beim Speichern nichts gerundet wird; ältere Leser sehen weiterhin den
+     * gerundeten Cent-Betrag.
+     */
+    private static boolean isWholeCents(double price) {
+        return toCents(price) / 100.0 == price;
+    }
+}
@@ -0,0 +1,85 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.config.InventoryProperties;
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InventoryWriteBatcherTest {
+
+    private final List<Integer> committedBatchSizes = new CopyOnWriteArrayList<>();
+    private InventoryWriteBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        batcher.close();
+    }
+
+    @Test
+    void concurrentWritesAreCommittedTogether() {
+        batcher = new InventoryWriteBatcher(
+                new InventoryProperties.Batching(true, Duration.ofMillis(20), 100),
+                this::slowCommit,
+                new SimpleMeterRegistry(),
+                false);
+
+        List<Boolean> results = Flux.range(0, 50)
+                .flatMap(i -> batcher.submit(SweetMutation.upsert(new Sweet("Sweet " + i, 1.0, i))))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(results).hasSize(50).containsOnly(true);
+        assertThat(committedBatchSizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(50);
+        assertThat(committedBatchSizes.size()).isLessThan(50);
+    }
+
+    @Test
+    void eachCallerReceivesItsOwnResult() {
+        batcher = new InventoryWriteBatcher(
+                new InventoryProperties.Batching(true, Duration.ofMillis(20), 100),
+                this::slowCommit,
+                new SimpleMeterRegistry(),
+                false);
+
+        Mono<Boolean> accepted = batcher.submit(SweetMutation.upsert(new Sweet("Lakritz", 0.99, 10)));
+        Mono<Boolean> rejected = batcher.submit(SweetMutation.setQuantity("Unbekannt", 5));
+
+        assertThat(Mono.zip(accepted, rejected).block(Duration.ofSeconds(10)))
+                .satisfies(both -> {
+                    assertThat(both.getT1()).isTrue();
+                    assertThat(both.getT2()).isFalse();
+                });
+    }
+
+    @Test
+    void failedCommitCompletesAllCallersWithFalse() {
+        batcher = new InventoryWriteBatcher(
+                new InventoryProperties.Batching(true, Duration.ofMillis(5), 100),
+                mutations -> Mono.error(new IllegalStateException("Sidecar nicht erreichbar")),
+                new SimpleMeterRegistry(),
+                false);
+
+        assertThat(batcher.submit(SweetMutation.setQuantity("Lakritz", 5)).block(Duration.ofSeconds(10))).isFalse();
+    }
+
+    /**
+     * Simuliert einen Schreibzugriff auf ein leeres Inventar: Anlegen gelingt, Mengenänderungen
+     * unbekannter Süßigkeiten werden abgelehnt.
+     */
+    private Mono<List<Boolean>> slowCommit(List<SweetMutation> mutations) {
+        committedBatchSizes.add(mutations.size());
+        List<Boolean> results = mutations.stream()
+                .map(mutation -> mutation.change().apply(null) != null)
+                .toList();
+        return Mono.just(results).delayElement(Duration.ofMillis(10));
+    }
+}
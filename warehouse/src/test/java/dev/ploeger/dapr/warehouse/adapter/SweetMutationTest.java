@@ -0,0 +1,26 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SweetMutationTest {
+
+    private final Sweet lakritz = new Sweet("Lakritz", 0.99, 10);
+
+    @Test
+    void decrementRejectsInsufficientStockAndUnknownSweets() {
+        assertThat(SweetMutation.decrement("Lakritz", 10).change().apply(lakritz))
+                .isEqualTo(new Sweet("Lakritz", 0.99, 0));
+        assertThat(SweetMutation.decrement("Lakritz", 11).change().apply(lakritz)).isNull();
+        assertThat(SweetMutation.decrement("Lakritz", 1).change().apply(null)).isNull();
+    }
+
+    @Test
+    void incrementRestoresStock() {
+        assertThat(SweetMutation.increment("Lakritz", 5).change().apply(lakritz))
+                .isEqualTo(new Sweet("Lakritz", 0.99, 15));
+        assertThat(SweetMutation.increment("Lakritz", 5).change().apply(null)).isNull();
+    }
+}
@@ -0,0 +1,80 @@
+package dev.ploeger.dapr.warehouse.adapter;
+
+import dev.ploeger.dapr.warehouse.config.InventoryProperties;
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Prüft per JFR-Event {@code jdk.VirtualThreadPinned}, dass die Hot Paths des Lagers
+ * (Write-Batcher und Inventar-Cache) auf virtuellen Threads keine Carrier-Threads blockieren.
+ */
+class VirtualThreadPinningTest {
+    private static final String OWN_PACKAGE = "dev.ploeger.dapr";
+
+    @Test
+    void hotPathsDoNotPinCarrierThreads() throws Exception {
+        List<String> pinnedStacks = new CopyOnWriteArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", event -> {
+                if (touchesOwnCode(event)) {
+                    pinnedStacks.add(event.getStackTrace().toString());
+                }
+            });
+            recording.startAsync();
+
+            runWorkloadOnVirtualThreads();
+
+            recording.stop();
+        }
+        assertThat(pinnedStacks).isEmpty();
+    }
+
+    private void runWorkloadOnVirtualThreads() throws Exception {
+        InventoryProperties properties = new InventoryProperties(
+                InventoryProperties.StorageMode.BLOB,
+                new InventoryProperties.Concurrency(5, Duration.ofMillis(10), Duration.ofMillis(500), 0.5),
+                new InventoryProperties.Cache(true, Duration.ofMillis(50), 100),
+                new InventoryProperties.Batching(true, Duration.ofMillis(2), 200),
+                new InventoryProperties.Events(false, "inventory-pubsub", "inventory-changes"));
+        InventoryCache cache = new InventoryCache(properties, new SimpleMeterRegistry());
+        Mono<List<Sweet>> slowLoad = Mono.just(List.of(new Sweet("Gummibärchen", 2.49, 50)))
+                .delayElement(Duration.ofMillis(5));
+
+        try (InventoryWriteBatcher batcher = new InventoryWriteBatcher(properties.batching(),
+                mutations -> Mono.just(mutations.stream().map(m -> true).toList()).delayElement(Duration.ofMillis(5)),
+                new SimpleMeterRegistry(), true);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            IntStream.range(0, 500).forEach(i -> executor.submit(() -> {
+                batcher.submit(SweetMutation.setQuantity("Gummibärchen", i)).block();
+                cache.getInventory(() -> slowLoad).block();
+                if (i % 50 == 0) {
+                    cache.invalidate();
+                }
+            }));
+        }
+    }
+
+    private static boolean touchesOwnCode(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+        return event.getStackTrace().getFrames().stream()
+                .map(RecordedFrame::getMethod)
+                .anyMatch(method -> method.getType().getName().startsWith(OWN_PACKAGE));
+    }
+}
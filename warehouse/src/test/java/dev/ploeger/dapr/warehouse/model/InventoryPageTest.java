@@ -0,0 +1,73 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InventoryPageTest {
+
+    private final InventorySort byPriceDesc = InventorySort.parse("price,desc");
+    private final List<Sweet> sorted = List.of(
+                    new Sweet("Lakritz", 0.99, 10),
+                    new Sweet("Schokolade", 1.5, 100),
+                    new Sweet("Gummibärchen", 2.49, 50),
+                    new Sweet("Marzipan", 1.5, 20),
+                    new Sweet("Bonbons", 0.5, 5))
+            .stream().sorted(byPriceDesc.comparator()).toList();
+
+    @Test
+    void cursorWalksAllSweetsInSortOrder() {
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        do {
+            InventoryPage page = InventoryPage.of(sorted, byPriceDesc, cursor, 0, 2);
+            page.items().forEach(sweet -> names.add(sweet.name()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(names).containsExactly("Gummibärchen", "Schokolade", "Marzipan", "Lakritz", "Bonbons");
+    }
+
+    @Test
+    void cursorStaysValidWhenTheLastSweetIsRemoved() {
+        InventoryPage first = InventoryPage.of(sorted, byPriceDesc, null, 0, 2);
+        List<Sweet> withoutSchokolade = sorted.stream().filter(sweet -> !sweet.name().equals("Schokolade")).toList();
+
+        InventoryPage second = InventoryPage.of(withoutSchokolade, byPriceDesc, first.nextCursor(), 0, 2);
+
+        assertThat(second.items()).extracting(Sweet::name).containsExactly("Marzipan", "Lakritz");
+        assertThat(second.total()).isEqualTo(4);
+    }
+
+    @Test
+    void offsetPagingAndCursorOfOtherSortOrder() {
+        InventoryPage last = InventoryPage.of(sorted, byPriceDesc, null, 4, 2);
+        assertThat(last.items()).extracting(Sweet::name).containsExactly("Bonbons");
+        assertThat(last.nextOffset()).isNull();
+        assertThat(last.nextCursor()).isNull();
+
+        String cursor = InventoryPage.of(sorted, byPriceDesc, null, 0, 2).nextCursor();
+        assertThatThrownBy(() -> InventoryPage.of(sorted, InventorySort.DEFAULT, cursor, 0, 2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void filterIsAppliedBeforePaging() {
+        InventoryFilter filter = new InventoryFilter("I", false);
+
+        InventoryPage first = InventoryPage.of(sorted, byPriceDesc, filter, null, 0, 2);
+        InventoryPage next = InventoryPage.of(sorted, byPriceDesc, filter, first.nextCursor(), 0, 2);
+        InventoryPage byOffset = InventoryPage.of(sorted, byPriceDesc, filter, null, 2, 2);
+
+        assertThat(first.items()).extracting(Sweet::name).containsExactly("Gummibärchen", "Marzipan");
+        assertThat(first.total()).isEqualTo(3);
+        assertThat(first.nextOffset()).isEqualTo(2);
+        assertThat(next.items()).extracting(Sweet::name).containsExactly("Lakritz");
+        assertThat(next.nextCursor()).isNull();
+        assertThat(byOffset.items()).isEqualTo(next.items());
+    }
+}
@@ -0,0 +1,42 @@
+package dev.ploeger.dapr.warehouse.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InventoryTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readsAndWritesThePersistedListFormat() throws Exception {
+        String json = "[{\"name\":\"Lakritz\",\"price\":0.99,\"quantity\":10},"
+                + "{\"name\":\"Schokolade\",\"price\":1.5,\"quantity\":100}]";
+
+        Inventory inventory = objectMapper.readValue(json, Inventory.class);
+
+        assertThat(inventory.size()).isEqualTo(2);
+        assertThat(inventory.get("Schokolade")).isEqualTo(new Sweet("Schokolade", 1.5, 100));
+        assertThat(objectMapper.readTree(objectMapper.writeValueAsString(inventory)))
+                .isEqualTo(objectMapper.readTree(json));
+    }
+
+    @Test
+    void tracksChangedAndCreatedSweets() {
+        Inventory inventory = new Inventory(List.of(
+                new Sweet("Lakritz", 0.99, 10),
+                new Sweet("Schokolade", 1.5, 100)));
+
+        inventory.put(new Sweet("Lakritz", 0.99, 7));
+        inventory.put(new Sweet("Gummibärchen", 2.49, 50));
+
+        assertThat(inventory.changedNames()).containsExactly("Lakritz", "Gummibärchen");
+        assertThat(inventory.createdNames()).containsExactly("Gummibärchen");
+        assertThat(inventory.sweets()).extracting(Sweet::name)
+                .containsExactly("Lakritz", "Schokolade", "Gummibärchen");
+        assertThat(inventory.get("Lakritz").quantity()).isEqualTo(7);
+    }
+}
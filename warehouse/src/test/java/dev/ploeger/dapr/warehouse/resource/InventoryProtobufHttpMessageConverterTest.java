@@ -0,0 +1,43 @@
+package dev.ploeger.dapr.warehouse.resource;
+
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import dev.ploeger.dapr.warehouse.serializer.InventoryProtobuf;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InventoryProtobufHttpMessageConverterTest {
+    private static final Type SWEET_LIST = new ParameterizedTypeReference<List<Sweet>>() {
+    }.getType();
+    private static final MediaType PROTOBUF = MediaType.parseMediaType(InventoryProtobuf.MEDIA_TYPE);
+
+    private final InventoryProtobufHttpMessageConverter converter = new InventoryProtobufHttpMessageConverter();
+
+    @Test
+    void readsInventoryInProtobufFormat() throws Exception {
+        List<Sweet> inventory = List.of(new Sweet("Lakritz", 2.49, 50), new Sweet("Gummibärchen", 1.99, 3));
+
+        assertThat(converter.canRead(SWEET_LIST, null, PROTOBUF)).isTrue();
+        assertThat(converter.canRead(SWEET_LIST, null, MediaType.APPLICATION_JSON)).isFalse();
+        assertThat(converter.read(SWEET_LIST, null, new MockHttpInputMessage(InventoryProtobuf.encode(inventory))))
+                .isEqualTo(inventory);
+    }
+
+    @Test
+    void rejectsMalformedBodyAsNotReadable() {
+        // Ein Name mit drei angekündigten Bytes, von denen nur eines folgt
+        MockHttpInputMessage inputMessage = new MockHttpInputMessage(new byte[]{0x0a, 0x05, 0x0a, 0x03, 'L'});
+
+        assertThatThrownBy(() -> converter.read(SWEET_LIST, null, inputMessage))
+                .isInstanceOf(HttpMessageNotReadableException.class)
+                .hasMessageStartingWith("Inventar im Protobuf-Format nicht lesbar");
+    }
+}
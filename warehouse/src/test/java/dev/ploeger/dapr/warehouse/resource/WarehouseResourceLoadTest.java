@@ -0,0 +1,120 @@
+package dev.ploeger.dapr.warehouse.resource;
+
+import dev.ploeger.dapr.warehouse.adapter.KvStoreAdapter;
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Lasttest: vergleicht den nicht-blockierenden {@code GET /inventory} mit einer blockierenden
+ * Variante, wie sie vorher implementiert war ({@code .block()} im Servlet-Thread).
+ * <p>
+ * Tomcat läuft mit nur {@value #SERVLET_THREADS} Threads, der State Store antwortet nach
+ * {@code SIDECAR_LATENCY}. Blockierend können nur so viele Anfragen gleichzeitig bearbeitet
+ * werden, wie Threads vorhanden sind; nicht-blockierend laufen alle Anfragen parallel. Geprüft wird
+ * nicht die Laufzeit, die von der Last auf dem Build-Rechner abhängt, sondern wie viele Aufrufe des
+ * Sidecars der Mock höchstens gleichzeitig sieht.
+ */
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                // Mit virtuellen Threads gibt es kein festes Thread-Limit, das blockierende Requests ausbremst
+                "spring.threads.virtual.enabled=false",
+                "server.tomcat.threads.max=" + WarehouseResourceLoadTest.SERVLET_THREADS,
+                "server.tomcat.threads.min-spare=" + WarehouseResourceLoadTest.SERVLET_THREADS
+        })
+@Import(WarehouseResourceLoadTest.BlockingWarehouseResource.class)
+class WarehouseResourceLoadTest {
+    static final int SERVLET_THREADS = 4;
+    private static final int CONCURRENT_REQUESTS = 40;
+    private static final Duration SIDECAR_LATENCY = Duration.ofMillis(200);
+
+    @LocalServerPort
+    private int port;
+
+    @MockitoBean
+    private KvStoreAdapter kvStoreAdapter;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void simulateSlowSidecar() {
+        when(kvStoreAdapter.getInventory()).thenAnswer(invocation -> Mono.defer(() -> {
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            // Vor dem Weiterreichen abziehen, sonst sähe der nächste Request des frei gewordenen Threads den alten Aufruf noch
+            return Mono.just(List.of(new Sweet("Schokolade", 1.5, 100)))
+                    .delayElement(SIDECAR_LATENCY)
+                    .doOnSuccess(inventory -> inFlight.decrementAndGet());
+        }));
+    }
+
+    @Test
+    void nonBlockingEndpointServesMoreConcurrentRequestsThanServletThreads() {
+        int blocking = fireConcurrently("/blocking/inventory");
+        int nonBlocking = fireConcurrently("/inventory");
+
+        String peaks = String.format("%d Anfragen, %d Servlet-Threads: gleichzeitige Sidecar-Aufrufe blockierend %d, nicht-blockierend %d",
+                CONCURRENT_REQUESTS, SERVLET_THREADS, blocking, nonBlocking);
+
+        assertThat(blocking).as(peaks).isLessThanOrEqualTo(SERVLET_THREADS);
+        assertThat(nonBlocking).as(peaks).isGreaterThan(SERVLET_THREADS);
+    }
+
+    /**
+     * @return Wie viele Aufrufe des Sidecars höchstens gleichzeitig liefen
+     */
+    private int fireConcurrently(String path) {
+        peakInFlight.set(0);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+        List<CompletableFuture<HttpResponse<String>>> responses = IntStream.range(0, CONCURRENT_REQUESTS)
+                .mapToObj(i -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()))
+                .toList();
+        responses.forEach(response -> {
+            HttpResponse<String> result = response.join();
+            assertThat(result.statusCode()).isEqualTo(200);
+            assertThat(result.body()).contains("Schokolade");
+        });
+        return peakInFlight.get();
+    }
+
+    /**
+     * Nachbildung des früheren, blockierenden Endpunkts als Vergleichsbasis.
+     */
+    @TestComponent
+    @RestController
+    static class BlockingWarehouseResource {
+        private final KvStoreAdapter kvStoreAdapter;
+
+        BlockingWarehouseResource(KvStoreAdapter kvStoreAdapter) {
+            this.kvStoreAdapter = kvStoreAdapter;
+        }
+
+        @GetMapping("/blocking/inventory")
+        public List<Sweet> getInventory() {
+            return kvStoreAdapter.getInventory().block();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package dev.ploeger.dapr.warehouse.serializer;
+
+import dev.ploeger.dapr.warehouse.model.Inventory;
+import dev.ploeger.dapr.warehouse.model.Sweet;
+import io.dapr.serializer.DefaultObjectSerializer;
+import io.dapr.utils.TypeRef;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactStateSerializerTest {
+
+    private final CompactStateSerializer serializer = new CompactStateSerializer(1024);
+
+    @Test
+    void inventoryIsWrittenCompactlyAndCompressedWhenLarge() throws Exception {
+        List<Sweet> sweets = IntStream.range(0, 500)
+                .mapToObj(i -> new Sweet("Gummibärchen " + i, (99 + i) / 100.0, i))
+                .toList();
+
+        byte[] compact = serializer.serialize(new Inventory(sweets));
+        byte[] json = new DefaultObjectSerializer().serialize(new Inventory(sweets));
+
+        assertThat(compact[0]).isEqualTo(CompactStateSerializer.MAGIC);
+        assertThat(compact[3]).isEqualTo((byte) 1);
+        assertThat(compact.length * 3).isLessThan(json.length);
+        assertThat(serializer.deserialize(compact, TypeRef.get(Inventory.class)).sweets()).containsExactlyElementsOf(sweets);
+    }
+
+    @Test
+    void singleSweetsRoundTripWithoutCompression() throws Exception {
+        Sweet sweet = new Sweet("Lakritz", 1.49, 7);
+
+        byte[] compact = serializer.serialize(sweet);
+
+        assertThat(compact[3]).isZero();
+        assertThat(serializer.deserialize(compact, TypeRef.get(Sweet.class))).isEqualTo(sweet);
+    }
+
+    @Test
+    void pricesWithFractionsOfACentAreKeptExactly() throws Exception {
+        List<Sweet> sweets = List.of(new Sweet("Trüffel", 1.999, 4), new Sweet("Bonbon", 0.004, 1000),
+                new Sweet("Lakritz", 1.49, 7));
+
+        byte[] compact = serializer.serialize(new Inventory(sweets));
+
+        assertThat(serializer.deserialize(compact, TypeRef.get(Inventory.class)).sweets()).containsExactlyElementsOf(sweets);
+    }
+
+    @Test
+    void jsonWrittenBeforeTheSwitchIsStillReadable() throws Exception {
+        byte[] json = "[{\"name\":\"Marzipan\",\"price\":2.5,\"quantity\":3}]".getBytes(StandardCharsets.UTF_8);
+
+        Inventory inventory = serializer.deserialize(json, TypeRef.get(Inventory.class));
+
+        assertThat(inventory.get("Marzipan")).isEqualTo(new Sweet("Marzipan", 2.5, 3));
+    }
+
+    @Test
+    void otherTypesStayJson() throws Exception {
+        byte[] names = serializer.serialize(List.of("Lakritz", "Marzipan"));
+        byte[] index = serializer.serialize(Map.of("reservierung", 42L));
+
+        assertThat(new String(names, StandardCharsets.UTF_8)).isEqualTo("[\"Lakritz\",\"Marzipan\"]");
+        assertThat(new String(index, StandardCharsets.UTF_8)).isEqualTo("{\"reservierung\":42}");
+    }
+}